@@ -0,0 +1,131 @@
+package org.CacheEx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of {@link CacheImpl} for every {@link CacheReplacementPolicy} and {@link KeyDistribution}
+ * <p>
+ *
+ * {@link CacheImpl} is not thread safe, so with more than one thread the cache is guarded by a lock,
+ * the way an application would share it. The cache is filled before the measurement, the warmup
+ * iterations keep the JIT compilation out of the results. Run all thread counts with the GC profiler
+ * with {@link CacheBenchmarkRunner}, or a single configuration with the JMH command line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark
+{
+    static final int TRACE_LENGTH = 1 << 20;   //a power of two
+    static final int TRACE_MASK = TRACE_LENGTH - 1;
+    static final int SEED_FOR_RANDOM = 17;
+
+    @Param({"LRU", "MRU", "LFU", "WTINYLFU", "ARC", "LIRS", "CLOCK", "CLOCK_PRO"})
+    public CacheReplacementPolicy policy;
+
+    @Param({"ZIPFIAN", "UNIFORM", "SCAN", "HOT_COLD"})
+    public KeyDistribution distribution;
+
+    @Param({"16384"})
+    public int capacity;
+
+    @Param({"8"})
+    public int keySpaceFactor;  //the key space is this many times the capacity
+
+    Cache<Integer, Integer> cache;
+    Integer[] keys;     //boxed in advance, so the benchmark does not measure boxing
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params)
+    {
+        int[] trace = distribution.createTrace(TRACE_LENGTH, capacity * keySpaceFactor, new Random(SEED_FOR_RANDOM));
+        keys = new Integer[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) keys[i] = trace[i];
+
+        Cache<Integer, Integer> cacheImpl = new CacheImpl<>(capacity, policy);
+        cache = params.getThreads() == 1 ? cacheImpl : new SynchronizedCache<>(cacheImpl);
+        for (Integer key : keys) cache.put(key, key);
+    }
+
+    /**
+     * The position of a thread in the trace, the threads start at different positions
+     */
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        int index;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {index = params.getThreadIndex() * (TRACE_LENGTH / params.getThreadCount());}
+    }
+
+    @Benchmark
+    public Integer get(ThreadState state) {return cache.get(keys[state.index++ & TRACE_MASK]);}
+
+    @Benchmark
+    public void put(ThreadState state)
+    {
+        Integer key = keys[state.index++ & TRACE_MASK];
+        cache.put(key, key);
+    }
+
+    /**
+     * Reads a key and puts it on a miss, the usual way a cache is used
+     */
+    @Benchmark
+    public Integer mixed(ThreadState state)
+    {
+        Integer key = keys[state.index++ & TRACE_MASK];
+        Integer value = cache.get(key);
+        if (value == null) cache.put(key, key);
+        return value;
+    }
+
+    //guards a cache with a lock
+    static final class SynchronizedCache<K, V> implements Cache<K, V>
+    {
+        private final Cache<K, V> cache;
+
+        SynchronizedCache(Cache<K, V> cache) {this.cache = cache;}
+
+        @Override
+        public synchronized V get(K key) {return cache.get(key);}
+
+        @Override
+        public synchronized void put(K key, V value) {cache.put(key, value);}
+
+        @Override
+        public synchronized V remove(K key) {return cache.remove(key);}
+
+        @Override
+        public synchronized void invalidateAll() {cache.invalidateAll();}
+
+        @Override
+        public synchronized int getSize() {return cache.getSize();}
+
+        @Override
+        public synchronized long getHitCount() {return cache.getHitCount();}
+
+        @Override
+        public synchronized long getMissCount() {return cache.getMissCount();}
+    }
+}
@@ -0,0 +1,37 @@
+package org.CacheEx;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.stream.IntStream;
+
+/**
+ * Runs {@link CacheBenchmark} with 1, 4 and all available threads and reports the allocation rate
+ * with the GC profiler. JMH command line options (e.g. {@code -p policy=LRU}) are passed through
+ */
+public class CacheBenchmarkRunner
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        int[] threadCounts = IntStream.of(1, 4, Runtime.getRuntime().availableProcessors()).distinct().toArray();
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (int threads : threadCounts)
+        {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(CacheBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .result("cache-benchmark-" + threads + "-threads.json")
+                    .resultFormat(ResultFormatType.JSON)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
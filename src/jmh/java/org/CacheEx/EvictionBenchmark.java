@@ -0,0 +1,69 @@
+package org.CacheEx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts into a full {@link CacheImpl}, with and without recycled nodes. The keys are uniformly distributed over
+ * four times the capacity, so about 3/4 of the puts evict an entry. Run with the GC profiler to compare the
+ * allocation rate, e.g. {@code java -jar target/benchmarks.jar EvictionBenchmark -prof gc}: with recycled nodes
+ * {@code gc.alloc.rate.norm} is 0 bytes per put for LRU, MRU, LFU and CLOCK.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvictionBenchmark
+{
+    static final int TRACE_LENGTH = 1 << 20;   //a power of two
+    static final int TRACE_MASK = TRACE_LENGTH - 1;
+    static final int SEED_FOR_RANDOM = 17;
+
+    @Param({"LRU", "MRU", "LFU", "CLOCK"})
+    public CacheReplacementPolicy policy;
+
+    @Param({"false", "true"})
+    public boolean recycleNodes;
+
+    @Param({"16384"})
+    public int capacity;
+
+    Cache<Integer, Integer> cache;
+    Integer[] keys;     //boxed in advance, so the benchmark does not measure boxing
+    int index;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        int[] trace = KeyDistribution.UNIFORM.createTrace(TRACE_LENGTH, capacity * 4, new Random(SEED_FOR_RANDOM));
+        Integer[] boxed = new Integer[capacity * 4];
+        for (int i = 0; i < boxed.length; i++) boxed[i] = i;
+        keys = new Integer[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) keys[i] = boxed[trace[i]];
+
+        cache = new CacheImpl<>(capacity, policy, recycleNodes);
+        for (Integer key : keys) cache.put(key, key);
+    }
+
+    @Benchmark
+    public void put()
+    {
+        Integer key = keys[index++ & TRACE_MASK];
+        cache.put(key, key);
+    }
+}
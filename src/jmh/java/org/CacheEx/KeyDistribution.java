@@ -0,0 +1,85 @@
+package org.CacheEx;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The key distributions of the benchmarks. Every distribution creates a trace of keys in advance,
+ * so generating the keys is not part of the measurement
+ */
+public enum KeyDistribution
+{
+    /** A few keys are very popular, key i is accessed with probability proportional to 1 / i^0.99 */
+    ZIPFIAN
+    {
+        @Override
+        int[] createTrace(int length, int keySpace, Random random)
+        {
+            double[] cumulative = new double[keySpace];
+            double sum = 0;
+            for (int i = 0; i < keySpace; i++)
+            {
+                sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+                cumulative[i] = sum;
+            }
+
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++)
+            {
+                int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                trace[i] = index >= 0 ? index : Math.min(-index - 1, keySpace - 1);
+            }
+            return trace;
+        }
+    },
+
+    /** Every key is equally likely */
+    UNIFORM
+    {
+        @Override
+        int[] createTrace(int length, int keySpace, Random random)
+        {
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++) trace[i] = random.nextInt(keySpace);
+            return trace;
+        }
+    },
+
+    /** The keys are accessed one after the other, in a loop that is larger than the cache */
+    SCAN
+    {
+        @Override
+        int[] createTrace(int length, int keySpace, Random random)
+        {
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++) trace[i] = i % keySpace;
+            return trace;
+        }
+    },
+
+    /** 80% of the accesses go to 20% of the keys */
+    HOT_COLD
+    {
+        @Override
+        int[] createTrace(int length, int keySpace, Random random)
+        {
+            int hotKeys = keySpace / 5;
+            int[] trace = new int[length];
+            for (int i = 0; i < length; i++)
+            {
+                trace[i] = random.nextDouble() < 0.8 ? random.nextInt(hotKeys) : hotKeys + random.nextInt(keySpace - hotKeys);
+            }
+            return trace;
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * @param length the number of keys
+     * @param keySpace the keys are between 0 and keySpace - 1
+     * @param random the source of randomness
+     * @return the trace
+     */
+    abstract int[] createTrace(int length, int keySpace, Random random);
+}
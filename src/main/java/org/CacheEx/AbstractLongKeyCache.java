@@ -0,0 +1,184 @@
+package org.CacheEx;
+
+/**
+ * The common part of the caches with primitive long keys
+ * <p>
+ *
+ * The keys are stored in a {@code long[]} and every entry is identified by its slot (its index in
+ * the arrays). The hash index is an open addressing {@code int[]} table with linear probing that
+ * stores {@code slot + 1} (0 is an empty bucket), and removals use backward shift deletion so no
+ * tombstones are needed. The replacement policy is an {@link IndexedPolicy}, so a lookup allocates nothing.
+ *
+ * @param <V> the boxed value type of the {@link Cache} view
+ */
+abstract class AbstractLongKeyCache<V> implements Cache<Long, V>
+{
+    protected final int capacity;
+    protected final long[] keys;
+    protected final IndexedPolicy policy;
+    private final int[] table;
+    private final int tableMask;
+    private final int[] freeSlots;  //the slots of the removed keys
+    private int freeSlotCount, usedSlots;
+    protected int size;
+    protected long hitCount, missCount;
+
+    protected AbstractLongKeyCache(int capacity, CacheReplacementPolicy policy)
+    {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        keys = new long[capacity];
+        freeSlots = new int[capacity];
+        this.policy = new IndexedPolicy(policy, capacity);
+
+        //the table is at most half full
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) - 1) << 2;
+        table = new int[tableSize];
+        tableMask = tableSize - 1;
+    }
+
+    @Override
+    public int getSize() {return size;}
+
+    @Override
+    public long getHitCount() {return hitCount;}
+
+    @Override
+    public long getMissCount() {return missCount;}
+
+    /**
+     * Looks up a key and updates the statistics and the replacement policy
+     * @param key the key
+     * @return the slot of the key or {@link IndexedPolicy#NIL} on a miss
+     */
+    protected int lookup(long key)
+    {
+        int slot = findSlot(key);
+        if (slot == IndexedPolicy.NIL)
+        {
+            missCount++;
+            return IndexedPolicy.NIL;
+        }
+        hitCount++;
+        policy.access(slot);
+        return slot;
+    }
+
+    /**
+     * Finds the slot of an existing key or makes room for a new one.
+     * A new key is added to the index and the policy, but its value must be set by the caller
+     * @param key the key
+     * @return the slot of the key
+     */
+    protected int slotForPut(long key)
+    {
+        int slot = findSlot(key);
+        if (slot != IndexedPolicy.NIL)
+        {
+            policy.access(slot);
+            return slot;
+        }
+
+        if (size == capacity)
+        {
+            slot = policy.evict();      //the evicted slot is reused
+            removeFromIndex(keys[slot]);
+            clearValue(slot);
+        }
+        else
+        {
+            //the slots are filled in order, then the slots of the removed keys are reused
+            slot = freeSlotCount > 0 ? freeSlots[--freeSlotCount] : usedSlots++;
+            size++;
+        }
+
+        keys[slot] = key;
+        addToIndex(key, slot);
+        policy.insert(slot);
+        return slot;
+    }
+
+    /**
+     * Removes a key from the index and the policy and releases its value
+     * @param slot the slot of the key
+     */
+    protected void removeSlot(int slot)
+    {
+        removeFromIndex(keys[slot]);
+        policy.remove(slot);
+        clearValue(slot);
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        for (int i = 0; i < table.length; i++)
+        {
+            if (table[i] == 0) continue;
+            policy.remove(table[i] - 1);
+            clearValue(table[i] - 1);
+            table[i] = 0;
+        }
+        size = usedSlots = freeSlotCount = 0;
+    }
+
+    /**
+     * Releases the value of an evicted slot
+     * @param slot the slot
+     */
+    protected abstract void clearValue(int slot);
+
+    /**
+     * @param key the key
+     * @return the slot of the key or {@link IndexedPolicy#NIL}
+     */
+    protected int findSlot(long key)
+    {
+        int index = hash(key) & tableMask;
+        int entry;
+        while ((entry = table[index]) != 0)
+        {
+            if (keys[entry - 1] == key) return entry - 1;
+            index = (index + 1) & tableMask;
+        }
+        return IndexedPolicy.NIL;
+    }
+
+    //adds a key that is not in the table
+    private void addToIndex(long key, int slot)
+    {
+        int index = hash(key) & tableMask;
+        while (table[index] != 0) index = (index + 1) & tableMask;
+        table[index] = slot + 1;
+    }
+
+    //removes a key that is in the table and shifts back the entries of its probe sequence
+    private void removeFromIndex(long key)
+    {
+        int index = hash(key) & tableMask;
+        while (keys[table[index] - 1] != key) index = (index + 1) & tableMask;
+
+        int hole = index;
+        table[hole] = 0;
+        int entry;
+        while ((entry = table[index = (index + 1) & tableMask]) != 0)
+        {
+            int home = hash(keys[entry - 1]) & tableMask;
+            //the entry stays if its home bucket is cyclically in (hole, index]
+            boolean stays = hole <= index ? hole < home && home <= index : hole < home || home <= index;
+            if (stays) continue;
+            table[hole] = entry;
+            table[index] = 0;
+            hole = index;
+        }
+    }
+
+    //scrambles a key so that sequential ids are spread over the table
+    private static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,221 @@
+package org.CacheEx;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A thread safe cache whose values are loaded asynchronously
+ * <p>
+ *
+ * A {@code get} never blocks: it returns a completed future on a hit, and on a miss a future that is completed
+ * when the {@link CacheLoader} has run on the executor (any {@link Executor}, e.g. a virtual thread per task
+ * executor on newer JVMs). Concurrent misses on the same key share one load. Only successfully loaded values
+ * are cached, a failed load completes its future exceptionally and the next {@code get} tries again.
+ * <p>
+ *
+ * With refresh after write, a hit on an entry that is older than the refresh duration returns the current
+ * value right away and reloads the entry in the background, so a hot key is replaced before it gets stale
+ * without making any caller wait. The entries are stored in a {@link ConcurrentCacheImpl}, so the eviction
+ * follows the {@link CacheReplacementPolicy} of the cache.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class AsyncCache<K, V>
+{
+    private final ConcurrentCacheImpl<K, Entry<V>> cache;
+    private final CacheLoader<K, V> loader;
+    private final Executor executor;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private volatile long refreshAfterWriteNanos;    //0 if the entries are not refreshed
+    private volatile Ticker ticker = Ticker.systemTicker();
+
+    /**
+     * Creates a cache that loads the values in the common fork join pool
+     * @param capacity the capacity
+     * @param policy the replacement policy
+     * @param loader loads the missing values
+     */
+    public AsyncCache(int capacity, CacheReplacementPolicy policy, CacheLoader<K, V> loader)
+    {
+        this(capacity, policy, loader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param capacity the capacity
+     * @param policy the replacement policy
+     * @param loader loads the missing values
+     * @param executor runs the loads
+     */
+    public AsyncCache(int capacity, CacheReplacementPolicy policy, CacheLoader<K, V> loader, Executor executor)
+    {
+        cache = new ConcurrentCacheImpl<>(capacity, policy);
+        this.loader = Objects.requireNonNull(loader, "loader");
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    /**
+     * Returns the value of a key, loading it if it is not in the cache
+     * @param key the key
+     * @return a future of the value, completed with null if the loader has no value for the key
+     */
+    public CompletableFuture<V> get(K key)
+    {
+        Entry<V> entry = cache.get(key);
+        if (entry == null) return load(key);
+
+        long refreshAfterWrite = refreshAfterWriteNanos;
+        if (refreshAfterWrite > 0 && ticker.read() - entry.writeTime >= refreshAfterWrite
+                && entry.refreshing.compareAndSet(false, true))
+        {
+            refresh(key, entry);
+        }
+        return entry.future;    //the current value, even while it is refreshed
+    }
+
+    /**
+     * @param key the key
+     * @return a future of the value of the key, or null if it is not in the cache. Never loads
+     */
+    public CompletableFuture<V> getIfPresent(K key)
+    {
+        Entry<V> entry = cache.get(key);
+        return entry == null ? null : entry.future;
+    }
+
+    /**
+     * Puts a key value pair in the cache. A load or a refresh of the key that is in progress is not cached when it completes
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value)
+    {
+        Entry<V> entry = new Entry<>(Objects.requireNonNull(value, "value"), ticker.read());
+        loading.remove(key);
+        cache.put(key, entry);
+    }
+
+    /**
+     * A hit on an entry that was written more than a duration ago reloads the entry in the background.
+     * Affects the entries that are written afterwards
+     * @param duration the duration
+     * @param unit the unit of the duration
+     */
+    public void setRefreshAfterWrite(long duration, TimeUnit unit)
+    {
+        if (duration <= 0) throw new IllegalArgumentException("Duration must be positive: " + duration);
+        refreshAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Sets the source of time of the refreshes. Must be set before any value is cached
+     * @param ticker the ticker
+     */
+    public void setTicker(Ticker ticker) {this.ticker = Objects.requireNonNull(ticker, "ticker");}
+
+    /**
+     * Removes a key. A load or a refresh of the key that is in progress is not cached when it completes
+     * @param key the key
+     */
+    public void invalidate(K key)
+    {
+        loading.remove(key);
+        cache.remove(key);
+    }
+
+    /**
+     * Removes every entry. The loads and refreshes that are in progress are not cached when they complete
+     */
+    public void invalidateAll()
+    {
+        loading.clear();
+        cache.invalidateAll();
+    }
+
+    public int getSize() {return cache.getSize();}
+
+    public long getHitCount() {return cache.getHitCount();}
+
+    public long getMissCount() {return cache.getMissCount();}
+
+    //starts a load, or returns the load of another thread
+    private CompletableFuture<V> load(K key)
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) return existing;
+        execute(key, future, null);
+        return future;
+    }
+
+    //reloads an entry in the background, the entry stays in the cache until the new value is loaded.
+    //The refresh is registered like a load, so a put or an invalidation of the key cancels it
+    private void refresh(K key, Entry<V> entry)
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, future) != null) entry.refreshing.set(false);  //the key is already being loaded
+        else execute(key, future, entry);
+    }
+
+    //runs a load on the executor, refreshed is the entry that a refresh replaces or null
+    private void execute(K key, CompletableFuture<V> future, Entry<V> refreshed)
+    {
+        try
+        {
+            executor.execute(() -> {
+                try
+                {
+                    V value = loader.load(key);
+                    //the value is put before the load is removed, unless the load was cancelled. The put runs outside of
+                    //the map of the loads, a load cancelled during the put removes its value again
+                    if (value != null && loading.get(key) == future)
+                    {
+                        cache.put(key, new Entry<>(value, ticker.read()));
+                        if (!loading.remove(key, future)) cache.remove(key);
+                    }
+                    else loading.remove(key, future);
+                    if (value == null && refreshed != null) refreshed.refreshing.set(false);   //keep the old value
+                    future.complete(value);
+                }
+                catch (Throwable e)
+                {
+                    failed(key, future, refreshed, e);
+                }
+            });
+        }
+        catch (RuntimeException e)  //the executor rejected the load
+        {
+            failed(key, future, refreshed, e);
+        }
+    }
+
+    //a failed refresh keeps the old value and is tried again on a later hit
+    private void failed(K key, CompletableFuture<V> future, Entry<V> refreshed, Throwable e)
+    {
+        loading.remove(key, future);
+        if (refreshed != null) refreshed.refreshing.set(false);
+        future.completeExceptionally(e);
+    }
+
+    /**
+     * A cached value with the time it was written
+     * @param <V> the value
+     */
+    private static final class Entry<V>
+    {
+        final CompletableFuture<V> future;
+        final long writeTime;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(V value, long writeTime)
+        {
+            future = CompletableFuture.completedFuture(value);
+            this.writeTime = writeTime;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.CacheEx;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * A cache interface
  *
@@ -22,6 +26,20 @@ public interface Cache<K, V> {
      * @param value the value
      */
     void put(K key, V value);
+
+    /**
+     * Remove a key from the cache
+     *
+     * @param key the key
+     * @return the removed value, or null if the key was not in the cache
+     */
+    V remove(K key);
+
+    /**
+     * Remove every entry of the cache
+     */
+    void invalidateAll();
+
     /**
      * Get the current size of the cache
      */
@@ -38,4 +56,51 @@ public interface Cache<K, V> {
      * @return the total number of cache misses
      */
     long getMissCount();
+
+    /**
+     * Get the values of several keys. The keys that are not
+     * in the cache are not in the returned map.
+     *
+     * @param keys the keys
+     * @return the keys that were found and their values
+     */
+    default Map<K, V> getAll(Iterable<? extends K> keys) {
+        return getAll(keys, null);
+    }
+
+    /**
+     * Get the values of several keys and collect the misses,
+     * so that they can be loaded together.
+     *
+     * @param keys the keys
+     * @param misses receives the keys that are not in the cache, can be null
+     * @return the keys that were found and their values
+     */
+    default Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses) {
+        Map<K, V> values = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) values.put(key, value);
+            else if (misses != null) misses.add(key);
+        }
+        return values;
+    }
+
+    /**
+     * Put several key value pairs in the cache
+     *
+     * @param entries the key value pairs
+     */
+    default void putAll(Map<? extends K, ? extends V> entries) {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Remove several keys from the cache
+     *
+     * @param keys the keys
+     */
+    default void invalidateAll(Iterable<? extends K> keys) {
+        for (K key : keys) remove(key);
+    }
 }
\ No newline at end of file
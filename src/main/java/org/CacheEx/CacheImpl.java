@@ -1,7 +1,26 @@
 package org.CacheEx;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.TreeMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * The Cache implementation
@@ -12,65 +31,387 @@ import java.util.TreeMap;
  * differ in the {@link CacheType} object that also has the necessary methods to do the correct operations
  * Also with the use of the Factory Pattern it determines the {@link CacheType}
  * based on the {@link CacheReplacementPolicy}
+ * <p>
+ *
+ * Entries can expire after they are written or accessed, or after a time to live given to {@code put}.
+ * The expired entries are reclaimed by a {@link TimerWheel} during the other operations, next to any policy
+ * <p>
+ *
+ * The entries can be streamed to a snapshot with {@link #writeSnapshot} and loaded by another cache with
+ * {@link #loadSnapshot}, e.g. to warm a new node from a peer. LRU, MRU and LFU write the entries in an order
+ * that rebuilds the same eviction order, the other policies rebuild their state from the loaded entries
+ * <p>
+ *
+ * With {@link #setWriteBehind} the cache is in front of a store: a put marks the entry dirty and the latest value
+ * of every key is written to the store by a background flusher in batches, so a key that is written many times
+ * between two flushes is written to the store once. A dirty entry is written before it is evicted or removed
  *
  * @param <K> the key
  * @param <V> the value
  */
-public class CacheImpl<K, V> implements Cache<K, V>
+public class CacheImpl<K, V> implements Cache<K, V>, Closeable
 {
+    private static final int INITIAL_SKETCH_SIZE = 1024;
+    private static final int INITIAL_SLOTS = 64;    //the slots of the CLOCK policies of a weighted cache
+    private static final int MAX_FREE_NODES = 16;
+    private static final int SHRINK_BATCH = 16;     //the entries above a reduced maximum weight that a write evicts
+
     private final CacheType<K, V> cacheType;
-    private final int capacity;
+    private long maximumWeight;             //the capacity, or the maximum total weight if there is a weigher
+    private long evictionLimit;             //above the maximum weight while the cache shrinks after setMaximumWeight
+    private final long maximumEntryWeight;  //heavier entries are not admitted
+    private final Weigher<? super K, ? super V> weigher;  //null if every entry weighs 1
     private int size;
-    private final HashMap<K, Node<K, V>> map;
+    private long weightedSize;
+    private final Map<K, Node<K, V>> map;
     private long hitCount, missCount;
+    private long expireAfterWriteNanos, expireAfterAccessNanos;     //0 if the entries do not expire
+    private Ticker ticker = Ticker.systemTicker();
+    private TimerWheel<K, V> timerWheel;    //created when the first expiration is configured
+    private StatsRecorder statsRecorder = StatsRecorder.disabled();
+    private boolean recordLatency;
+    private BiConsumer<? super K, ? super V> evictionHook;  //null if nobody is notified of the evictions
+    private RemovalNotifier<K, V> removalNotifier;          //null if there is no removal listener
+    private MissRatioCurve missRatioCurve;                  //null if the accesses are not sampled
+    private WriteBehind<K, V> writeBehind;                  //null if the writes are not written to a store
+    private boolean recycleNodes;
+    private boolean lockFreeReads;  //the nodes are read without the lock, see ConcurrentNode
+    private Node<K, V> freeNodes;   //evicted nodes kept for reuse (linked by next)
+    private int freeNodeCount;
 
     public CacheImpl(int capacity, CacheReplacementPolicy policy)
     {
-        this.capacity = capacity;
+        this(capacity, capacity, null, policy, new HashMap<>());
+    }
+
+    /**
+     * @param capacity the capacity
+     * @param policy the replacement policy
+     * @param recycleNodes if true, the nodes of the evicted entries are reused by the new entries and the nodes
+     *                     are kept in a {@link NodeTable}, so a put that evicts an entry does not allocate
+     *                     (except for the evicted keys that ARC, LIRS and CLOCK-Pro remember)
+     */
+    public CacheImpl(int capacity, CacheReplacementPolicy policy, boolean recycleNodes)
+    {
+        this(capacity, capacity, null, policy, recycleNodes ? new NodeTable<>(capacity) : new HashMap<>());
+        this.recycleNodes = recycleNodes;
+    }
+
+    /**
+     * Creates a cache on top of the given map. Used by {@link ConcurrentCacheImpl}
+     * to supply a map that can be read without holding the segment lock, the nodes
+     * are {@link ConcurrentNode}s so that their values can be read without the lock too
+     *
+     * @param capacity the capacity
+     * @param policy the replacement policy
+     * @param map an empty map that stores the nodes
+     */
+    CacheImpl(int capacity, CacheReplacementPolicy policy, Map<K, Node<K, V>> map)
+    {
+        this(capacity, capacity, null, policy, map);
+        lockFreeReads = true;
+    }
+
+    /**
+     * Creates a cache that is bounded by the total weight of its entries
+     *
+     * @param maximumWeight the maximum total weight
+     * @param weigher calculates the weight of an entry
+     * @param policy the replacement policy
+     */
+    public CacheImpl(long maximumWeight, Weigher<? super K, ? super V> weigher, CacheReplacementPolicy policy)
+    {
+        this(maximumWeight, maximumWeight, weigher, policy);
+    }
+
+    /**
+     * Creates a cache that is bounded by the total weight of its entries
+     * and does not admit entries that are heavier than a limit
+     *
+     * @param maximumWeight the maximum total weight
+     * @param maximumEntryWeight the maximum weight of an entry
+     * @param weigher calculates the weight of an entry
+     * @param policy the replacement policy
+     */
+    public CacheImpl(long maximumWeight, long maximumEntryWeight, Weigher<? super K, ? super V> weigher, CacheReplacementPolicy policy)
+    {
+        this(maximumWeight, maximumEntryWeight, Objects.requireNonNull(weigher, "weigher"), policy, new HashMap<>());
+    }
+
+    private CacheImpl(long maximumWeight, long maximumEntryWeight, Weigher<? super K, ? super V> weigher,
+                      CacheReplacementPolicy policy, Map<K, Node<K, V>> map)
+    {
+        if (maximumWeight < 0) throw new IllegalArgumentException("Maximum weight cannot be negative: " + maximumWeight);
+        this.maximumWeight = evictionLimit = maximumWeight;
+        this.maximumEntryWeight = maximumEntryWeight;
+        this.weigher = weigher;
         size = 0;
+        weightedSize = 0;
         hitCount = missCount = 0;
-        map = new HashMap<>();
+        this.map = map;
         cacheType = createCacheType(policy);
     }
 
     @Override
     public V get(K key)
     {
+        if (!recordLatency) return getValue(key);
+        long start = System.nanoTime();
+        V value = getValue(key);
+        statsRecorder.recordGetLatency(System.nanoTime() - start);
+        return value;
+    }
+
+    private V getValue(K key)
+    {
+        if (missRatioCurve != null) missRatioCurve.record(key);
+        long now = expireEntries();     //reclaim the expired entries
         Node<K, V> node = map.get(key);
+        if (node != null && hasExpired(node, now))  //an expired hit is a miss
+        {
+            removeNode(node, RemovalCause.EXPIRED);
+            node = null;
+        }
         if (node != null)   //if the node exists
         {
             hitCount++;             //increment hit count
+            statsRecorder.recordHits(1);
             cacheType.access(node); //do the necessary operation to the storing data structure
+            if (expireAfterAccessNanos > 0) scheduleExpiration(node, now);
             return node.getValue(); //return node value
         }
 
         missCount++; //increment miss count
+        statsRecorder.recordMisses(1);
         return null; //return null
     }
 
     @Override
-    public void put(K key, V value)
+    public void put(K key, V value) {put(key, value, 0);}
+
+    /**
+     * Puts a key value pair that expires after a duration, regardless of {@link #setExpireAfterWrite}
+     *
+     * @param key the key
+     * @param value the value
+     * @param duration the time to live of the entry
+     * @param unit the unit of the duration
+     */
+    public void put(K key, V value, long duration, TimeUnit unit)
+    {
+        if (duration <= 0) throw new IllegalArgumentException("Duration must be positive: " + duration);
+        ensureTimerWheel();
+        put(key, value, unit.toNanos(duration));
+    }
+
+    private void put(K key, V value, long timeToLive)
+    {
+        if (!recordLatency)
+        {
+            put(key, value, timeToLive, expireEntries());
+            return;
+        }
+        long start = System.nanoTime();
+        put(key, value, timeToLive, expireEntries());
+        statsRecorder.recordPutLatency(System.nanoTime() - start);
+    }
+
+    /**
+     * Looks up all the keys first and then applies the hits to the replacement policy as one batch
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses)
+    {
+        long now = expireEntries();     //reclaim the expired entries once for the batch
+        Map<K, V> values = new LinkedHashMap<>();
+        List<Node<K, V>> hits = new ArrayList<>();
+        int missesCount = 0;
+        for (K key : keys)
+        {
+            if (missRatioCurve != null) missRatioCurve.record(key);
+            Node<K, V> node = map.get(key);
+            if (node != null && hasExpired(node, now))  //an expired hit is a miss
+            {
+                removeNode(node, RemovalCause.EXPIRED);
+                node = null;
+            }
+            if (node == null)
+            {
+                missCount++;
+                missesCount++;
+                if (misses != null) misses.add(key);
+                continue;
+            }
+            hitCount++;
+            values.put(key, node.getValue());
+            hits.add(node);
+        }
+
+        for (Node<K, V> node : hits)
+        {
+            cacheType.access(node);
+            if (expireAfterAccessNanos > 0) scheduleExpiration(node, now);
+        }
+        statsRecorder.recordHits(hits.size());
+        statsRecorder.recordMisses(missesCount);
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries)
+    {
+        long now = expireEntries();     //reclaim the expired entries once for the batch
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) put(entry.getKey(), entry.getValue(), 0, now);
+    }
+
+    //puts a key value pair, a time to live of 0 uses the expire after write duration
+    private void put(K key, V value, long timeToLive, long now)
+    {
+        Node<K, V> node = put(key, value, timeToLive, 1, now);
+        if (writeBehind == null) return;
+        writeBehind.write(key, value);      //coalesced with the pending write of the key
+        if (node == null || map.get(key) != node) writeBehind.flush(key);  //not admitted or evicted by its own put, so it cannot wait in the cache
+    }
+
+    //puts a key value pair, a new entry starts with the given LFU frequency. Returns the node, or null if not admitted
+    private Node<K, V> put(K key, V value, long timeToLive, long frequency, long now)
     {
+        if (evictionLimit != maximumWeight) shrinkStep();
+        int weight = weigh(key, value);
         Node<K, V> node = map.get(key);
+        if (weight > maximumEntryWeight || weight > maximumWeight)    //too heavy to be admitted
+        {
+            if (node != null) removeNode(node, RemovalCause.SIZE); //the old value must not outlive the new one
+            return null;
+        }
         if (node != null)   //if key exist
         {
+            V oldValue = node.getValue();
             node.setValue(value);   //update the node value
+            int oldWeight = node.getWeight();
+            node.setWeight(weight);
+            weightedSize += weight - oldWeight;
+            statsRecorder.recordUpdate(weight - oldWeight);
+            if (removalNotifier != null && oldValue != value) removalNotifier.notify(key, oldValue, RemovalCause.REPLACED);
+            cacheType.reweigh(node, oldWeight);
             cacheType.access(node); //do the necessary operation to the storing data structure
-            return;
-        }
-        //if current size has reached the capacity
-        if (size == capacity)
-        {
-            node = cacheType.evict();   //evict node from storage
-            map.remove(node.getKey());  //remove node from map
-            size--;                     //decrement size
+            recordWrite(node, timeToLive, now);
+            evictUntilFits(0);      //a heavier value can push out other entries
+            return node;
         }
+        evictUntilFits(weight);     //evict until the new entry fits
 
         //add new node
-        Node<K, V> newNode = new Node<>(key, value);
+        Node<K, V> newNode = newNode(key, value);
+        newNode.setWeight(weight);
+        newNode.setFrequency(frequency);
         map.put(key, newNode);      //put node to map
         cacheType.insert(newNode);  //put node to cacheType object
         size++;                     //increment size
+        weightedSize += weight;
+        statsRecorder.recordPut(weight);
+        recordWrite(newNode, timeToLive, now);
+        return newNode;
+    }
+
+    /**
+     * Entries expire after a duration since they were written. Affects the entries that are written afterwards
+     * @param duration the duration
+     * @param unit the unit of the duration
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit)
+    {
+        if (duration <= 0) throw new IllegalArgumentException("Duration must be positive: " + duration);
+        expireAfterWriteNanos = unit.toNanos(duration);
+        ensureTimerWheel();
+    }
+
+    /**
+     * Entries expire after a duration since they were last read or written
+     * @param duration the duration
+     * @param unit the unit of the duration
+     */
+    public void setExpireAfterAccess(long duration, TimeUnit unit)
+    {
+        if (duration <= 0) throw new IllegalArgumentException("Duration must be positive: " + duration);
+        expireAfterAccessNanos = unit.toNanos(duration);
+        ensureTimerWheel();
+    }
+
+    /**
+     * Sets the source of time of the expiration. Must be set before any expiration is configured
+     * @param ticker the ticker
+     */
+    public void setTicker(Ticker ticker)
+    {
+        if (timerWheel != null) throw new IllegalStateException("The ticker must be set before the expiration");
+        this.ticker = Objects.requireNonNull(ticker, "ticker");
+    }
+
+    /**
+     * Sets the recorder of the statistics, by default nothing is recorded. Must be set while the cache is empty
+     * @param statsRecorder the recorder
+     */
+    public void setStatsRecorder(StatsRecorder statsRecorder)
+    {
+        if (size > 0) throw new IllegalStateException("The stats recorder must be set while the cache is empty");
+        this.statsRecorder = Objects.requireNonNull(statsRecorder, "statsRecorder");
+        recordLatency = statsRecorder.isRecordingLatency();
+    }
+
+    /**
+     * @return the statistics that were recorded until now by the {@link StatsRecorder}
+     */
+    public CacheStats snapshot() {return statsRecorder.snapshot();}
+
+    /**
+     * Removes the expired entries now instead of during the next operation. Expired entries are
+     * never returned, but they are counted by {@link #getSize()} until they are removed
+     */
+    public void cleanUp()
+    {
+        expireEntries();
+        if (evictionLimit != maximumWeight) shrinkStep();
+    }
+
+    /**
+     * @return the total weight of the entries, the same as the size if there is no weigher
+     */
+    public long getWeightedSize() {return weightedSize;}
+
+    /**
+     * @return the capacity, or the maximum total weight if there is a weigher
+     */
+    public long getMaximumWeight() {return maximumWeight;}
+
+    /**
+     * Changes the capacity, or the maximum total weight if there is a weigher. A larger maximum applies at once.
+     * After a smaller maximum the cache shrinks incrementally: every write (and {@link #cleanUp()}) evicts a few
+     * entries of the excess, so one call never has to evict the whole excess
+     * @param maximumWeight the new capacity or maximum total weight
+     */
+    public void setMaximumWeight(long maximumWeight)
+    {
+        if (maximumWeight < 0) throw new IllegalArgumentException("Maximum weight cannot be negative: " + maximumWeight);
+        this.maximumWeight = maximumWeight;
+        evictionLimit = Math.max(maximumWeight, Math.min(evictionLimit, weightedSize));
+        cacheType.resize(maximumWeight);
+    }
+
+    /**
+     * Records the keys of the reads in a miss ratio curve, which predicts the hit ratio at other capacities
+     * @param missRatioCurve the curve, null for none
+     */
+    public void setMissRatioCurve(MissRatioCurve missRatioCurve) {this.missRatioCurve = missRatioCurve;}
+
+    /**
+     * Changes the capacity of a cache without a weigher, see {@link #setMaximumWeight(long)}
+     * @param capacity the new capacity
+     */
+    public void setCapacity(int capacity)
+    {
+        if (weigher != null) throw new IllegalStateException("A weighted cache is resized with setMaximumWeight");
+        setMaximumWeight(capacity);
     }
 
     @Override
@@ -82,6 +423,359 @@ public class CacheImpl<K, V> implements Cache<K, V>
     @Override
     public long getMissCount() {return missCount;}
 
+    @Override
+    public V remove(K key)
+    {
+        Node<K, V> node = map.get(key);
+        if (node == null) return null;
+        removeNode(node, RemovalCause.EXPLICIT);
+        return node.getValue();
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        if (writeBehind != null)
+        {
+            try {writeBehind.flush();}  //one batch instead of a write per dirty entry
+            catch (RuntimeException e)
+            {
+                //the failed entries are written one by one as they are removed
+            }
+        }
+        for (Node<K, V> node : new ArrayList<>(map.values())) removeNode(node, RemovalCause.EXPLICIT);
+    }
+
+    /**
+     * Notifies a listener of every removed entry (see {@link RemovalCause}). The notifications are delivered
+     * in the common fork join pool, so the listener does not add to the latency of the cache operations
+     * @param listener the listener, null for none
+     */
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener)
+    {
+        setRemovalListener(listener, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Notifies a listener of every removed entry (see {@link RemovalCause})
+     * @param listener the listener, null for none
+     * @param executor delivers the notifications
+     */
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener, Executor executor)
+    {
+        setRemovalNotifier(listener == null ? null
+                : new RemovalNotifier<>(listener, Objects.requireNonNull(executor, "executor"), RemovalNotifier.DEFAULT_QUEUE_CAPACITY));
+    }
+
+    //the segments of a ConcurrentCacheImpl share one notifier
+    void setRemovalNotifier(RemovalNotifier<K, V> removalNotifier) {this.removalNotifier = removalNotifier;}
+
+    /**
+     * Writes the puts to a store behind the cache. A put marks the entry dirty and leaves the write to a background
+     * flusher, which writes the latest value of every dirty key in batches every interval, or as soon as a batch
+     * is full. A dirty entry is written on the thread of the cache operation before it is evicted, expires or is
+     * removed, so the store is up to date for the keys that are not in the cache. A failed write is retried at the
+     * next flush. The writer must not use the cache. Must be set once, while the cache is empty
+     *
+     * @param writer writes the entries to the store
+     * @param batchSize the maximum number of entries of a {@link CacheWriter#writeAll}
+     * @param interval the longest time that a write waits in the cache
+     * @param unit the unit of the interval
+     */
+    public void setWriteBehind(CacheWriter<? super K, ? super V> writer, int batchSize, long interval, TimeUnit unit)
+    {
+        if (size > 0 || writeBehind != null) throw new IllegalStateException("The write-behind must be set once, while the cache is empty");
+        setWriteBehind(new WriteBehind<>(Objects.requireNonNull(writer, "writer"), batchSize, interval, unit));
+    }
+
+    //the segments of a ConcurrentCacheImpl share one flusher
+    void setWriteBehind(WriteBehind<K, V> writeBehind) {this.writeBehind = writeBehind;}
+
+    /**
+     * Writes the dirty entries to the store now, if the cache writes behind
+     * @throws java.util.concurrent.CompletionException if the writer fails, the entries that were not written stay dirty
+     */
+    public void flush()
+    {
+        if (writeBehind != null) writeBehind.flush();
+    }
+
+    /**
+     * Writes the dirty entries and stops the flusher of a write-behind cache, the later puts are not written.
+     * Does nothing for a cache that does not write behind
+     * @throws java.util.concurrent.CompletionException if the writer fails, the cache still writes behind and can be closed again
+     */
+    @Override
+    public void close()
+    {
+        if (writeBehind == null) return;
+        writeBehind.close();
+        writeBehind = null;
+    }
+
+    /**
+     * Writes the entries that have not expired to a snapshot, see {@link SnapshotCodec} for the format.
+     * The entries are streamed through one buffer, so the memory use does not depend on the size of the cache
+     *
+     * @param channel the channel
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries written
+     */
+    public long writeSnapshot(WritableByteChannel channel, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        SnapshotCodec<K, V> codec = new SnapshotCodec<>(keySerializer, valueSerializer);
+        codec.writeHeader();
+        long[] count = {0};
+        forEachInSnapshotOrder((key, value, frequency) -> {
+            codec.writeEntry(channel, key, value, frequency);
+            count[0]++;
+        });
+        codec.writeEnd(channel);
+        return count[0];
+    }
+
+    /**
+     * Writes the entries that have not expired to a snapshot, see {@link SnapshotCodec} for the format
+     *
+     * @param out the stream, it is not closed
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries written
+     */
+    public long writeSnapshot(OutputStream out, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return writeSnapshot(Channels.newChannel(out), keySerializer, valueSerializer);
+    }
+
+    /**
+     * Puts the entries of a snapshot in the order in which they were written. New entries keep their LFU
+     * frequency, entries that do not fit are evicted like with {@code put}
+     *
+     * @param channel the channel, it is read up to the end of the snapshot
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries read
+     */
+    public long loadSnapshot(ReadableByteChannel channel, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return new SnapshotCodec<>(keySerializer, valueSerializer).read(channel, this::restore);
+    }
+
+    /**
+     * Puts the entries of a snapshot in the order in which they were written
+     *
+     * @param in the stream, it is not closed
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries read
+     */
+    public long loadSnapshot(InputStream in, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return loadSnapshot(Channels.newChannel(in), keySerializer, valueSerializer);
+    }
+
+    /**
+     * Passes the entries that have not expired to an action in the order of a snapshot.
+     * Used by {@link ConcurrentCacheImpl} to copy a segment under its lock
+     * @param action the action
+     */
+    void forEachInSnapshotOrder(SnapshotCodec.EntryAction<K, V> action) throws IOException
+    {
+        long now = timerWheel == null ? 0 : ticker.read();
+        try
+        {
+            cacheType.forEachInInsertionOrder(map.values(), node -> {
+                if (hasExpired(node, now)) return;
+                try {action.accept(node.getKey(), node.getValue(), node.getFrequency());}
+                catch (IOException e) {throw new UncheckedIOException(e);}
+            });
+        }
+        catch (UncheckedIOException e) {throw e.getCause();}
+    }
+
+    /**
+     * Puts an entry of a snapshot, a new entry starts with the given LFU frequency
+     */
+    void restore(K key, V value, long frequency) {put(key, value, 0, Math.max(frequency, 1), expireEntries());}
+
+    /**
+     * Passes every entry that has not expired to an action, without updating the statistics or the replacement policy
+     * @param action the action
+     */
+    void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        long now = timerWheel == null ? 0 : ticker.read();
+        for (Node<K, V> node : map.values())
+        {
+            if (!hasExpired(node, now)) action.accept(node.getKey(), node.getValue());
+        }
+    }
+
+    /**
+     * Sets an action that is called with every entry that the replacement policy evicts, on the thread that
+     * caused the eviction and after the entry was removed. Used by {@link TieredCache} to demote the evicted entries
+     * @param evictionHook the action, null for none
+     */
+    void setEvictionHook(BiConsumer<? super K, ? super V> evictionHook) {this.evictionHook = evictionHook;}
+
+    /**
+     * Looks up the node of a key without updating the statistics or the replacement policy
+     * @param key the key
+     * @return the node or null if the key is not in the cache
+     */
+    Node<K, V> getNode(K key) {return map.get(key);}
+
+    /**
+     * Applies a delayed access to the replacement policy. The node is ignored
+     * if it has been evicted or replaced since it was read
+     * @param node the node that was accessed
+     */
+    void recordAccess(Node<K, V> node)
+    {
+        if (map.get(node.getKey()) == node) cacheType.access(node);
+    }
+
+    private void ensureTimerWheel()
+    {
+        if (timerWheel == null) timerWheel = new TimerWheel<>(ticker.read());
+    }
+
+    //advances the timer wheel and returns the current time, or 0 if nothing expires
+    private long expireEntries()
+    {
+        if (timerWheel == null) return 0;
+        long now = ticker.read();
+        timerWheel.advance(now, node -> {
+            removeNode(node, RemovalCause.EXPIRED);
+            return true;
+        });
+        return now;
+    }
+
+    private boolean hasExpired(Node<K, V> node, long now)
+    {
+        return timerWheel != null && TimerWheel.isScheduled(node) && node.getTimer().expirationTime - now <= 0;
+    }
+
+    //sets the time to live of a written node and schedules its expiration
+    private void recordWrite(Node<K, V> node, long timeToLive, long now)
+    {
+        if (timerWheel == null) return;
+        TimerWheel.Timer<K, V> timer = TimerWheel.timerOf(node);
+        timer.writeTime = now;
+        timer.timeToLive = timeToLive > 0 ? timeToLive : expireAfterWriteNanos;
+        scheduleExpiration(node, now);
+    }
+
+    //the node expires at the earlier of the expire after write and the expire after access time
+    private void scheduleExpiration(Node<K, V> node, long now)
+    {
+        TimerWheel.Timer<K, V> timer = TimerWheel.timerOf(node);
+        boolean expires = false;
+        long time = 0;
+        if (timer.timeToLive > 0)
+        {
+            time = timer.writeTime + timer.timeToLive;
+            expires = true;
+        }
+        if (expireAfterAccessNanos > 0)
+        {
+            long accessTime = now + expireAfterAccessNanos;
+            if (!expires || accessTime - time < 0) time = accessTime;
+            expires = true;
+        }
+
+        if (expires)
+        {
+            timer.expirationTime = time;
+            timerWheel.schedule(node);
+        }
+        else timerWheel.deschedule(node);
+    }
+
+    /**
+     * The capacity in entries of the policies that count entries (ARC and LIRS). With a weigher
+     * the number of entries that fit is unknown, so it is estimated by the current number of entries
+     */
+    private int entryCapacity()
+    {
+        if (weigher == null) return (int) Math.min(maximumWeight, Integer.MAX_VALUE);
+        return Math.max(size, 1);
+    }
+
+    private int weigh(K key, V value)
+    {
+        if (weigher == null) return 1;
+        int weight = weigher.weigh(key, value);
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative: " + weight);
+        return weight;
+    }
+
+    //evicts entries until an entry of the given weight fits
+    private void evictUntilFits(int weight)
+    {
+        while (size > 0 && weightedSize + weight > evictionLimit) evict();
+    }
+
+    //evicts a batch of the entries above a reduced maximum weight and lowers the limit of the evictions
+    private void shrinkStep()
+    {
+        for (int i = 0; i < SHRINK_BATCH && size > 0 && weightedSize > maximumWeight; i++) evict();
+        evictionLimit = Math.max(maximumWeight, weightedSize);
+    }
+
+    //evicts the node that the replacement policy selects
+    private void evict()
+    {
+        Node<K, V> node = cacheType.evict();    //evict node from storage
+        flushIfDirty(node);
+        map.remove(node.getKey());              //remove node from map
+        size--;                                 //decrement size
+        weightedSize -= node.getWeight();
+        if (timerWheel != null) timerWheel.deschedule(node);
+        statsRecorder.recordRemoval(RemovalCause.SIZE, node.getWeight());
+        if (evictionHook != null) evictionHook.accept(node.getKey(), node.getValue());
+        if (removalNotifier != null) removalNotifier.notify(node.getKey(), node.getValue(), RemovalCause.SIZE);
+        if (recycleNodes && freeNodeCount < MAX_FREE_NODES)
+        {
+            node.setNext(freeNodes);    //the old key and value are kept until the node is reused
+            freeNodes = node;
+            freeNodeCount++;
+        }
+    }
+
+    //takes an evicted node from the free list or creates a new one
+    private Node<K, V> newNode(K key, V value)
+    {
+        if (freeNodes == null) return lockFreeReads ? new ConcurrentNode<>(key, value) : cacheType.newNode(key, value);
+        Node<K, V> node = freeNodes;
+        freeNodes = node.getNext();
+        freeNodeCount--;
+        node.reset(key, value);
+        return node;
+    }
+
+    //removes a node that is still in the cache
+    private void removeNode(Node<K, V> node, RemovalCause cause)
+    {
+        flushIfDirty(node);
+        cacheType.remove(node);
+        map.remove(node.getKey());
+        size--;
+        weightedSize -= node.getWeight();
+        if (timerWheel != null) timerWheel.deschedule(node);
+        statsRecorder.recordRemoval(cause, node.getWeight());
+        if (removalNotifier != null) removalNotifier.notify(node.getKey(), node.getValue(), cause);
+    }
+
+    //writes a node that leaves the cache to the store, before readers can miss it and read the store.
+    //The pending writes are the dirty entries, so the nodes carry no dirty flag
+    private void flushIfDirty(Node<K, V> node)
+    {
+        if (writeBehind != null) writeBehind.flush(node.getKey());
+    }
+
     //factory pattern to create CacheType based on the CacheReplacementPolicy enum
     private CacheType<K, V> createCacheType(CacheReplacementPolicy policy)
     {
@@ -93,6 +787,16 @@ public class CacheImpl<K, V> implements Cache<K, V>
                 return new MRU();
             case LFU:
                 return new LFU();
+            case WTINYLFU:
+                return new WTinyLFU(maximumWeight);
+            case ARC:
+                return new ARC();
+            case LIRS:
+                return new LIRS();
+            case CLOCK:
+                return new Clock();
+            case CLOCK_PRO:
+                return new ClockPro();
             default:
                 throw new IllegalArgumentException("Unsupported cache replacement policy: " + policy);
         }
@@ -109,6 +813,33 @@ public class CacheImpl<K, V> implements Cache<K, V>
         void access(Node<K, V> node);
         void insert(Node<K, V> node);
         Node<K, V> evict();
+        void remove(Node<K, V> node);
+
+        /**
+         * Creates the node of a new entry, the policies that keep state in the nodes create a subclass
+         */
+        default Node<K, V> newNode(K key, V value) {return new Node<>(key, value);}
+
+        /**
+         * Passes the nodes to an action in the order in which inserting them again rebuilds the eviction order.
+         * The policies that cannot be rebuilt by insertions pass the nodes in the order of the map
+         * @param nodes every node of the cache
+         * @param action the action
+         */
+        default void forEachInInsertionOrder(Collection<Node<K, V>> nodes, Consumer<Node<K, V>> action) {nodes.forEach(action);}
+
+        /**
+         * Called when the maximum weight changes, the policies that use {@link #entryCapacity()} follow it by themselves
+         * @param maximumWeight the new maximum weight
+         */
+        default void resize(long maximumWeight) {}
+
+        /**
+         * Called when the weight of a node changes
+         * @param node the node, it already has the new weight
+         * @param oldWeight the previous weight
+         */
+        default void reweigh(Node<K, V> node, int oldWeight) {}
     }
 
     private class LRU implements CacheType<K, V>
@@ -123,6 +854,16 @@ public class CacheImpl<K, V> implements Cache<K, V>
 
         @Override
         public Node<K, V> evict() {return list.deleteHead();}
+
+        @Override
+        public void remove(Node<K, V> node) {list.detachFromList(node);}
+
+        //from the head, every node is inserted at the tail
+        @Override
+        public void forEachInInsertionOrder(Collection<Node<K, V>> nodes, Consumer<Node<K, V>> action)
+        {
+            for (Node<K, V> node = list.getHead(); node != null; node = node.getNext()) action.accept(node);
+        }
     }
 
     private class MRU implements CacheType<K, V>
@@ -137,36 +878,910 @@ public class CacheImpl<K, V> implements Cache<K, V>
 
         @Override
         public Node<K, V> evict() {return list.deleteTail();}
+
+        @Override
+        public void remove(Node<K, V> node) {list.detachFromList(node);}
+
+        //from the head, every node is inserted at the tail
+        @Override
+        public void forEachInInsertionOrder(Collection<Node<K, V>> nodes, Consumer<Node<K, V>> action)
+        {
+            for (Node<K, V> node = list.getHead(); node != null; node = node.getNext()) action.accept(node);
+        }
     }
 
+    /**
+     * LFU with O(1) operations. The nodes are kept in {@link FrequencyBucket}s that are linked
+     * in ascending frequency order, and every node knows its bucket through {@link Node#getList()}.
+     * Inside a bucket the nodes are kept in insertion order, so ties are evicted oldest first
+     */
     private class LFU implements CacheType<K, V>
     {
-        private final TreeMap<Long, CustomLinkedList<K, V>> frequencyMap = new TreeMap<>();
+        private static final int MAX_FREE_BUCKETS = 16;
+
+        private FrequencyBucket<K, V> lowest;       //the bucket with the lowest frequency
+        private FrequencyBucket<K, V> freeBuckets;  //empty buckets kept for reuse (linked by next)
+        private int freeBucketCount;
 
         @Override
         public void access(Node<K, V> node)
         {
-            long frequency = node.getFrequency(); // get the frequency of the node
-            frequencyMap.get(frequency).detachFromList(node); // detach the node from the list
-            if (frequencyMap.get(frequency).isEmpty()) frequencyMap.remove(frequency); // save memory
-
+            FrequencyBucket<K, V> bucket = (FrequencyBucket<K, V>) node.getList();
             node.incrementFrequency();
-            frequencyMap.computeIfAbsent(node.getFrequency(), k -> new CustomLinkedList<>()).insertAtTail(node); // insert node to the list
+            long frequency = node.getFrequency();
+
+            FrequencyBucket<K, V> next = bucket.getNext();
+            if (next == null || next.getFrequency() != frequency)
+            {
+                //the node is alone in its bucket, so the bucket can move to the new frequency
+                if (bucket.getHead() == bucket.getTail())
+                {
+                    bucket.setFrequency(frequency);
+                    return;
+                }
+                next = newBucket(frequency);
+                linkAfter(bucket, next);
+            }
+
+            bucket.detachFromList(node);                    //detach the node from its bucket
+            if (bucket.isEmpty()) unlink(bucket);           //save memory
+            next.insertAtTail(node);                        //insert node to the next bucket
+        }
+
+        @Override
+        public void insert(Node<K, V> node)
+        {
+            long frequency = node.getFrequency();
+            if (lowest == null || lowest.getFrequency() > frequency)
+            {
+                FrequencyBucket<K, V> bucket = newBucket(frequency);
+                bucket.setNext(lowest);
+                if (lowest != null) lowest.setPrev(bucket);
+                lowest = bucket;
+            }
+
+            //a new node has the lowest frequency, except a node of a snapshot
+            FrequencyBucket<K, V> bucket = lowest;
+            while (bucket.getFrequency() != frequency && bucket.getNext() != null && bucket.getNext().getFrequency() <= frequency)
+            {
+                bucket = bucket.getNext();
+            }
+            if (bucket.getFrequency() != frequency)
+            {
+                FrequencyBucket<K, V> next = newBucket(frequency);
+                linkAfter(bucket, next);
+                bucket = next;
+            }
+            bucket.insertAtTail(node); // insert node to the list
+        }
+
+        //from the highest frequency, so that every bucket is inserted below the others
+        @Override
+        public void forEachInInsertionOrder(Collection<Node<K, V>> nodes, Consumer<Node<K, V>> action)
+        {
+            FrequencyBucket<K, V> highest = lowest;
+            while (highest != null && highest.getNext() != null) highest = highest.getNext();
+            for (FrequencyBucket<K, V> bucket = highest; bucket != null; bucket = bucket.getPrev())
+            {
+                for (Node<K, V> node = bucket.getHead(); node != null; node = node.getNext()) action.accept(node);
+            }
+        }
+
+        @Override
+        public Node<K, V> evict()
+        {
+            if (lowest == null) return null;
+            Node<K, V> node = lowest.deleteHead(); // get the head of the lowest frequency bucket
+            if (lowest.isEmpty()) unlink(lowest);   // save memory
+            return node;
+        }
+
+        @Override
+        public void remove(Node<K, V> node)
+        {
+            FrequencyBucket<K, V> bucket = (FrequencyBucket<K, V>) node.getList();
+            bucket.detachFromList(node);
+            if (bucket.isEmpty()) unlink(bucket);
+        }
+
+        //takes an empty bucket from the free list or creates a new one
+        private FrequencyBucket<K, V> newBucket(long frequency)
+        {
+            if (freeBuckets == null) return new FrequencyBucket<>(frequency);
+            FrequencyBucket<K, V> bucket = freeBuckets;
+            freeBuckets = bucket.getNext();
+            freeBucketCount--;
+            bucket.setNext(null);
+            bucket.setFrequency(frequency);
+            return bucket;
+        }
+
+        //links a bucket after another bucket
+        private void linkAfter(FrequencyBucket<K, V> bucket, FrequencyBucket<K, V> newBucket)
+        {
+            newBucket.setPrev(bucket);
+            newBucket.setNext(bucket.getNext());
+            if (bucket.getNext() != null) bucket.getNext().setPrev(newBucket);
+            bucket.setNext(newBucket);
+        }
+
+        //removes an empty bucket from the bucket list and keeps it for reuse
+        private void unlink(FrequencyBucket<K, V> bucket)
+        {
+            if (bucket.getPrev() != null) bucket.getPrev().setNext(bucket.getNext());
+            if (bucket.getNext() != null) bucket.getNext().setPrev(bucket.getPrev());
+            if (bucket == lowest) lowest = bucket.getNext();
+
+            bucket.setPrev(null);
+            bucket.setNext(null);
+            if (freeBucketCount < MAX_FREE_BUCKETS)
+            {
+                bucket.setNext(freeBuckets);
+                freeBuckets = bucket;
+                freeBucketCount++;
+            }
+        }
+    }
+
+    /**
+     * W-TinyLFU. New nodes enter a small LRU window (1% of the capacity). The main region is a
+     * segmented LRU: nodes enter the probation segment and move to the protected segment (80% of the
+     * main region) when they are hit again. When the cache is full the oldest window node (the candidate)
+     * competes with the oldest probation node (the victim) and the one with the lower estimated
+     * frequency in the {@link FrequencySketch} is evicted, which keeps one hit wonders out of the main region.
+     * With a {@link Weigher} the regions are sized by weight and the sketch grows with the number of entries
+     */
+    private class WTinyLFU implements CacheType<K, V>
+    {
+        private final CustomLinkedList<K, V> window = new CustomLinkedList<>();
+        private final CustomLinkedList<K, V> probation = new CustomLinkedList<>();
+        private final CustomLinkedList<K, V> protectedList = new CustomLinkedList<>();
+        private final FrequencySketch<K> sketch;
+        private long maxWindow, maxProtected;
+        private long windowSize, protectedSize;     //the weight of the window and the protected segment
+        private long sketchSize;                    //the number of entries the sketch is sized for
+
+        WTinyLFU(long capacity)
+        {
+            resize(capacity);
+            //the number of entries of a weighted cache is unknown, the sketch starts small
+            sketchSize = weigher == null ? capacity : Math.min(capacity, INITIAL_SKETCH_SIZE);
+            sketch = new FrequencySketch<>(sketchSize);
+        }
+
+        //the regions that are too large after a shrink are trimmed by the next inserts and promotions
+        @Override
+        public void resize(long capacity)
+        {
+            maxWindow = Math.max(1, capacity / 100);
+            maxProtected = (long) ((capacity - maxWindow) * 0.8);
+        }
+
+        @Override
+        public void access(Node<K, V> node)
+        {
+            sketch.increment(node.getKey());
+            CustomLinkedList<K, V> list = node.getList();
+            if (list == probation)
+            {
+                //a second hit promotes the node to the protected segment
+                probation.detachFromList(node);
+                protectedList.insertAtTail(node);
+                protectedSize += node.getWeight();
+                while (protectedSize > maxProtected && protectedList.getHead() != node)   //demote the oldest protected nodes
+                {
+                    Node<K, V> demoted = protectedList.deleteHead();
+                    protectedSize -= demoted.getWeight();
+                    probation.insertAtTail(demoted);
+                }
+            }
+            else list.moveToTail(node);  //window or protected
         }
 
         @Override
         public void insert(Node<K, V> node)
         {
-            frequencyMap.computeIfAbsent(node.getFrequency(), k -> new CustomLinkedList<>()).insertAtTail(node); // insert node to the list
+            if (size >= sketchSize)
+            {
+                sketchSize = Math.max(size + 1, sketchSize * 2);
+                sketch.ensureCapacity(sketchSize);
+            }
+            sketch.increment(node.getKey());
+            window.insertAtTail(node);
+            windowSize += node.getWeight();
+            while (windowSize > maxWindow && !window.isEmpty())  //the oldest window nodes move to the main region
+            {
+                Node<K, V> moved = window.deleteHead();
+                windowSize -= moved.getWeight();
+                probation.insertAtTail(moved);
+            }
+        }
+
+        @Override
+        public void remove(Node<K, V> node)
+        {
+            if (node.getList() == window) windowSize -= node.getWeight();
+            else if (node.getList() == protectedList) protectedSize -= node.getWeight();
+            node.getList().detachFromList(node);
+        }
+
+        @Override
+        public void reweigh(Node<K, V> node, int oldWeight)
+        {
+            if (node.getList() == window) windowSize += node.getWeight() - oldWeight;
+            else if (node.getList() == protectedList) protectedSize += node.getWeight() - oldWeight;
         }
 
         @Override
         public Node<K, V> evict()
         {
-            long lowestFrequency = frequencyMap.firstKey(); // get the lowest frequency
-            Node<K, V> node = frequencyMap.get(lowestFrequency).deleteHead(); // get the head of the list
-            if (frequencyMap.get(lowestFrequency).isEmpty()) frequencyMap.remove(lowestFrequency); // save memory
+            Node<K, V> candidate = window.getHead();
+            Node<K, V> victim = probation.isEmpty() ? protectedList.getHead() : probation.getHead();
+            if (victim == null)
+            {
+                if (candidate != null) windowSize -= candidate.getWeight();
+                return window.deleteHead();
+            }
+            if (candidate == null) return removeFromMain(victim);
+
+            window.detachFromList(candidate);
+            windowSize -= candidate.getWeight();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey()))
+            {
+                //the candidate is admitted to the main region in the place of the victim
+                Node<K, V> evicted = removeFromMain(victim);
+                probation.insertAtTail(candidate);
+                return evicted;
+            }
+            return candidate;
+        }
+
+        //detaches a node from the probation or the protected segment
+        private Node<K, V> removeFromMain(Node<K, V> node)
+        {
+            if (node.getList() == protectedList) protectedSize -= node.getWeight();
+            node.getList().detachFromList(node);
             return node;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * ARC (Adaptive Replacement Cache). The cached nodes are split between T1 (seen once recently) and
+     * T2 (seen at least twice), both in LRU order. The keys of the nodes evicted from T1 and T2 are
+     * remembered in the ghost lists B1 and B2. A miss on a key of B1 means that T1 was too small, so the
+     * target size of T1 grows, a miss on a key of B2 makes it shrink, and the victim is taken from T1 while
+     * T1 is larger than its target. The ghost lists hold at most as many keys as the capacity
+     */
+    private class ARC implements CacheType<K, V>
+    {
+        private final CustomLinkedList<K, V> t1 = new CustomLinkedList<>(), t2 = new CustomLinkedList<>();
+        private final CustomLinkedList<K, V> b1 = new CustomLinkedList<>(), b2 = new CustomLinkedList<>();
+        private final Map<K, Node<K, V>> ghosts = new HashMap<>();  //the nodes of B1 and B2 (without values)
+        private int t1Size, t2Size, b1Size, b2Size;
+        private int target;     //the target size of T1 (p in the paper)
+
+        @Override
+        public void access(Node<K, V> node)
+        {
+            if (node.getList() == t1)   //a second hit moves the node to the frequent list
+            {
+                t1.detachFromList(node);
+                t1Size--;
+                t2.insertAtTail(node);
+                t2Size++;
+            }
+            else t2.moveToTail(node);
+        }
+
+        @Override
+        public void insert(Node<K, V> node)
+        {
+            Node<K, V> ghost = ghosts.remove(node.getKey());
+            if (ghost == null)
+            {
+                t1.insertAtTail(node);
+                t1Size++;
+                return;
+            }
+
+            //the key was evicted recently, adapt the target of T1 and treat it as a frequent key
+            if (ghost.getList() == b1)
+            {
+                target = Math.min(entryCapacity(), target + Math.max(b2Size / Math.max(b1Size, 1), 1));
+                b1.detachFromList(ghost);
+                b1Size--;
+            }
+            else
+            {
+                target = Math.max(0, target - Math.max(b1Size / Math.max(b2Size, 1), 1));
+                b2.detachFromList(ghost);
+                b2Size--;
+            }
+            t2.insertAtTail(node);
+            t2Size++;
+        }
+
+        @Override
+        public Node<K, V> evict()
+        {
+            Node<K, V> victim;
+            if (t1Size > 0 && (t1Size > target || t2Size == 0))
+            {
+                victim = t1.deleteHead();
+                t1Size--;
+                addGhost(victim.getKey(), b1);
+                b1Size++;
+            }
+            else
+            {
+                victim = t2.deleteHead();
+                if (victim == null) return null;
+                t2Size--;
+                addGhost(victim.getKey(), b2);
+                b2Size++;
+            }
+            trimGhosts();
+            return victim;
+        }
+
+        @Override
+        public void remove(Node<K, V> node)
+        {
+            if (node.getList() == t1) t1Size--;
+            else t2Size--;
+            node.getList().detachFromList(node);
+        }
+
+        private void addGhost(K key, CustomLinkedList<K, V> list)
+        {
+            Node<K, V> ghost = new Node<>(key, null);
+            list.insertAtTail(ghost);
+            ghosts.put(key, ghost);
+        }
+
+        //|T1| + |B1| and |B2| are bounded by the capacity, as in the paper
+        private void trimGhosts()
+        {
+            int capacity = entryCapacity();
+            while (b1Size > 0 && t1Size + b1Size > capacity)
+            {
+                ghosts.remove(b1.deleteHead().getKey());
+                b1Size--;
+            }
+            while (b2Size > 0 && b1Size + b2Size > capacity)
+            {
+                ghosts.remove(b2.deleteHead().getKey());
+                b2Size--;
+            }
+        }
+    }
+
+    /**
+     * LIRS (Low Inter-reference Recency Set). Keys with a short distance between their last two accesses
+     * (LIR) are kept in the cache, the others (HIR) only get a small part of it (1%) and are evicted first.
+     * The stack S orders the LIR keys and the recently seen HIR keys by recency, the queue Q holds the cached
+     * HIR keys in eviction order. A HIR key that is hit while it is still in S has a shorter reuse distance
+     * than the oldest LIR key, so they switch status. Evicted HIR keys that are still in S are kept as
+     * non-resident ghosts, at most as many as the capacity
+     */
+    private class LIRS implements CacheType<K, V>
+    {
+        private final Map<K, LirsEntry<K, V>> entries = new HashMap<>();
+        private final LirsEntry<K, V> stack = new LirsEntry<>(null);       //the sentinel of S, the top is stack.sPrev
+        private final LirsEntry<K, V> queue = new LirsEntry<>(null);       //the sentinel of Q, the front is queue.qNext
+        private final LirsEntry<K, V> nonResident = new LirsEntry<>(null); //the sentinel of the ghosts (linked by the Q links)
+        private int lirCount, nonResidentCount;
+
+        LIRS()
+        {
+            stack.sNext = stack.sPrev = stack;
+            queue.qNext = queue.qPrev = queue;
+            nonResident.qNext = nonResident.qPrev = nonResident;
+        }
+
+        @Override
+        public void access(Node<K, V> node)
+        {
+            LirsEntry<K, V> entry = entries.get(node.getKey());
+            if (entry.status == LirsEntry.LIR)
+            {
+                boolean bottom = stack.sNext == entry;
+                pushToTop(entry);
+                if (bottom) pruneStack();
+            }
+            else if (entry.inStack())   //a HIR key hit again while in S becomes LIR
+            {
+                unlinkQueue(entry);
+                pushToTop(entry);
+                entry.status = LirsEntry.LIR;
+                lirCount++;
+                if (lirCount > maxLir()) demoteBottom();
+            }
+            else
+            {
+                pushToTop(entry);
+                unlinkQueue(entry);
+                linkQueue(queue, entry);
+            }
+        }
+
+        @Override
+        public void insert(Node<K, V> node)
+        {
+            LirsEntry<K, V> entry = entries.get(node.getKey());
+            if (entry == null)
+            {
+                entry = new LirsEntry<>(node.getKey());
+                entries.put(node.getKey(), entry);
+            }
+            else    //a non-resident ghost
+            {
+                unlinkQueue(entry);
+                nonResidentCount--;
+            }
+            entry.node = node;
+
+            if (lirCount < maxLir())  //the LIR set is not full yet
+            {
+                pushToTop(entry);
+                entry.status = LirsEntry.LIR;
+                lirCount++;
+            }
+            else if (entry.inStack())    //the ghost was accessed recently enough to become LIR
+            {
+                pushToTop(entry);
+                entry.status = LirsEntry.LIR;
+                lirCount++;
+                if (lirCount > maxLir()) demoteBottom();
+            }
+            else
+            {
+                pushToTop(entry);
+                entry.status = LirsEntry.HIR;
+                linkQueue(queue, entry);
+            }
+        }
+
+        @Override
+        public Node<K, V> evict()
+        {
+            LirsEntry<K, V> entry = queue.qNext;
+            if (entry == queue)     //no cached HIR key (e.g. after removals), evict the oldest LIR key
+            {
+                entry = stack.sNext;
+                if (entry == stack) return null;
+                unlinkStack(entry);
+                lirCount--;
+                entries.remove(entry.key);
+                pruneStack();
+                return entry.takeNode();
+            }
+
+            unlinkQueue(entry);
+            Node<K, V> node = entry.takeNode();
+            if (entry.inStack())    //keep the key as a ghost while it is in S
+            {
+                entry.status = LirsEntry.NON_RESIDENT;
+                linkQueue(nonResident, entry);
+                nonResidentCount++;
+                trimNonResident();
+            }
+            else entries.remove(entry.key);
+            return node;
+        }
+
+        @Override
+        public void remove(Node<K, V> node)
+        {
+            LirsEntry<K, V> entry = entries.remove(node.getKey());
+            if (entry.status == LirsEntry.LIR) lirCount--;
+            else unlinkQueue(entry);
+            if (entry.inStack())
+            {
+                unlinkStack(entry);
+                pruneStack();
+            }
+            entry.node = null;
+        }
+
+        //the LIR keys take all the capacity except 1% that is left for the HIR keys
+        private int maxLir()
+        {
+            int capacity = entryCapacity();
+            return Math.max(1, capacity - Math.max(1, capacity / 100));
+        }
+
+        //the bottom LIR key becomes a cached HIR key, to make room for a new LIR key
+        private void demoteBottom()
+        {
+            LirsEntry<K, V> bottom = stack.sNext;
+            unlinkStack(bottom);
+            bottom.status = LirsEntry.HIR;
+            lirCount--;
+            linkQueue(queue, bottom);
+            pruneStack();
+        }
+
+        //removes the HIR keys from the bottom of S, so that the bottom is a LIR key
+        private void pruneStack()
+        {
+            LirsEntry<K, V> bottom = stack.sNext;
+            while (bottom != stack && bottom.status != LirsEntry.LIR)
+            {
+                unlinkStack(bottom);
+                if (bottom.status == LirsEntry.NON_RESIDENT)
+                {
+                    unlinkQueue(bottom);
+                    nonResidentCount--;
+                    entries.remove(bottom.key);
+                }
+                bottom = stack.sNext;
+            }
+        }
+
+        //forgets the oldest ghosts when there are more ghosts than the capacity
+        private void trimNonResident()
+        {
+            while (nonResidentCount > entryCapacity())
+            {
+                LirsEntry<K, V> oldest = nonResident.qNext;
+                unlinkQueue(oldest);
+                unlinkStack(oldest);
+                nonResidentCount--;
+                entries.remove(oldest.key);
+            }
+        }
+
+        private void pushToTop(LirsEntry<K, V> entry)
+        {
+            if (entry.inStack()) unlinkStack(entry);
+            entry.sPrev = stack.sPrev;
+            entry.sNext = stack;
+            stack.sPrev.sNext = entry;
+            stack.sPrev = entry;
+        }
+
+        private void unlinkStack(LirsEntry<K, V> entry)
+        {
+            entry.sPrev.sNext = entry.sNext;
+            entry.sNext.sPrev = entry.sPrev;
+            entry.sNext = entry.sPrev = null;
+        }
+
+        //links an entry at the end of Q or of the ghost queue
+        private void linkQueue(LirsEntry<K, V> sentinel, LirsEntry<K, V> entry)
+        {
+            entry.qPrev = sentinel.qPrev;
+            entry.qNext = sentinel;
+            sentinel.qPrev.qNext = entry;
+            sentinel.qPrev = entry;
+        }
+
+        private void unlinkQueue(LirsEntry<K, V> entry)
+        {
+            if (entry.qNext == null) return;
+            entry.qPrev.qNext = entry.qNext;
+            entry.qNext.qPrev = entry.qPrev;
+            entry.qNext = entry.qPrev = null;
+        }
+    }
+
+    /**
+     * CLOCK. The nodes are kept in an array of slots and a hit only sets the reference bit of the slot, so a
+     * hit writes a single byte and never touches the links of other nodes. To evict, a hand sweeps the slots
+     * in a circle: a referenced node gets a second chance (its bit is cleared), the first unreferenced node is
+     * evicted and its slot is reused by the next insert. This approximates LRU
+     */
+    private class Clock implements CacheType<K, V>
+    {
+        private Node<K, V>[] slots;
+        private byte[] referenced;
+        private int[] freeSlots;    //a stack of the empty slots
+        private int freeCount, used, hand;
+
+        @SuppressWarnings("unchecked")
+        Clock()
+        {
+            int length = Math.max(1, weigher == null ? entryCapacity() : INITIAL_SLOTS);
+            slots = (Node<K, V>[]) new Node<?, ?>[length];
+            referenced = new byte[length];
+            freeSlots = new int[length];
+        }
+
+        @Override
+        public Node<K, V> newNode(K key, V value) {return new ClockNode<>(key, value);}
+
+        @Override
+        public void access(Node<K, V> node) {referenced[((ClockNode<K, V>) node).getSlot()] = 1;}
+
+        @Override
+        public void insert(Node<K, V> node)
+        {
+            int slot;
+            if (freeCount > 0) slot = freeSlots[--freeCount];
+            else
+            {
+                if (used == slots.length) grow();
+                slot = used++;
+            }
+            slots[slot] = node;
+            referenced[slot] = 0;
+            ((ClockNode<K, V>) node).setSlot(slot);
+        }
+
+        @Override
+        public Node<K, V> evict()
+        {
+            if (used == freeCount) return null;
+            while (true)
+            {
+                int slot = hand;
+                hand = hand + 1 == used ? 0 : hand + 1;
+                Node<K, V> node = slots[slot];
+                if (node == null) continue;
+                if (referenced[slot] != 0) referenced[slot] = 0;    //second chance
+                else
+                {
+                    free(slot);
+                    return node;
+                }
+            }
+        }
+
+        @Override
+        public void remove(Node<K, V> node) {free(((ClockNode<K, V>) node).getSlot());}
+
+        private void free(int slot)
+        {
+            slots[slot] = null;
+            freeSlots[freeCount++] = slot;
+        }
+
+        //a weighted cache or a cache whose capacity was increased can hold more nodes than the initial number of slots
+        private void grow()
+        {
+            int length = slots.length * 2;
+            slots = Arrays.copyOf(slots, length);
+            referenced = Arrays.copyOf(referenced, length);
+            freeSlots = Arrays.copyOf(freeSlots, length);
+        }
+    }
+
+    /**
+     * CLOCK-Pro. Like {@link Clock} a hit only sets a reference bit, but the nodes are hot or cold, as in LIRS.
+     * A new node is cold and in its test period, if it is hit again during the test period it becomes hot.
+     * The cold nodes that are evicted in their test period stay in the array as non-resident keys, and a miss
+     * on such a key means that the cold part is too small, so the target number of cold nodes grows. A test
+     * period that ends without a hit makes the target shrink. Three hands sweep the same array of slots:
+     * the cold hand evicts, the hot hand turns unreferenced hot nodes into cold ones and the test hand removes
+     * the oldest non-resident keys, at most as many as the capacity are kept.
+     * <p>
+     *
+     * In the paper new pages are linked at the head of a circular list. Here the slots are not reordered,
+     * a new node takes a free slot, so the order of the nodes in the clock is an approximation
+     */
+    private class ClockPro implements CacheType<K, V>
+    {
+        private static final byte EMPTY = 0, HOT = 1, COLD = 2, NON_RESIDENT = 3;
+
+        private Node<K, V>[] nodes;
+        private Object[] keys;      //the keys of the non-resident slots
+        private byte[] status, referenced;
+        private boolean[] inTest;
+        private int[] freeSlots;
+        private int freeCount, used;
+        private int hotHand, coldHand, testHand;
+        private int hotCount, coldCount, nonResidentCount;
+        private int coldTarget;
+        private final Map<K, Integer> nonResident = new HashMap<>();    //key -> slot
+
+        @SuppressWarnings("unchecked")
+        ClockPro()
+        {
+            int length = 2 * Math.max(1, weigher == null ? entryCapacity() : INITIAL_SLOTS);   //room for the non-resident keys
+            nodes = (Node<K, V>[]) new Node<?, ?>[length];
+            keys = new Object[length];
+            status = new byte[length];
+            referenced = new byte[length];
+            inTest = new boolean[length];
+            freeSlots = new int[length];
+            coldTarget = 1;
+        }
+
+        @Override
+        public Node<K, V> newNode(K key, V value) {return new ClockNode<>(key, value);}
+
+        @Override
+        public void access(Node<K, V> node) {referenced[((ClockNode<K, V>) node).getSlot()] = 1;}
+
+        @Override
+        public void insert(Node<K, V> node)
+        {
+            Integer ghost = nonResident.remove(node.getKey());
+            if (ghost != null)
+            {
+                //the key was evicted during its test period, so the cold part is too small
+                int slot = ghost;
+                keys[slot] = null;
+                nonResidentCount--;
+                coldTarget = Math.min(coldTarget + 1, entryCapacity());
+                set(slot, node, HOT);
+                hotCount++;
+                while (hotCount > 0 && hotCount > entryCapacity() - coldTarget) runHotHand();
+                return;
+            }
+
+            if (freeCount == 0 && used == nodes.length)
+            {
+                if (nonResidentCount > 0) runTestHand();
+                else grow();
+            }
+            int slot = freeCount > 0 ? freeSlots[--freeCount] : used++;
+            set(slot, node, COLD);
+            inTest[slot] = true;
+            coldCount++;
+        }
+
+        @Override
+        public Node<K, V> evict()
+        {
+            if (hotCount + coldCount == 0) return null;
+            while (true)
+            {
+                if (coldCount == 0) runHotHand();   //every node is hot, demote one
+                int slot = coldHand;
+                coldHand = next(coldHand);
+                if (status[slot] != COLD) continue;
+
+                if (referenced[slot] != 0)
+                {
+                    referenced[slot] = 0;
+                    if (inTest[slot])   //a hit during the test period, the node becomes hot
+                    {
+                        status[slot] = HOT;
+                        inTest[slot] = false;
+                        coldCount--;
+                        hotCount++;
+                        while (hotCount > 0 && hotCount > entryCapacity() - coldTarget) runHotHand();
+                    }
+                    else inTest[slot] = true;   //a new test period
+                    continue;
+                }
+
+                Node<K, V> node = nodes[slot];
+                nodes[slot] = null;
+                coldCount--;
+                if (inTest[slot])   //remember the key until its test period ends
+                {
+                    status[slot] = NON_RESIDENT;
+                    keys[slot] = node.getKey();
+                    nonResident.put(node.getKey(), slot);
+                    nonResidentCount++;
+                    while (nonResidentCount > entryCapacity()) runTestHand();
+                }
+                else free(slot);
+                return node;
+            }
+        }
+
+        @Override
+        public void remove(Node<K, V> node)
+        {
+            int slot = ((ClockNode<K, V>) node).getSlot();
+            if (status[slot] == HOT) hotCount--;
+            else coldCount--;
+            nodes[slot] = null;
+            free(slot);
+        }
+
+        //turns the next unreferenced hot node into a cold node, ending the test periods on the way
+        private void runHotHand()
+        {
+            while (hotCount > 0)
+            {
+                int slot = hotHand;
+                hotHand = next(hotHand);
+                if (status[slot] == HOT)
+                {
+                    if (referenced[slot] != 0) referenced[slot] = 0;
+                    else
+                    {
+                        status[slot] = COLD;
+                        inTest[slot] = false;
+                        hotCount--;
+                        coldCount++;
+                        return;
+                    }
+                }
+                else endTest(slot);
+            }
+        }
+
+        //removes the next non-resident key, ending the test periods on the way
+        private void runTestHand()
+        {
+            while (nonResidentCount > 0)
+            {
+                int slot = testHand;
+                testHand = next(testHand);
+                boolean removed = status[slot] == NON_RESIDENT;
+                endTest(slot);
+                if (removed) return;
+            }
+        }
+
+        //a test period that ends without a hit shrinks the cold target
+        @SuppressWarnings("unchecked")
+        private void endTest(int slot)
+        {
+            if (status[slot] == COLD && inTest[slot])
+            {
+                inTest[slot] = false;
+                coldTarget = Math.max(1, coldTarget - 1);
+            }
+            else if (status[slot] == NON_RESIDENT)
+            {
+                nonResident.remove((K) keys[slot]);
+                keys[slot] = null;
+                nonResidentCount--;
+                coldTarget = Math.max(1, coldTarget - 1);
+                free(slot);
+            }
+        }
+
+        private void set(int slot, Node<K, V> node, byte newStatus)
+        {
+            nodes[slot] = node;
+            status[slot] = newStatus;
+            referenced[slot] = 0;
+            inTest[slot] = false;
+            ((ClockNode<K, V>) node).setSlot(slot);
+        }
+
+        private void free(int slot)
+        {
+            status[slot] = EMPTY;
+            inTest[slot] = false;
+            freeSlots[freeCount++] = slot;
+        }
+
+        private int next(int slot) {return slot + 1 >= used ? 0 : slot + 1;}
+
+        //a weighted cache or a cache whose capacity was increased can hold more nodes than the initial number of slots
+        private void grow()
+        {
+            int length = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, length);
+            keys = Arrays.copyOf(keys, length);
+            status = Arrays.copyOf(status, length);
+            referenced = Arrays.copyOf(referenced, length);
+            inTest = Arrays.copyOf(inTest, length);
+            freeSlots = Arrays.copyOf(freeSlots, length);
+        }
+    }
+
+    /**
+     * The state of a key in {@link LIRS}. A key can be in the stack S and in the queue Q at the same time,
+     * so it has its own links instead of using the links of the {@link Node}
+     */
+    private static final class LirsEntry<K, V>
+    {
+        static final int LIR = 0, HIR = 1, NON_RESIDENT = 2;
+
+        final K key;
+        Node<K, V> node;    //null if the key is not cached
+        int status;
+        LirsEntry<K, V> sNext, sPrev, qNext, qPrev;
+
+        LirsEntry(K key) {this.key = key;}
+
+        boolean inStack() {return sNext != null;}
+
+        Node<K, V> takeNode()
+        {
+            Node<K, V> taken = node;
+            node = null;
+            return taken;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.CacheEx;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads the values of the keys that are not in a {@link LoadingCache}, e.g. from a database
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V>
+{
+    /**
+     * @param key the key
+     * @return the value of the key, or null if the key has no value
+     */
+    V load(K key) throws Exception;
+
+    /**
+     * Loads several values at once. The default implementation loads them one by one,
+     * override it when the source supports bulk reads
+     * @param keys the keys
+     * @return the values that were found, keys without a value can be missing
+     */
+    default Map<K, V> loadAll(Collection<? extends K> keys) throws Exception
+    {
+        Map<K, V> values = new HashMap<>();
+        for (K key : keys)
+        {
+            V value = load(key);
+            if (value != null) values.put(key, value);
+        }
+        return values;
+    }
+}
@@ -3,7 +3,12 @@ package org.CacheEx;
 public enum CacheReplacementPolicy {
     LRU("Least Recently Used"),
     MRU("Most Recently Used"),
-    LFU("Least Frequently Used"),;
+    LFU("Least Frequently Used"),
+    WTINYLFU("Window Tiny Least Frequently Used"),
+    ARC("Adaptive Replacement Cache"),
+    LIRS("Low Inter-reference Recency Set"),
+    CLOCK("Clock"),
+    CLOCK_PRO("Clock-Pro"),;
 
     private final String description;
 
@@ -0,0 +1,170 @@
+package org.CacheEx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A node of a {@link DistributedCache} that serves its {@link ConcurrentCacheImpl} over TCP to {@link TcpTransport}s.
+ * Every connection is served by its own thread, the requests of a connection are answered in order
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class CacheServer<K, V> implements Closeable
+{
+    private final ConcurrentCacheImpl<K, V> shard;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int maxFrameSize;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts a server
+     * @param shard the cache of the node
+     * @param address the address to listen on, port 0 picks a free port
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public CacheServer(ConcurrentCacheImpl<K, V> shard, InetSocketAddress address,
+                       Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        this(shard, address, keySerializer, valueSerializer, TcpCodec.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Starts a server
+     * @param shard the cache of the node
+     * @param address the address to listen on, port 0 picks a free port
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @param maxFrameSize the largest request in bytes, a larger request closes its connection
+     */
+    public CacheServer(ConcurrentCacheImpl<K, V> shard, InetSocketAddress address,
+                       Serializer<K> keySerializer, Serializer<V> valueSerializer, int maxFrameSize) throws IOException
+    {
+        if (maxFrameSize <= 0) throw new IllegalArgumentException("Maximum frame size must be positive: " + maxFrameSize);
+        this.maxFrameSize = maxFrameSize;
+        this.shard = shard;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cache-server-" + serverSocket.getLocalPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.execute(this::accept);
+    }
+
+    /**
+     * @return the address the server listens on
+     */
+    public InetSocketAddress getAddress() {return (InetSocketAddress) serverSocket.getLocalSocketAddress();}
+
+    /**
+     * Stops accepting connections and closes the open ones
+     */
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        for (Socket socket : connections) socket.close();
+        workers.shutdown();
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                workers.execute(() -> serve(socket));
+            }
+            catch (IOException e)
+            {
+                //the server socket was closed
+            }
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        TcpCodec<K, V> codec = new TcpCodec<>(keySerializer, valueSerializer, maxFrameSize);
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream())))
+        {
+            while (true)
+            {
+                int operation = in.read();
+                if (operation < 0) return;  //the client closed the connection
+                codec.startFrame();
+                handle((byte) operation, codec, in, out);
+                out.flush();
+            }
+        }
+        catch (EOFException e)
+        {
+            //the client closed the connection in the middle of a request
+        }
+        catch (IOException e)
+        {
+            //a broken connection only affects its client, the client reconnects
+        }
+        finally {connections.remove(socket);}
+    }
+
+    private void handle(byte operation, TcpCodec<K, V> codec, DataInputStream in, DataOutputStream out) throws IOException
+    {
+        switch (operation)
+        {
+            case TcpCodec.GET_ALL:
+                codec.writeEntries(out, shard.getAll(codec.readKeys(in)));
+                break;
+            case TcpCodec.PUT_ALL:
+                shard.putAll(codec.readEntries(in));
+                out.writeByte(TcpCodec.OK);
+                break;
+            case TcpCodec.REMOVE:
+                codec.writeValue(out, shard.remove(codec.readKey(in)));
+                break;
+            case TcpCodec.REMOVE_ALL:
+                for (K key : codec.readKeys(in)) shard.remove(key);
+                out.writeByte(TcpCodec.OK);
+                break;
+            case TcpCodec.CLEAR:
+                shard.invalidateAll();
+                out.writeByte(TcpCodec.OK);
+                break;
+            case TcpCodec.SCAN:
+                ScanBatch<K, V> batch = shard.scan(codec.readRanges(in), codec.readInt(in), codec.readLong(in), codec.readInt(in));
+                codec.writeEntries(out, batch.getEntries());
+                out.writeInt(batch.getNextSegment());
+                out.writeLong(batch.getNextHash());
+                break;
+            case TcpCodec.SIZE:
+                out.writeInt(shard.getSize());
+                break;
+            default:
+                throw new IOException("Unknown operation: " + operation);
+        }
+    }
+}
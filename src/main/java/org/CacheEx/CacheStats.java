@@ -0,0 +1,101 @@
+package org.CacheEx;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the statistics of a cache, created by {@link StatsRecorder#snapshot()}
+ */
+public final class CacheStats
+{
+    static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, new long[RemovalCause.values().length], 0, 0, Latency.EMPTY, Latency.EMPTY);
+
+    private final long hitCount, missCount, putCount, updateCount;
+    private final long[] removalCounts;     //by RemovalCause ordinal
+    private final long size, weightedSize;
+    private final Latency getLatency, putLatency;
+
+    CacheStats(long hitCount, long missCount, long putCount, long updateCount, long[] removalCounts,
+               long size, long weightedSize, Latency getLatency, Latency putLatency)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.updateCount = updateCount;
+        this.removalCounts = removalCounts;
+        this.size = size;
+        this.weightedSize = weightedSize;
+        this.getLatency = getLatency;
+        this.putLatency = putLatency;
+    }
+
+    public long getHitCount() {return hitCount;}
+    public long getMissCount() {return missCount;}
+    public long getRequestCount() {return hitCount + missCount;}
+
+    public double getHitRate() {return getRequestCount() == 0 ? 1 : (double) hitCount / getRequestCount();}
+
+    /**
+     * @return the number of new entries that were put
+     */
+    public long getPutCount() {return putCount;}
+
+    /**
+     * @return the number of puts that replaced the value of an entry
+     */
+    public long getUpdateCount() {return updateCount;}
+
+    /**
+     * @param cause the cause
+     * @return the number of entries that were removed for the cause
+     */
+    public long getRemovalCount(RemovalCause cause) {return removalCounts[cause.ordinal()];}
+
+    /**
+     * @return the number of entries that were evicted to stay within the capacity
+     */
+    public long getEvictionCount() {return getRemovalCount(RemovalCause.SIZE);}
+
+    public long getSize() {return size;}
+    public long getWeightedSize() {return weightedSize;}
+
+    public Latency getGetLatency() {return getLatency;}
+    public Latency getPutLatency() {return putLatency;}
+
+    @Override
+    public String toString()
+    {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount + ", updates=" + updateCount
+                + ", removals=" + Arrays.toString(removalCounts) + ", size=" + size + ", weightedSize=" + weightedSize
+                + ", get=" + getLatency + ", put=" + putLatency + "}";
+    }
+
+    /**
+     * The distribution of the latencies of an operation, in nanoseconds
+     */
+    public static final class Latency
+    {
+        static final Latency EMPTY = new Latency(0, 0, 0, 0, 0, 0);
+
+        private final long count, p50, p90, p99, p999, max;
+
+        Latency(long count, long p50, long p90, long p99, long p999, long max)
+        {
+            this.count = count;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {return count;}
+        public long getP50() {return p50;}
+        public long getP90() {return p90;}
+        public long getP99() {return p99;}
+        public long getP999() {return p999;}
+        public long getMax() {return max;}
+
+        @Override
+        public String toString() {return "{count=" + count + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + ", p999=" + p999 + ", max=" + max + "}";}
+    }
+}
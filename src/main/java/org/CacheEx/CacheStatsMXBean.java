@@ -0,0 +1,28 @@
+package org.CacheEx;
+
+/**
+ * The JMX view of the statistics of a cache, registered with {@link ConcurrentStatsRecorder#registerMBean}.
+ * The latencies are in nanoseconds
+ */
+public interface CacheStatsMXBean
+{
+    long getHitCount();
+    long getMissCount();
+    double getHitRate();
+    long getPutCount();
+    long getUpdateCount();
+    long getEvictionCount();
+    long getExpiredCount();
+    long getSize();
+    long getWeightedSize();
+
+    long getGetLatencyP50();
+    long getGetLatencyP99();
+    long getGetLatencyP999();
+    long getGetLatencyMax();
+
+    long getPutLatencyP50();
+    long getPutLatencyP99();
+    long getPutLatencyP999();
+    long getPutLatencyMax();
+}
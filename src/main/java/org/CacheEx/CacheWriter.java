@@ -0,0 +1,30 @@
+package org.CacheEx;
+
+import java.util.Map;
+
+/**
+ * Writes the entries of a write-behind cache to the store behind it, e.g. a database
+ * (see {@link CacheImpl#setWriteBehind})
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+@FunctionalInterface
+public interface CacheWriter<K, V>
+{
+    /**
+     * @param key the key
+     * @param value the latest value of the key
+     */
+    void write(K key, V value) throws Exception;
+
+    /**
+     * Writes several entries at once. The default implementation writes them one by one,
+     * override it when the store supports bulk writes
+     * @param entries the entries, every key has its latest value
+     */
+    default void writeAll(Map<? extends K, ? extends V> entries) throws Exception
+    {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) write(entry.getKey(), entry.getValue());
+    }
+}
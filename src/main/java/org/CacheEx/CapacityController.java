@@ -0,0 +1,127 @@
+package org.CacheEx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resizes caches from the hit ratios that their {@link MissRatioCurve}s predict
+ * <p>
+ *
+ * Every cache is registered with the curve that records its reads and the range of capacities that it may have.
+ * {@link #resizeForHitRatio} gives every cache the smallest capacity that reaches a target hit ratio and
+ * {@link #resizeForBudget} shares a total capacity between the caches so that the predicted number of hits is the
+ * largest. The controller does nothing on its own, it is meant to be called periodically (e.g. from a
+ * {@code ScheduledExecutorService}), so it resizes the caches from another thread and accepts only thread safe
+ * {@link Resizable} caches. The capacities are in entries, like the sizes of the curves.
+ */
+public final class CapacityController
+{
+    static final int BUDGET_STEPS = 1024;   //the budget is given out in this many parts
+
+    private final List<Registration> caches = new ArrayList<>();
+
+    /**
+     * Registers a cache. Its reads must be recorded by the curve (see {@link ConcurrentCacheImpl#setMissRatioCurve})
+     * @param cache the cache, thread safe
+     * @param curve the miss ratio curve of the cache
+     * @param minimum the smallest capacity of the cache
+     * @param maximum the largest capacity of the cache, at most the maximum size of the curve
+     */
+    public synchronized void register(Resizable cache, MissRatioCurve curve, long minimum, long maximum)
+    {
+        if (minimum <= 0 || minimum > maximum) throw new IllegalArgumentException("Invalid capacity range: " + minimum + ", " + maximum);
+        if (maximum > curve.getMaximumSize())
+        {
+            throw new IllegalArgumentException("The curve predicts sizes up to " + curve.getMaximumSize() + ": " + maximum);
+        }
+        caches.add(new Registration(cache, curve, minimum, maximum));
+    }
+
+    /**
+     * Gives every cache the smallest capacity whose predicted hit ratio reaches a target.
+     * A cache that cannot reach the target gets its maximum capacity
+     * @param target the target hit ratio
+     */
+    public synchronized void resizeForHitRatio(double target)
+    {
+        for (Registration registration : caches)
+        {
+            //the predicted hit ratio grows with the capacity, so the smallest capacity is found by a binary search
+            long low = registration.minimum, high = registration.maximum;
+            while (low < high)
+            {
+                long middle = (low + high) >>> 1;
+                if (registration.curve.hitRatio(middle) >= target) high = middle;
+                else low = middle + 1;
+            }
+            registration.cache.setMaximumWeight(low);
+        }
+    }
+
+    /**
+     * Shares a total capacity between the caches. Every cache gets its minimum capacity and the rest is given
+     * in small parts, each to the cache that gains the most predicted hits from it (the hit ratio gained times
+     * the number of reads of the cache). The budget that gains no hits is not given out
+     * @param budget the total capacity
+     * @return the capacity that was given out
+     */
+    public synchronized long resizeForBudget(long budget)
+    {
+        long[] capacities = new long[caches.size()];
+        long remaining = budget;
+        for (int i = 0; i < capacities.length; i++)
+        {
+            capacities[i] = caches.get(i).minimum;
+            remaining -= capacities[i];
+        }
+        if (remaining < 0) throw new IllegalArgumentException("The budget is smaller than the minimum capacities: " + budget);
+
+        long step = Math.max(1, remaining / BUDGET_STEPS);
+        while (remaining > 0)
+        {
+            long part = Math.min(step, remaining);
+            int best = -1;
+            double bestGain = 0;
+            for (int i = 0; i < capacities.length; i++)
+            {
+                Registration registration = caches.get(i);
+                long capacity = Math.min(capacities[i] + part, registration.maximum);
+                if (capacity == capacities[i]) continue;
+                MissRatioCurve curve = registration.curve;
+                double gain = (curve.hitRatio(capacity) - curve.hitRatio(capacities[i])) * curve.getAccessCount();
+                if (gain > bestGain)
+                {
+                    best = i;
+                    bestGain = gain;
+                }
+            }
+            if (best < 0)
+            {
+                if (part == remaining) break;
+                step *= 2;  //the curves are flat over one step, look further
+                continue;
+            }
+            long capacity = Math.min(capacities[best] + part, caches.get(best).maximum);
+            remaining -= capacity - capacities[best];
+            capacities[best] = capacity;
+        }
+
+        for (int i = 0; i < capacities.length; i++) caches.get(i).cache.setMaximumWeight(capacities[i]);
+        return budget - remaining;
+    }
+
+    private static final class Registration
+    {
+        final Resizable cache;
+        final MissRatioCurve curve;
+        final long minimum, maximum;
+
+        Registration(Resizable cache, MissRatioCurve curve, long minimum, long maximum)
+        {
+            this.cache = cache;
+            this.curve = curve;
+            this.minimum = minimum;
+            this.maximum = maximum;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.CacheEx;
+
+/**
+ * A {@link Node} of the CLOCK and CLOCK-Pro policies, which keep the nodes in an array and find a node by its slot.
+ * The other policies create plain nodes without the slot
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+class ClockNode<K, V> extends Node<K, V>
+{
+    private int slot;   //the index of the node in the array of the policy
+
+    ClockNode(K key, V value) {super(key, value);}
+
+    @Override
+    void reset(K key, V value)
+    {
+        super.reset(key, value);
+        slot = 0;
+    }
+
+    int getSlot() {return slot;}
+    void setSlot(int slot) {this.slot = slot;}
+}
@@ -0,0 +1,656 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread safe Cache implementation that uses lock striping
+ * <p>
+ *
+ * The key space is split into a power of two number of segments. Every segment is an
+ * independent {@link CacheImpl} (with its own map and {@link CacheReplacementPolicy} data structure)
+ * that is guarded by its own lock, so threads that work on keys of different segments never block each other.
+ * The capacity is divided between the segments, so the replacement policy is applied per segment
+ * and not globally.
+ * <p>
+ *
+ * With buffered reads enabled a {@code get} does not take the lock. The node is looked up in a
+ * concurrent map and the hit is recorded in the {@link ReadBuffer} of the segment. The recorded hits
+ * are applied to the replacement policy in batches by whichever thread acquires the lock
+ * (a writer, or a reader that finds the buffer full and wins the try-lock).
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class ConcurrentCacheImpl<K, V> implements Cache<K, V>, Resizable, Closeable
+{
+    //default number of segments (rounded up to a power of two)
+    static final int DEFAULT_CONCURRENCY_LEVEL = 4 * Runtime.getRuntime().availableProcessors();
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final boolean bufferedReads;
+    private volatile StatsRecorder statsRecorder = StatsRecorder.disabled();  //for the lock free reads
+    private volatile MissRatioCurve missRatioCurve;     //for the lock free reads, null if the accesses are not sampled
+    private volatile WriteBehind<K, V> writeBehind;     //null if the writes are not written to a store
+
+    public ConcurrentCacheImpl(int capacity, CacheReplacementPolicy policy)
+    {
+        this(capacity, policy, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param capacity the total capacity of the cache
+     * @param policy the replacement policy of every segment
+     * @param concurrencyLevel the estimated number of concurrently updating threads
+     */
+    public ConcurrentCacheImpl(int capacity, CacheReplacementPolicy policy, int concurrencyLevel)
+    {
+        this(capacity, policy, concurrencyLevel, false);
+    }
+
+    /**
+     * @param capacity the total capacity of the cache
+     * @param policy the replacement policy of every segment
+     * @param concurrencyLevel the estimated number of concurrently updating threads
+     * @param bufferedReads if true, gets do not lock and the hits are applied to the policy in batches
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentCacheImpl(int capacity, CacheReplacementPolicy policy, int concurrencyLevel, boolean bufferedReads)
+    {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        if (concurrencyLevel <= 0) throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+
+        //the number of segments is a power of two and every segment must hold at least one entry
+        int segmentCount = 1;
+        int shift = 32;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS && segmentCount * 2 <= capacity)
+        {
+            segmentCount <<= 1;
+            shift--;
+        }
+        segmentShift = shift;
+        this.bufferedReads = bufferedReads;
+
+        segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        int segmentCapacity = capacity / segmentCount;
+        int remainder = capacity % segmentCount;
+        for (int i = 0; i < segmentCount; i++)
+        {
+            //the first segments take the remainder of the division
+            segments[i] = new Segment<>(segmentCapacity + (i < remainder ? 1 : 0), policy, bufferedReads);
+        }
+    }
+
+    @Override
+    public V get(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        if (bufferedReads)
+        {
+            StatsRecorder statsRecorder = this.statsRecorder;
+            long start = statsRecorder.isRecordingLatency() ? System.nanoTime() : 0;
+            MissRatioCurve missRatioCurve = this.missRatioCurve;
+            if (missRatioCurve != null) missRatioCurve.record(key);
+            Node<K, V> node = segment.cache.getNode(key);   //lock free lookup
+            V value = null;
+            if (node == null)
+            {
+                segment.missCount.increment();
+                statsRecorder.recordMisses(1);
+            }
+            else
+            {
+                segment.hitCount.increment();
+                statsRecorder.recordHits(1);
+                if (segment.readBuffer.offer(node)) segment.tryDrain();  //the buffer is full
+                value = node.getValue();
+            }
+            if (statsRecorder.isRecordingLatency()) statsRecorder.recordGetLatency(System.nanoTime() - start);
+            return value;
+        }
+
+        segment.lock.lock();
+        try {return segment.cache.get(key);}
+        finally {segment.lock.unlock();}
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try
+        {
+            if (bufferedReads) segment.drain();  //apply pending hits before the policy picks a victim
+            segment.cache.put(key, value);
+        }
+        finally {segment.lock.unlock();}
+    }
+
+    /**
+     * Groups the keys by segment and looks up the keys of every segment under a single lock acquisition.
+     * With buffered reads the keys are looked up without locks, one by one
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses)
+    {
+        if (bufferedReads) return Cache.super.getAll(keys, misses);
+
+        Map<K, V> values = new LinkedHashMap<>();
+        List<K>[] keysBySegment = groupBySegment(keys);
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (keysBySegment[i] == null) continue;
+            Segment<K, V> segment = segments[i];
+            segment.lock.lock();
+            try {values.putAll(segment.cache.getAll(keysBySegment[i], misses));}
+            finally {segment.lock.unlock();}
+        }
+        return values;
+    }
+
+    /**
+     * Groups the entries by segment and puts the entries of every segment under a single lock acquisition
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries)
+    {
+        List<K>[] keysBySegment = groupBySegment(entries.keySet());
+        for (int i = 0; i < segments.length; i++)
+        {
+            if (keysBySegment[i] == null) continue;
+            Segment<K, V> segment = segments[i];
+            segment.lock.lock();
+            try
+            {
+                if (bufferedReads) segment.drain();  //apply pending hits before the policy picks a victim
+                for (K key : keysBySegment[i]) segment.cache.put(key, entries.get(key));
+            }
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    @Override
+    public int getSize()
+    {
+        int size = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {size += segment.cache.getSize();}
+            finally {segment.lock.unlock();}
+        }
+        return size;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        long hitCount = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {hitCount += segment.cache.getHitCount();}
+            finally {segment.lock.unlock();}
+            hitCount += segment.hitCount.sum();
+        }
+        return hitCount;
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        long missCount = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {missCount += segment.cache.getMissCount();}
+            finally {segment.lock.unlock();}
+            missCount += segment.missCount.sum();
+        }
+        return missCount;
+    }
+
+    /**
+     * Sets the recorder of the statistics of every segment, by default nothing is recorded.
+     * The recorder must be thread safe, e.g. a {@link ConcurrentStatsRecorder}. Must be set while the cache is empty
+     * @param statsRecorder the recorder
+     */
+    public void setStatsRecorder(StatsRecorder statsRecorder)
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.setStatsRecorder(statsRecorder);}
+            finally {segment.lock.unlock();}
+        }
+        this.statsRecorder = statsRecorder;
+    }
+
+    /**
+     * @return the statistics that were recorded until now by the {@link StatsRecorder}
+     */
+    public CacheStats snapshot() {return statsRecorder.snapshot();}
+
+    /**
+     * Records the keys of the reads in a miss ratio curve, which predicts the hit ratio at other capacities.
+     * The curve is shared by the segments, so it predicts the hit ratio of the whole cache
+     * @param missRatioCurve the curve, null for none
+     */
+    public void setMissRatioCurve(MissRatioCurve missRatioCurve)
+    {
+        this.missRatioCurve = missRatioCurve;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.setMissRatioCurve(missRatioCurve);}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * @return the total capacity of the segments
+     */
+    @Override
+    public long getMaximumWeight()
+    {
+        long maximumWeight = 0;
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {maximumWeight += segment.cache.getMaximumWeight();}
+            finally {segment.lock.unlock();}
+        }
+        return maximumWeight;
+    }
+
+    /**
+     * Divides a new total capacity between the segments like the constructor, see {@link CacheImpl#setMaximumWeight}.
+     * Every segment holds at least one entry
+     * @param maximumWeight the new total capacity
+     */
+    @Override
+    public void setMaximumWeight(long maximumWeight)
+    {
+        if (maximumWeight < 0) throw new IllegalArgumentException("Maximum weight cannot be negative: " + maximumWeight);
+        long segmentCapacity = maximumWeight / segments.length;
+        long remainder = maximumWeight % segments.length;
+        for (int i = 0; i < segments.length; i++)
+        {
+            Segment<K, V> segment = segments[i];
+            segment.lock.lock();
+            try {segment.cache.setMaximumWeight(Math.max(1, segmentCapacity + (i < remainder ? 1 : 0)));}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * Changes the total capacity, see {@link #setMaximumWeight(long)}
+     * @param capacity the new capacity
+     */
+    public void setCapacity(int capacity)
+    {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        setMaximumWeight(capacity);
+    }
+
+    @Override
+    public V remove(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {return segment.cache.remove(key);}
+        finally {segment.lock.unlock();}
+    }
+
+    /**
+     * Removes the entries of every segment, one segment at a time
+     */
+    @Override
+    public void invalidateAll()
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.invalidateAll();}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * Notifies a listener of every removed entry (see {@link RemovalCause}). The notifications are delivered
+     * in the common fork join pool, so the listener does not add to the latency of the cache operations
+     * @param listener the listener, null for none
+     */
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener)
+    {
+        setRemovalListener(listener, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Notifies a listener of every removed entry (see {@link RemovalCause}), the segments share one queue
+     * @param listener the listener, null for none
+     * @param executor delivers the notifications
+     */
+    public void setRemovalListener(RemovalListener<? super K, ? super V> listener, Executor executor)
+    {
+        RemovalNotifier<K, V> notifier = listener == null ? null
+                : new RemovalNotifier<>(listener, Objects.requireNonNull(executor, "executor"), RemovalNotifier.DEFAULT_QUEUE_CAPACITY);
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.setRemovalNotifier(notifier);}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * Writes the puts to a store behind the cache, see {@link CacheImpl#setWriteBehind}. The segments share
+     * one flusher, so the batches mix the keys of every segment. Must be set once, while the cache is empty
+     *
+     * @param writer writes the entries to the store
+     * @param batchSize the maximum number of entries of a {@link CacheWriter#writeAll}
+     * @param interval the longest time that a write waits in the cache
+     * @param unit the unit of the interval
+     */
+    public synchronized void setWriteBehind(CacheWriter<? super K, ? super V> writer, int batchSize, long interval, TimeUnit unit)
+    {
+        if (writeBehind != null || getSize() > 0) throw new IllegalStateException("The write-behind must be set once, while the cache is empty");
+        WriteBehind<K, V> writeBehind = new WriteBehind<>(Objects.requireNonNull(writer, "writer"), batchSize, interval, unit);
+        setSegmentsWriteBehind(writeBehind);
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * Writes the dirty entries to the store now, if the cache writes behind. Does not lock the segments
+     * @throws java.util.concurrent.CompletionException if the writer fails, the entries that were not written stay dirty
+     */
+    public void flush()
+    {
+        WriteBehind<K, V> writeBehind = this.writeBehind;
+        if (writeBehind != null) writeBehind.flush();
+    }
+
+    /**
+     * Stops writing the puts, then writes the dirty entries and stops the flusher of a write-behind cache
+     * @throws java.util.concurrent.CompletionException if the writer fails, the entries that were not written
+     *                                                  are written if the cache is closed again
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (writeBehind == null) return;
+        setSegmentsWriteBehind(null);   //the puts that are in progress finish before the last flush
+        writeBehind.close();
+        writeBehind = null;
+    }
+
+    private void setSegmentsWriteBehind(WriteBehind<K, V> writeBehind)
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.setWriteBehind(writeBehind);}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * Writes the entries to a snapshot in the format of {@link CacheImpl#writeSnapshot}. The segments are copied
+     * one at a time under the lock of the segment and written after it is released, so the other segments can be
+     * used during the dump and a slow channel does not block the segment
+     *
+     * @param channel the channel
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries written
+     */
+    public long writeSnapshot(WritableByteChannel channel, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        SnapshotCodec<K, V> codec = new SnapshotCodec<>(keySerializer, valueSerializer);
+        codec.writeHeader();
+        long count = 0;
+        List<SnapshotEntry<K, V>> entries = new ArrayList<>();
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try
+            {
+                if (bufferedReads) segment.drain();  //the buffered hits are part of the eviction order
+                segment.cache.forEachInSnapshotOrder((key, value, frequency) -> entries.add(new SnapshotEntry<>(key, value, frequency)));
+            }
+            finally {segment.lock.unlock();}
+            for (SnapshotEntry<K, V> entry : entries) codec.writeEntry(channel, entry.key, entry.value, entry.frequency);
+            count += entries.size();
+            entries.clear();
+        }
+        codec.writeEnd(channel);
+        return count;
+    }
+
+    /**
+     * Writes the entries to a snapshot in the format of {@link CacheImpl#writeSnapshot}
+     *
+     * @param out the stream, it is not closed
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries written
+     */
+    public long writeSnapshot(OutputStream out, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return writeSnapshot(Channels.newChannel(out), keySerializer, valueSerializer);
+    }
+
+    /**
+     * Puts the entries of a snapshot of a {@link CacheImpl} or a {@link ConcurrentCacheImpl}, in the order
+     * in which they were written. The snapshot can come from a cache with another number of segments
+     *
+     * @param channel the channel, it is read up to the end of the snapshot
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries read
+     */
+    public long loadSnapshot(ReadableByteChannel channel, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return new SnapshotCodec<>(keySerializer, valueSerializer).read(channel, (key, value, frequency) -> {
+            Segment<K, V> segment = segmentFor(key);
+            segment.lock.lock();
+            try
+            {
+                if (bufferedReads) segment.drain();
+                segment.cache.restore(key, value, frequency);
+            }
+            finally {segment.lock.unlock();}
+        });
+    }
+
+    /**
+     * Puts the entries of a snapshot in the order in which they were written
+     *
+     * @param in the stream, it is not closed
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @return the number of entries read
+     */
+    public long loadSnapshot(InputStream in, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        return loadSnapshot(Channels.newChannel(in), keySerializer, valueSerializer);
+    }
+
+    /**
+     * Passes every entry to an action, one segment at a time under the lock of the segment.
+     * The action must not use the cache
+     * @param action the action
+     */
+    void forEach(BiConsumer<? super K, ? super V> action)
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            segment.lock.lock();
+            try {segment.cache.forEach(action);}
+            finally {segment.lock.unlock();}
+        }
+    }
+
+    /**
+     * Copies the next batch of the entries whose {@link HashRing#keyHash} is in ranges of a {@link HashRing}, used to
+     * move the entries of a node without copying the whole node. The segments are scanned one at a time under the
+     * lock of the segment and the entries of a segment in the order of their hashes, so a scan needs no state on the
+     * server and the entries can be removed or added between the batches
+     *
+     * @param ranges the ranges of {@link HashRing#ranges}
+     * @param segment the segment where the batch starts
+     * @param fromHash the lowest hash of the batch within the segment
+     * @param limit the number of entries of a batch, a batch can be larger when keys have the same hash
+     * @return the batch
+     */
+    ScanBatch<K, V> scan(long[] ranges, int segment, long fromHash, int limit)
+    {
+        Map<K, V> batch = new LinkedHashMap<>();
+        List<HashedEntry<K, V>> entries = new ArrayList<>();
+        for (; segment < segments.length; segment++, fromHash = Long.MIN_VALUE)
+        {
+            if (batch.size() >= limit) return new ScanBatch<>(batch, segment, fromHash);
+            Segment<K, V> s = segments[segment];
+            long from = fromHash;
+            s.lock.lock();
+            try
+            {
+                s.cache.forEach((key, value) -> {
+                    long hash = HashRing.keyHash(key);
+                    if (hash >= from && HashRing.inRanges(ranges, hash)) entries.add(new HashedEntry<>(hash, key, value));
+                });
+            }
+            finally {s.lock.unlock();}
+
+            entries.sort((a, b) -> Long.compare(a.hash, b.hash));
+            for (int i = 0; i < entries.size(); i++)
+            {
+                HashedEntry<K, V> entry = entries.get(i);
+                //a batch ends between two hashes, so the next batch starts after the last one
+                if (batch.size() >= limit && i > 0 && entry.hash != entries.get(i - 1).hash) return new ScanBatch<>(batch, segment, entry.hash);
+                batch.put(entry.key, entry.value);
+            }
+            entries.clear();
+        }
+        return new ScanBatch<>(batch, -1, 0);
+    }
+
+    //the number of segments
+    int getSegmentCount() {return segments.length;}
+
+    /**
+     * Finds the segment of a key. The hash code is scrambled so that keys with
+     * poor hash codes (e.g. small integers) are spread evenly between the segments
+     * @param key the key
+     * @return the segment that holds the key
+     */
+    private Segment<K, V> segmentFor(K key) {return segments[segmentIndex(key)];}
+
+    private int segmentIndex(K key)
+    {
+        Objects.requireNonNull(key, "Key cannot be null");
+        if (segments.length == 1) return 0;
+        int h = key.hashCode() * 0x9E3779B9; //multiply with the golden ratio
+        return (h ^ (h >>> 16)) >>> segmentShift;
+    }
+
+    //the keys of every segment, null for the segments without keys
+    @SuppressWarnings("unchecked")
+    private List<K>[] groupBySegment(Iterable<? extends K> keys)
+    {
+        List<K>[] keysBySegment = (List<K>[]) new List<?>[segments.length];
+        for (K key : keys)
+        {
+            int index = segmentIndex(key);
+            if (keysBySegment[index] == null) keysBySegment[index] = new ArrayList<>();
+            keysBySegment[index].add(key);
+        }
+        return keysBySegment;
+    }
+
+    //================================= Inner Classes =======================================
+
+    /**
+     * A part of the key space with its own lock and its own cache
+     * @param <K> the key
+     * @param <V> the value
+     */
+    private static final class Segment<K, V>
+    {
+        final ReentrantLock lock = new ReentrantLock();
+        final CacheImpl<K, V> cache;
+
+        //only used with buffered reads
+        final ReadBuffer<K, V> readBuffer = new ReadBuffer<>();
+        final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+
+        Segment(int capacity, CacheReplacementPolicy policy, boolean bufferedReads)
+        {
+            //a concurrent map lets the readers look up nodes without the lock
+            cache = bufferedReads
+                    ? new CacheImpl<>(capacity, policy, new ConcurrentHashMap<>())
+                    : new CacheImpl<>(capacity, policy);
+        }
+
+        //drains the read buffer if no other thread holds the lock
+        void tryDrain()
+        {
+            if (!lock.tryLock()) return;
+            try {drain();}
+            finally {lock.unlock();}
+        }
+
+        //applies the buffered hits to the replacement policy, the lock must be held
+        void drain() {readBuffer.drainTo(cache::recordAccess);}
+    }
+
+    //an entry of a segment, copied under the lock of the segment to be written to a snapshot
+    private static final class HashedEntry<K, V>
+    {
+        final long hash;
+        final K key;
+        final V value;
+
+        HashedEntry(long hash, K key, V value)
+        {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class SnapshotEntry<K, V>
+    {
+        final K key;
+        final V value;
+        final long frequency;
+
+        SnapshotEntry(K key, V value, long frequency)
+        {
+            this.key = key;
+            this.value = value;
+            this.frequency = frequency;
+        }
+    }
+}
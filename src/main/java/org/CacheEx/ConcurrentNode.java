@@ -0,0 +1,34 @@
+package org.CacheEx;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A {@link Node} whose value is read without a lock, used by the segments of a {@link ConcurrentCacheImpl}
+ * with buffered reads. The value is written under the lock of the segment with a release store and read with
+ * a volatile load, so a lock free reader sees a complete value. The nodes of a single threaded
+ * {@link CacheImpl} keep a plain value and pay no fence on a write. It is a {@link ClockNode}, so a segment
+ * of any policy uses this class, the slot fits in the padding of the object
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+final class ConcurrentNode<K, V> extends ClockNode<K, V>
+{
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ConcurrentNode, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(ConcurrentNode.class, Object.class, "value");
+
+    private volatile V value;   //the value of the node, the field of Node stays null
+
+    ConcurrentNode(K key, V value)
+    {
+        super(key, null);
+        VALUE.lazySet(this, value);
+    }
+
+    @Override
+    public V getValue() {return value;}
+
+    @Override
+    public void setValue(V value) {VALUE.lazySet(this, value);}
+}
@@ -0,0 +1,141 @@
+package org.CacheEx;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe {@link StatsRecorder} that records every statistic. The counters are {@link LongAdder}s,
+ * which are striped between the threads, and the latencies are recorded in {@link LatencyHistogram}s,
+ * so the recorder does not become a point of contention of a {@link ConcurrentCacheImpl}
+ */
+public class ConcurrentStatsRecorder implements StatsRecorder, CacheStatsMXBean
+{
+    private final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+    private final LongAdder putCount = new LongAdder(), updateCount = new LongAdder();
+    private final LongAdder[] removalCounts = new LongAdder[RemovalCause.values().length];
+    private final LongAdder size = new LongAdder(), weightedSize = new LongAdder();
+    private final LatencyHistogram getLatency = new LatencyHistogram(), putLatency = new LatencyHistogram();
+
+    public ConcurrentStatsRecorder()
+    {
+        for (int i = 0; i < removalCounts.length; i++) removalCounts[i] = new LongAdder();
+    }
+
+    @Override
+    public void recordHits(int count) {hitCount.add(count);}
+
+    @Override
+    public void recordMisses(int count) {missCount.add(count);}
+
+    @Override
+    public void recordPut(int weight)
+    {
+        putCount.increment();
+        size.increment();
+        weightedSize.add(weight);
+    }
+
+    @Override
+    public void recordUpdate(int weightDifference)
+    {
+        updateCount.increment();
+        weightedSize.add(weightDifference);
+    }
+
+    @Override
+    public void recordRemoval(RemovalCause cause, int weight)
+    {
+        removalCounts[cause.ordinal()].increment();
+        size.decrement();
+        weightedSize.add(-weight);
+    }
+
+    @Override
+    public boolean isRecordingLatency() {return true;}
+
+    @Override
+    public void recordGetLatency(long nanos) {getLatency.record(nanos);}
+
+    @Override
+    public void recordPutLatency(long nanos) {putLatency.record(nanos);}
+
+    @Override
+    public CacheStats snapshot()
+    {
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++) removals[i] = removalCounts[i].sum();
+        return new CacheStats(hitCount.sum(), missCount.sum(), putCount.sum(), updateCount.sum(), removals,
+                size.sum(), weightedSize.sum(), getLatency.snapshot(), putLatency.snapshot());
+    }
+
+    /**
+     * Registers the recorder with the platform MBean server as {@code org.CacheEx:type=CacheStats,name=<name>}
+     * @param name the name of the cache
+     * @return the name of the MBean
+     */
+    public ObjectName registerMBean(String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName("org.CacheEx:type=CacheStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    //================================= MXBean =======================================
+
+    @Override
+    public long getHitCount() {return hitCount.sum();}
+
+    @Override
+    public long getMissCount() {return missCount.sum();}
+
+    @Override
+    public double getHitRate()
+    {
+        long hits = hitCount.sum(), requests = hits + missCount.sum();
+        return requests == 0 ? 1 : (double) hits / requests;
+    }
+
+    @Override
+    public long getPutCount() {return putCount.sum();}
+
+    @Override
+    public long getUpdateCount() {return updateCount.sum();}
+
+    @Override
+    public long getEvictionCount() {return removalCounts[RemovalCause.SIZE.ordinal()].sum();}
+
+    @Override
+    public long getExpiredCount() {return removalCounts[RemovalCause.EXPIRED.ordinal()].sum();}
+
+    @Override
+    public long getSize() {return size.sum();}
+
+    @Override
+    public long getWeightedSize() {return weightedSize.sum();}
+
+    @Override
+    public long getGetLatencyP50() {return getLatency.snapshot().getP50();}
+
+    @Override
+    public long getGetLatencyP99() {return getLatency.snapshot().getP99();}
+
+    @Override
+    public long getGetLatencyP999() {return getLatency.snapshot().getP999();}
+
+    @Override
+    public long getGetLatencyMax() {return getLatency.snapshot().getMax();}
+
+    @Override
+    public long getPutLatencyP50() {return putLatency.snapshot().getP50();}
+
+    @Override
+    public long getPutLatencyP99() {return putLatency.snapshot().getP99();}
+
+    @Override
+    public long getPutLatencyP999() {return putLatency.snapshot().getP999();}
+
+    @Override
+    public long getPutLatencyMax() {return putLatency.snapshot().getMax();}
+}
@@ -33,6 +33,7 @@ public class CustomLinkedList<K, V>
     public void insertAtTail(Node<K, V> newNode)
     {
         if(newNode == null) throw new IllegalArgumentException("Node cannot be null"); //null check
+        newNode.setList(this);
         if (isEmpty()) head = tail = newNode;
         else
         {
@@ -49,6 +50,7 @@ public class CustomLinkedList<K, V>
     public void insertAtHead(Node<K, V> newNode)
     {
         if(newNode == null) throw new IllegalArgumentException("Node cannot be null");
+        newNode.setList(this);
         if (isEmpty()) head = tail = newNode;
         else
         {
@@ -72,7 +74,9 @@ public class CustomLinkedList<K, V>
         {
             head = head.getNext();
             head.setPrev(null);
+            temp.setNext(null);
         }
+        temp.setList(null);
         return temp;
     }
 
@@ -89,7 +93,9 @@ public class CustomLinkedList<K, V>
         {
             tail = tail.getPrev();
             tail.setNext(null);
+            temp.setPrev(null);
         }
+        temp.setList(null);
         return temp;
     }
 
@@ -139,5 +145,6 @@ public class CustomLinkedList<K, V>
         // Break the node's links to fully detach it
         node.setNext(null);
         node.setPrev(null);
+        node.setList(null);
     }
 }
\ No newline at end of file
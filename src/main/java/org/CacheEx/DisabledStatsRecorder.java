@@ -0,0 +1,37 @@
+package org.CacheEx;
+
+/**
+ * The {@link StatsRecorder} of a cache without statistics. Every method is empty, so the calls are
+ * removed by the JIT compiler
+ */
+enum DisabledStatsRecorder implements StatsRecorder
+{
+    INSTANCE;
+
+    @Override
+    public void recordHits(int count) {}
+
+    @Override
+    public void recordMisses(int count) {}
+
+    @Override
+    public void recordPut(int weight) {}
+
+    @Override
+    public void recordUpdate(int weightDifference) {}
+
+    @Override
+    public void recordRemoval(RemovalCause cause, int weight) {}
+
+    @Override
+    public boolean isRecordingLatency() {return false;}
+
+    @Override
+    public void recordGetLatency(long nanos) {}
+
+    @Override
+    public void recordPutLatency(long nanos) {}
+
+    @Override
+    public CacheStats snapshot() {return CacheStats.EMPTY;}
+}
@@ -0,0 +1,309 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread safe cache whose entries are partitioned between nodes, every node holds a {@link ConcurrentCacheImpl}
+ * <p>
+ *
+ * The keys are assigned to the nodes with a consistent hash ring with virtual nodes, so the capacity of the
+ * cache is the sum of the capacities of the nodes. The nodes are reached through a {@link Transport}:
+ * a {@link LocalTransport} for nodes in the same JVM or a {@link TcpTransport} for {@link CacheServer}s.
+ * {@link #getAll} and {@link #putAll} send one request per node with all the keys of the node.
+ * <p>
+ *
+ * When a node is added the entries it now owns are moved to it from the other nodes, and when a node is removed
+ * its entries are moved to their new owners, or lost if the node is down. The entries move in batches that the
+ * nodes select by the hash ranges of the ring, so a client never holds a whole node. The cache is blocked while
+ * the entries move. The keys must have a {@link Object#hashCode} that is the same in every JVM (e.g. String, Integer or Long),
+ * otherwise the clients of a cluster disagree on the owners of the keys. A request that fails throws an
+ * {@link UncheckedIOException}.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class DistributedCache<K, V> implements Cache<K, V>, Closeable
+{
+    static final int DEFAULT_VIRTUAL_NODES = 160;
+    static final int MOVE_BATCH_SIZE = 1000;   //the entries moved per request when the nodes change
+    private static final long[] ALL_HASHES = {Long.MIN_VALUE, Long.MAX_VALUE};
+
+    private final Transport<K, V> transport;
+    private final HashRing ring;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();   //the write lock is held while the nodes change
+    private final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+
+    /**
+     * @param transport the transport to the nodes
+     */
+    public DistributedCache(Transport<K, V> transport)
+    {
+        this(transport, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param transport the transport to the nodes
+     * @param virtualNodes the number of points of every node on the hash ring
+     */
+    public DistributedCache(Transport<K, V> transport, int virtualNodes)
+    {
+        this.transport = Objects.requireNonNull(transport, "transport");
+        ring = new HashRing(virtualNodes);
+    }
+
+    /**
+     * Adds a node and moves the entries it owns from the other nodes to it
+     * @param node the node, registered in the transport
+     */
+    public void addNode(String node)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            List<String> others = ring.getNodes();
+            if (!ring.add(node)) return;
+            long[] ranges = ring.ranges(node);
+            for (String other : others) move(other, ranges, transport.scan(other, ranges, 0, Long.MIN_VALUE, MOVE_BATCH_SIZE));
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.writeLock().unlock();}
+    }
+
+    /**
+     * Removes a node and moves its entries to the other nodes. The entries are dropped if it is the last node,
+     * and lost if the node cannot be reached (e.g. it is down), the node is removed anyway
+     * @param node the node
+     */
+    public void removeNode(String node)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!ring.remove(node)) return;
+            ScanBatch<K, V> first;
+            try
+            {
+                if (ring.isEmpty())
+                {
+                    transport.clear(node);
+                    return;
+                }
+                first = transport.scan(node, ALL_HASHES, 0, Long.MIN_VALUE, MOVE_BATCH_SIZE);
+            }
+            catch (IOException e)
+            {
+                return; //the entries of a dead node are lost, they are loaded again by the clients
+            }
+            move(node, ALL_HASHES, first);
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.writeLock().unlock();}
+    }
+
+    /**
+     * @return the nodes of the cache
+     */
+    public List<String> getNodes()
+    {
+        lock.readLock().lock();
+        try {return ring.getNodes();}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * @param key the key
+     * @return the node that owns the key, null if the cache has no nodes
+     */
+    public String nodeFor(K key)
+    {
+        lock.readLock().lock();
+        try {return ring.nodeFor(key);}
+        finally {lock.readLock().unlock();}
+    }
+
+    @Override
+    public V get(K key)
+    {
+        return getAll(Collections.singletonList(key)).get(key);
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        putAll(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public V remove(K key)
+    {
+        lock.readLock().lock();
+        try {return transport.remove(owner(key), key);}
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * Groups the keys by node and sends one request to every node
+     */
+    @Override
+    public void invalidateAll(Iterable<? extends K> keys)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Map<String, List<K>> keysByNode = new LinkedHashMap<>();
+            for (K key : keys) keysByNode.computeIfAbsent(owner(key), node -> new ArrayList<>()).add(key);
+            for (Map.Entry<String, List<K>> node : keysByNode.entrySet()) transport.removeAll(node.getKey(), node.getValue());
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * Removes the entries of every node
+     */
+    @Override
+    public void invalidateAll()
+    {
+        lock.readLock().lock();
+        try
+        {
+            for (String node : ring.getNodes()) transport.clear(node);
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * Groups the keys by node and sends one request to every node
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses)
+    {
+        lock.readLock().lock();
+        try
+        {
+            Map<String, List<K>> keysByNode = new LinkedHashMap<>();
+            int count = 0;
+            for (K key : keys)
+            {
+                keysByNode.computeIfAbsent(owner(key), node -> new ArrayList<>()).add(key);
+                count++;
+            }
+
+            Map<K, V> values = new LinkedHashMap<>();
+            for (Map.Entry<String, List<K>> node : keysByNode.entrySet())
+            {
+                Map<K, V> found = transport.getAll(node.getKey(), node.getValue());
+                values.putAll(found);
+                if (misses == null || found.size() == node.getValue().size()) continue;
+                for (K key : node.getValue())
+                {
+                    if (!found.containsKey(key)) misses.add(key);
+                }
+            }
+            hitCount.add(values.size());
+            missCount.add(count - values.size());
+            return values;
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * Groups the entries by node and sends one request to every node
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries)
+    {
+        lock.readLock().lock();
+        try
+        {
+            for (Map.Entry<String, Map<K, V>> node : groupByNode(entries).entrySet()) transport.putAll(node.getKey(), node.getValue());
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * @return the number of entries of all the nodes
+     */
+    @Override
+    public int getSize()
+    {
+        lock.readLock().lock();
+        try
+        {
+            int size = 0;
+            for (String node : ring.getNodes()) size += transport.size(node);
+            return size;
+        }
+        catch (IOException e) {throw new UncheckedIOException(e);}
+        finally {lock.readLock().unlock();}
+    }
+
+    /**
+     * @return the hits of this client
+     */
+    @Override
+    public long getHitCount() {return hitCount.sum();}
+
+    /**
+     * @return the misses of this client
+     */
+    @Override
+    public long getMissCount() {return missCount.sum();}
+
+    /**
+     * Closes the transport
+     */
+    @Override
+    public void close() throws IOException {transport.close();}
+
+    private String owner(K key)
+    {
+        Objects.requireNonNull(key, "Key cannot be null");
+        String node = ring.nodeFor(key);
+        if (node == null) throw new IllegalStateException("The cache has no nodes");
+        return node;
+    }
+
+    //moves the entries of a node whose keys hash into the ranges to their owners, one batch at a time
+    private void move(String node, long[] ranges, ScanBatch<K, V> batch) throws IOException
+    {
+        while (true)
+        {
+            Map<K, V> entries = batch.getEntries();
+            if (!entries.isEmpty())
+            {
+                //copied before they are removed, so no entry is lost
+                for (Map.Entry<String, Map<K, V>> owner : groupByNode(entries).entrySet()) transport.putAll(owner.getKey(), owner.getValue());
+                transport.removeAll(node, entries.keySet());
+            }
+            if (batch.isLast()) return;
+            batch = transport.scan(node, ranges, batch.getNextSegment(), batch.getNextHash(), MOVE_BATCH_SIZE);
+        }
+    }
+
+    private Map<String, Map<K, V>> groupByNode(Map<? extends K, ? extends V> entries)
+    {
+        Map<String, Map<K, V>> entriesByNode = new LinkedHashMap<>();
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet())
+        {
+            entriesByNode.computeIfAbsent(owner(entry.getKey()), node -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        return entriesByNode;
+    }
+}
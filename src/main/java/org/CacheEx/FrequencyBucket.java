@@ -0,0 +1,32 @@
+package org.CacheEx;
+
+/**
+ * A {@link CustomLinkedList} that holds all the nodes with the same access frequency
+ * <p>
+ *
+ * The buckets are themselves linked in a doubly linked list in ascending frequency order,
+ * which lets the LFU policy find the next frequency of a node and the lowest frequency in O(1)
+ *
+ * @param <K> The key of a Node
+ * @param <V> The value of a Node
+ */
+public class FrequencyBucket<K, V> extends CustomLinkedList<K, V>
+{
+    private long frequency;
+    private FrequencyBucket<K, V> next, prev;
+
+    public FrequencyBucket(long frequency)
+    {
+        this.frequency = frequency;
+        next = prev = null;
+    }
+
+    public long getFrequency() {return frequency;}
+    public void setFrequency(long frequency) {this.frequency = frequency;}
+
+    public FrequencyBucket<K, V> getNext() {return next;}
+    public void setNext(FrequencyBucket<K, V> next) {this.next = next;}
+
+    public FrequencyBucket<K, V> getPrev() {return prev;}
+    public void setPrev(FrequencyBucket<K, V> prev) {this.prev = prev;}
+}
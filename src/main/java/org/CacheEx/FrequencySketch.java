@@ -0,0 +1,113 @@
+package org.CacheEx;
+
+import java.util.Objects;
+
+/**
+ * A count-min sketch that estimates the access frequency of keys, used by the W-TinyLFU policy
+ * <p>
+ *
+ * Every key maps to four 4-bit counters (saturating at 15) that are packed in a long array, so the
+ * sketch needs 8 bytes per cache entry. When the number of recorded accesses reaches ten times the
+ * cache capacity all counters are halved, which lets the sketch forget keys that stopped being popular.
+ *
+ * @param <K> the key
+ */
+final class FrequencySketch<K>
+{
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch(long maximumSize) {ensureCapacity(maximumSize);}
+
+    /**
+     * Grows the sketch so that it can hold the given number of entries. The counters are reset
+     * @param maximumSize the maximum number of entries in the cache
+     */
+    void ensureCapacity(long maximumSize)
+    {
+        int size = (int) Math.min(Math.max(maximumSize, 8), MAX_TABLE_SIZE);
+        if (table != null && table.length >= size) return;
+
+        table = new long[Integer.highestOneBit(size - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * size, Integer.MAX_VALUE);
+        additions = 0;
+    }
+
+    /**
+     * @param key the key
+     * @return the estimated number of accesses of the key (0 - 15)
+     */
+    int frequency(K key)
+    {
+        int hash = spread(Objects.hashCode(key));
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access to a key
+     * @param key the key
+     */
+    void increment(K key)
+    {
+        int hash = spread(Objects.hashCode(key));
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) added |= incrementAt(indexOf(hash, i), start + i);
+
+        if (added && ++additions == sampleSize) reset();
+    }
+
+    //increments the counter j of the long at index i if it is not saturated
+    private boolean incrementAt(int i, int j)
+    {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) == mask) return false;
+        table[i] += 1L << offset;
+        return true;
+    }
+
+    //halves every counter (aging)
+    private void reset()
+    {
+        int count = 0;
+        for (int i = 0; i < table.length; i++)
+        {
+            count += Long.bitCount(table[i] & ONE_MASK); //counters with an odd value lose half a count
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (count >>> 2);
+    }
+
+    //the index of the long that holds the counter of the i-th hash function
+    private int indexOf(int item, int i)
+    {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    //scrambles a hash code so that poor hash codes use the whole table
+    private static int spread(int x)
+    {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
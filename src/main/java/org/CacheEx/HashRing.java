@@ -0,0 +1,132 @@
+package org.CacheEx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring. Every node is placed on the ring at a number of points (virtual nodes) and a key
+ * belongs to the first point at or after the hash of the key. Adding or removing a node only moves the keys
+ * of its points, about 1/N of the keys, and the virtual nodes spread the keys evenly between the nodes
+ */
+final class HashRing
+{
+    private final int virtualNodes;
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final Set<String> nodes = new LinkedHashSet<>();
+
+    /**
+     * @param virtualNodes the number of points of every node
+     */
+    HashRing(int virtualNodes)
+    {
+        if (virtualNodes <= 0) throw new IllegalArgumentException("Virtual nodes must be positive: " + virtualNodes);
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @param node the node
+     * @return false if the node was already in the ring
+     */
+    boolean add(String node)
+    {
+        if (!nodes.add(node)) return false;
+        for (int i = 0; i < virtualNodes; i++) points.putIfAbsent(pointHash(node, i), node);
+        return true;
+    }
+
+    /**
+     * @param node the node
+     * @return false if the node was not in the ring
+     */
+    boolean remove(String node)
+    {
+        if (!nodes.remove(node)) return false;
+        for (int i = 0; i < virtualNodes; i++) points.remove(pointHash(node, i), node);
+        return true;
+    }
+
+    /**
+     * @param key the key
+     * @return the node that owns the key, null if the ring is empty
+     */
+    String nodeFor(Object key)
+    {
+        if (points.isEmpty()) return null;
+        Map.Entry<Long, String> point = points.ceilingEntry(keyHash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();  //wraps around
+    }
+
+    /**
+     * The hashes of the keys that a node owns, a key belongs to the first point at or after its hash
+     * @param node the node
+     * @return sorted pairs of the first and the last hash of a range, both included
+     */
+    long[] ranges(String node)
+    {
+        List<long[]> ranges = new ArrayList<>();
+        long from = Long.MIN_VALUE;
+        for (Map.Entry<Long, String> point : points.entrySet())
+        {
+            if (point.getValue().equals(node)) addRange(ranges, from, point.getKey());
+            from = point.getKey() + 1;
+        }
+        //the hashes after the last point wrap around to the first point
+        if (!points.isEmpty() && points.lastKey() != Long.MAX_VALUE && points.firstEntry().getValue().equals(node))
+        {
+            addRange(ranges, points.lastKey() + 1, Long.MAX_VALUE);
+        }
+        long[] bounds = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            bounds[2 * i] = ranges.get(i)[0];
+            bounds[2 * i + 1] = ranges.get(i)[1];
+        }
+        return bounds;
+    }
+
+    //adjacent ranges are merged
+    private static void addRange(List<long[]> ranges, long from, long to)
+    {
+        long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+        if (last != null && last[1] + 1 == from) last[1] = to;
+        else ranges.add(new long[] {from, to});
+    }
+
+    /**
+     * @param ranges the ranges of {@link #ranges}
+     * @param hash the hash of a key
+     * @return true if the hash is in one of the ranges
+     */
+    static boolean inRanges(long[] ranges, long hash)
+    {
+        int index = Arrays.binarySearch(ranges, hash);
+        return index >= 0 || (-index - 1) % 2 == 1;    //a bound, or after the first bound of a range
+    }
+
+    boolean contains(String node) {return nodes.contains(node);}
+    boolean isEmpty() {return nodes.isEmpty();}
+    List<String> getNodes() {return new ArrayList<>(nodes);}
+
+    //the hash code of the key is mixed so that small integers are spread over the whole ring
+    static long keyHash(Object key)
+    {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    //FNV-1a of the node name and the index of the point, followed by a mix of the bits
+    private static long pointHash(String node, int index)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : (node + '#' + index).getBytes(StandardCharsets.UTF_8)) h = (h ^ b) * 0x100000001b3L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+}
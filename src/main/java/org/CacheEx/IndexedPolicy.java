@@ -0,0 +1,226 @@
+package org.CacheEx;
+
+import java.util.Arrays;
+
+/**
+ * The LRU, MRU and LFU replacement policies for caches that store their entries in parallel arrays
+ * <p>
+ *
+ * An entry is identified by its slot (an index in the arrays of the cache). The links of the
+ * doubly linked lists are int slots in the {@code next}/{@code prev} arrays instead of object pointers,
+ * so the policy does not allocate anything after construction. LFU keeps its frequency buckets in
+ * arrays as well and recycles the empty ones, exactly like the LFU of {@link CacheImpl}.
+ */
+final class IndexedPolicy
+{
+    static final int NIL = -1;
+
+    private final CacheReplacementPolicy policy;
+    private int[] next, prev;   //the links of the slots
+    private int head = NIL, tail = NIL; //the recency list (LRU and MRU)
+
+    //LFU only, the bucket of every slot and the bucket list
+    private int[] bucketOf;
+    private long[] bucketFrequency;
+    private int[] bucketHead, bucketTail, bucketNext, bucketPrev;
+    private int lowestBucket = NIL, freeBucket = NIL;
+
+    IndexedPolicy(CacheReplacementPolicy policy, int capacity)
+    {
+        switch (policy)
+        {
+            case LRU:
+            case MRU:
+            case LFU:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported cache replacement policy: " + policy);
+        }
+        this.policy = policy;
+        next = new int[capacity];
+        prev = new int[capacity];
+        if (policy == CacheReplacementPolicy.LFU)
+        {
+            //there are never more non empty buckets than slots
+            bucketOf = new int[capacity];
+            bucketFrequency = new long[capacity];
+            bucketHead = new int[capacity];
+            bucketTail = new int[capacity];
+            bucketNext = new int[capacity];
+            bucketPrev = new int[capacity];
+            for (int b = capacity - 1; b >= 0; b--) freeBucket(b);
+        }
+    }
+
+    /**
+     * Grows the arrays to a new capacity, the existing links are kept
+     * @param capacity the new capacity, must not be smaller than the current one
+     */
+    void resize(int capacity)
+    {
+        int oldCapacity = next.length;
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        if (policy == CacheReplacementPolicy.LFU)
+        {
+            bucketOf = Arrays.copyOf(bucketOf, capacity);
+            bucketFrequency = Arrays.copyOf(bucketFrequency, capacity);
+            bucketHead = Arrays.copyOf(bucketHead, capacity);
+            bucketTail = Arrays.copyOf(bucketTail, capacity);
+            bucketNext = Arrays.copyOf(bucketNext, capacity);
+            bucketPrev = Arrays.copyOf(bucketPrev, capacity);
+            for (int b = capacity - 1; b >= oldCapacity; b--) freeBucket(b);
+        }
+    }
+
+    /**
+     * Inserts a new slot in the policy
+     * @param slot the slot
+     */
+    void insert(int slot)
+    {
+        if (policy != CacheReplacementPolicy.LFU)
+        {
+            append(slot);
+            return;
+        }
+        if (lowestBucket == NIL || bucketFrequency[lowestBucket] != 1)
+        {
+            int bucket = newBucket(1);
+            bucketNext[bucket] = lowestBucket;
+            if (lowestBucket != NIL) bucketPrev[lowestBucket] = bucket;
+            lowestBucket = bucket;
+        }
+        appendToBucket(slot, lowestBucket);
+    }
+
+    /**
+     * Records a hit on a slot
+     * @param slot the slot
+     */
+    void access(int slot)
+    {
+        if (policy != CacheReplacementPolicy.LFU)
+        {
+            if (slot == tail) return;
+            unlink(slot);
+            append(slot);
+            return;
+        }
+
+        int bucket = bucketOf[slot];
+        long frequency = bucketFrequency[bucket] + 1;
+        int nextBucket = bucketNext[bucket];
+        if (nextBucket == NIL || bucketFrequency[nextBucket] != frequency)
+        {
+            //the slot is alone in its bucket, so the bucket can move to the new frequency
+            if (bucketHead[bucket] == bucketTail[bucket])
+            {
+                bucketFrequency[bucket] = frequency;
+                return;
+            }
+            nextBucket = newBucket(frequency);
+            bucketPrev[nextBucket] = bucket;
+            bucketNext[nextBucket] = bucketNext[bucket];
+            if (bucketNext[bucket] != NIL) bucketPrev[bucketNext[bucket]] = nextBucket;
+            bucketNext[bucket] = nextBucket;
+        }
+        remove(slot);
+        appendToBucket(slot, nextBucket);
+    }
+
+    /**
+     * Removes the slot that the policy selects for eviction
+     * @return the evicted slot or NIL if the policy is empty
+     */
+    int evict()
+    {
+        int slot;
+        if (policy == CacheReplacementPolicy.LFU) slot = lowestBucket == NIL ? NIL : bucketHead[lowestBucket];
+        else slot = policy == CacheReplacementPolicy.LRU ? head : tail;
+
+        if (slot != NIL) remove(slot);
+        return slot;
+    }
+
+    /**
+     * Removes a slot from the policy
+     * @param slot the slot
+     */
+    void remove(int slot)
+    {
+        if (policy != CacheReplacementPolicy.LFU)
+        {
+            unlink(slot);
+            return;
+        }
+
+        int bucket = bucketOf[slot];
+        if (prev[slot] != NIL) next[prev[slot]] = next[slot];
+        else bucketHead[bucket] = next[slot];
+        if (next[slot] != NIL) prev[next[slot]] = prev[slot];
+        else bucketTail[bucket] = prev[slot];
+
+        if (bucketHead[bucket] == NIL)  //the bucket is empty
+        {
+            if (bucketPrev[bucket] != NIL) bucketNext[bucketPrev[bucket]] = bucketNext[bucket];
+            else lowestBucket = bucketNext[bucket];
+            if (bucketNext[bucket] != NIL) bucketPrev[bucketNext[bucket]] = bucketPrev[bucket];
+            freeBucket(bucket);
+        }
+    }
+
+    /**
+     * @param slot the slot
+     * @return the access frequency of the slot (LFU only)
+     */
+    long frequency(int slot) {return bucketFrequency[bucketOf[slot]];}
+
+    //inserts a slot at the tail of the recency list
+    private void append(int slot)
+    {
+        next[slot] = NIL;
+        prev[slot] = tail;
+        if (tail != NIL) next[tail] = slot;
+        else head = slot;
+        tail = slot;
+    }
+
+    //removes a slot from the recency list
+    private void unlink(int slot)
+    {
+        if (prev[slot] != NIL) next[prev[slot]] = next[slot];
+        else head = next[slot];
+        if (next[slot] != NIL) prev[next[slot]] = prev[slot];
+        else tail = prev[slot];
+    }
+
+    //inserts a slot at the tail of a bucket
+    private void appendToBucket(int slot, int bucket)
+    {
+        bucketOf[slot] = bucket;
+        next[slot] = NIL;
+        prev[slot] = bucketTail[bucket];
+        if (bucketTail[bucket] != NIL) next[bucketTail[bucket]] = slot;
+        else bucketHead[bucket] = slot;
+        bucketTail[bucket] = slot;
+    }
+
+    //takes an empty bucket from the free list
+    private int newBucket(long frequency)
+    {
+        int bucket = freeBucket;
+        freeBucket = bucketNext[bucket];
+        bucketFrequency[bucket] = frequency;
+        bucketHead[bucket] = bucketTail[bucket] = NIL;
+        bucketNext[bucket] = bucketPrev[bucket] = NIL;
+        return bucket;
+    }
+
+    //returns a bucket to the free list
+    private void freeBucket(int bucket)
+    {
+        bucketNext[bucket] = freeBucket;
+        freeBucket = bucket;
+    }
+}
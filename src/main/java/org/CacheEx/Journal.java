@@ -0,0 +1,250 @@
+package org.CacheEx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The redo journal that makes a flush of a {@link PersistentCache} atomic
+ * <p>
+ *
+ * The file of the cache is mapped privately, so the changes reach the file only through a flush. A flush copies
+ * the pages that were written since the previous flush under the lock of the cache, then writes the copy to the
+ * journal and forces it, copies it to the file, forces the file and empties the journal. A crash before the journal
+ * is complete leaves the file at the previous flush, and a complete journal is replayed when the file is opened
+ * again, so the file always holds a complete flush.
+ * <pre>
+ * journal  MAGIC int, run count int, runs, CRC32 long of the run count and the runs
+ * run      address long, length int, the bytes of the file at the address
+ * </pre>
+ */
+final class Journal
+{
+    static final int MAGIC = 0x434A524E;    //"CJRN"
+    static final int BUFFER_SIZE = 64 << 10;
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int RUN_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private Journal() {}
+
+    /**
+     * @param file the file of a cache
+     * @return the file of its journal
+     */
+    static Path fileOf(Path file) {return file.resolveSibling(file.getFileName() + ".journal");}
+
+    /**
+     * Copies the pages of a memory that were written since the last call and marks them clean. Called under the
+     * lock of the cache, the copy is written to the journal after the lock is released
+     * @param memory the memory
+     * @return the copied runs of consecutive pages
+     */
+    static List<Run> copyDirtyPages(Memory memory)
+    {
+        List<Run> runs = new ArrayList<>();
+        int pageSize = memory.getPageSize();
+        long chunkMask = memory.getChunkSize() - 1;
+        long page = memory.nextDirtyPage(0);
+        while (page >= 0)
+        {
+            //consecutive dirty pages of one chunk are one run
+            long address = page * pageSize;
+            long chunkEnd = (address | chunkMask) + 1;
+            long end = address + pageSize;
+            long next = memory.nextDirtyPage(page + 1);
+            while (next == page + 1 && end < chunkEnd)
+            {
+                page = next;
+                end += pageSize;
+                next = memory.nextDirtyPage(page + 1);
+            }
+            page = next;
+
+            byte[] bytes = new byte[(int) (end - address)];
+            memory.view(address, bytes.length).get(bytes);
+            runs.add(new Run(address, bytes));
+        }
+        memory.clearDirtyPages();
+        return runs;
+    }
+
+    /**
+     * Marks the pages of runs written again, so that the next flush writes the runs that a flush failed to write
+     * @param memory the memory
+     * @param runs the runs
+     */
+    static void markDirty(Memory memory, List<Run> runs)
+    {
+        for (Run run : runs) memory.markWritten(run.address, run.bytes.length);
+    }
+
+    /**
+     * Writes runs to an empty journal and forces it
+     * @param journal the journal
+     * @param runs the runs
+     */
+    static void write(FileChannel journal, List<Run> runs) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        long position = HEADER_SIZE;
+        for (Run run : runs)
+        {
+            if (buffer.remaining() < RUN_HEADER_SIZE) position = drain(journal, buffer, crc, position);
+            buffer.putLong(run.address).putInt(run.bytes.length);
+            for (int copied = 0; copied < run.bytes.length; )
+            {
+                if (!buffer.hasRemaining()) position = drain(journal, buffer, crc, position);
+                int length = Math.min(buffer.remaining(), run.bytes.length - copied);
+                buffer.put(run.bytes, copied, length);
+                copied += length;
+            }
+        }
+        position = drain(journal, buffer, crc, position);
+
+        buffer.putInt(runs.size()).flip();
+        crc.update(buffer);
+        buffer.clear();
+        buffer.putLong(crc.getValue()).flip();
+        writeFully(journal, buffer, position);
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(runs.size()).flip();
+        writeFully(journal, buffer, 0);
+        journal.truncate(position + Long.BYTES);
+        journal.force(true);
+    }
+
+    /**
+     * Copies the runs of a complete journal to the file and forces it, then empties the journal.
+     * An incomplete journal, left by a crash during a flush, is only emptied
+     * @param journal the journal
+     * @param file the file of the cache
+     * @return true if a journal was replayed
+     */
+    static boolean replay(FileChannel journal, FileChannel file) throws IOException
+    {
+        if (journal.size() == 0) return false;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean complete = isComplete(journal, buffer);
+        if (complete)
+        {
+            long position = HEADER_SIZE;
+            int runs = readInt(journal, buffer, Integer.BYTES);
+            for (int i = 0; i < runs; i++)
+            {
+                buffer.clear().limit(RUN_HEADER_SIZE);
+                readFully(journal, buffer, position);
+                long address = buffer.getLong(0);
+                int length = buffer.getInt(Long.BYTES);
+                position += RUN_HEADER_SIZE;
+                for (int copied = 0; copied < length; )
+                {
+                    buffer.clear().limit(Math.min(BUFFER_SIZE, length - copied));
+                    readFully(journal, buffer, position + copied);
+                    buffer.flip();
+                    writeFully(file, buffer, address + copied);
+                    copied += buffer.limit();
+                }
+                position += length;
+            }
+            file.force(true);
+        }
+        journal.truncate(0);
+        journal.force(true);
+        return complete;
+    }
+
+    //checks the magic, the bounds of the runs and the CRC
+    private static boolean isComplete(FileChannel journal, ByteBuffer buffer) throws IOException
+    {
+        long size = journal.size();
+        try
+        {
+            if (size < HEADER_SIZE + Long.BYTES || readInt(journal, buffer, 0) != MAGIC) return false;
+            int runs = readInt(journal, buffer, Integer.BYTES);
+            CRC32 crc = new CRC32();
+            long position = HEADER_SIZE;
+            for (int i = 0; i < runs; i++)
+            {
+                buffer.clear().limit(RUN_HEADER_SIZE);
+                readFully(journal, buffer, position);
+                int length = buffer.getInt(Long.BYTES);
+                if (buffer.getLong(0) < 0 || length <= 0 || position + RUN_HEADER_SIZE + length > size - Long.BYTES) return false;
+                buffer.flip();
+                crc.update(buffer);
+                position += RUN_HEADER_SIZE;
+                for (long end = position + length; position < end; position += buffer.limit())
+                {
+                    buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                    readFully(journal, buffer, position);
+                    buffer.flip();
+                    crc.update(buffer);
+                }
+            }
+            if (position != size - Long.BYTES) return false;
+            buffer.clear();
+            buffer.putInt(runs).flip();
+            crc.update(buffer);
+            buffer.clear().limit(Long.BYTES);
+            readFully(journal, buffer, position);
+            return buffer.getLong(0) == crc.getValue();
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+    }
+
+    //writes the buffered bytes at a position and adds them to the CRC, returns the position after them
+    private static long drain(FileChannel journal, ByteBuffer buffer, CRC32 crc, long position) throws IOException
+    {
+        buffer.flip();
+        int length = buffer.remaining();
+        crc.update(buffer.duplicate());
+        writeFully(journal, buffer, position);
+        buffer.clear();
+        return position + length;
+    }
+
+    private static int readInt(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        buffer.clear().limit(Integer.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    //================================= Inner Classes =======================================
+
+    //consecutive pages and their address
+    static final class Run
+    {
+        final long address;
+        final byte[] bytes;
+
+        Run(long address, byte[] bytes)
+        {
+            this.address = address;
+            this.bytes = bytes;
+        }
+    }
+}
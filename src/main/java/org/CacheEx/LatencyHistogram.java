@@ -0,0 +1,83 @@
+package org.CacheEx;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe histogram of latencies in nanoseconds with a bounded relative error, in the style of HdrHistogram
+ * <p>
+ *
+ * Every power of two range of values is split into 32 linear sub-buckets, so a value is recorded with an
+ * error of at most 1/32 (~3%) and the whole range of long values fits in 1888 counters. Recording is a
+ * few shifts and the increment of a {@link LongAdder}, no allocation and no lock. The counters are striped
+ * between the threads, because most of the latencies fall in a few buckets that every thread increments.
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;  //values are below 2^63
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++) counts[i] = new LongAdder();
+    }
+
+    /**
+     * @param nanos the latency, negative values are recorded as 0
+     */
+    void record(long nanos)
+    {
+        if (nanos < 0) nanos = 0;
+        counts[indexOf(nanos)].increment();
+        max.accumulate(nanos);
+    }
+
+    /**
+     * @return the count, the percentiles and the maximum of the recorded values
+     */
+    CacheStats.Latency snapshot()
+    {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts[i].sum();
+            count += snapshot[i];
+        }
+        return new CacheStats.Latency(count, percentile(snapshot, count, 50), percentile(snapshot, count, 90),
+                percentile(snapshot, count, 99), percentile(snapshot, count, 99.9), max.get());
+    }
+
+    static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    //the middle of the range of values of a bucket
+    static long valueOf(int index)
+    {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+
+    private static long percentile(long[] counts, long count, double percentile)
+    {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank) return valueOf(i);
+        }
+        return valueOf(counts.length - 1);
+    }
+}
@@ -0,0 +1,295 @@
+package org.CacheEx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread safe cache that loads the missing values with a {@link CacheLoader}
+ * <p>
+ *
+ * A {@code get} that misses loads the value and puts it in the cache. Concurrent misses on the same key
+ * share one in-flight load: the first thread loads the value and the others wait for its result, so an
+ * evicted or expired hot key causes one request to the source instead of one per thread. A thread that missed
+ * just before a load of the key completed finds the loaded value instead of loading the key again. A failed load is
+ * not cached, it is thrown to every waiting thread (checked exceptions wrapped in a {@link CompletionException}).
+ * <p>
+ *
+ * The entries are stored in a {@link ConcurrentCacheImpl}, whose segments are {@link CacheImpl}s,
+ * so every {@link CacheReplacementPolicy} can be used.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class LoadingCache<K, V> implements Cache<K, V>
+{
+    private final Cache<K, V> cache;
+    private final CacheLoader<K, V> loader;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    private final LongAdder loadSuccessCount = new LongAdder(), loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final AtomicLong completedLoads = new AtomicLong();     //counted before a load is removed, see load
+
+    /**
+     * @param capacity the capacity
+     * @param policy the replacement policy
+     * @param loader loads the missing values
+     */
+    public LoadingCache(int capacity, CacheReplacementPolicy policy, CacheLoader<K, V> loader)
+    {
+        this(new ConcurrentCacheImpl<>(capacity, policy), loader);
+    }
+
+    /**
+     * @param cache a thread safe cache that stores the entries
+     * @param loader loads the missing values
+     */
+    public LoadingCache(Cache<K, V> cache, CacheLoader<K, V> loader)
+    {
+        this.cache = Objects.requireNonNull(cache, "cache");
+        this.loader = Objects.requireNonNull(loader, "loader");
+    }
+
+    /**
+     * Returns the value of a key, loading it if it is not in the cache
+     * @param key the key
+     * @return the value, or null if the loader has no value for the key
+     */
+    @Override
+    public V get(K key)
+    {
+        long loads = completedLoads.get();  //before the miss
+        V value = cache.get(key);
+        return value != null ? value : load(key, loads);
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or null if it is not in the cache. Never loads
+     */
+    public V getIfPresent(K key) {return cache.get(key);}
+
+    /**
+     * Puts a key value pair. A load of the key that is in progress is not cached when it completes
+     */
+    @Override
+    public void put(K key, V value)
+    {
+        loading.remove(key);
+        cache.put(key, value);
+    }
+
+    /**
+     * Removes a key. A load of the key that is in progress is not cached when it completes
+     */
+    @Override
+    public V remove(K key)
+    {
+        loading.remove(key);
+        return cache.remove(key);
+    }
+
+    /**
+     * Removes every entry. The loads that are in progress are not cached when they complete
+     */
+    @Override
+    public void invalidateAll()
+    {
+        loading.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the values of several keys. The keys that are not in the cache are loaded together
+     * with {@link CacheLoader#loadAll}, except those that are already being loaded by another thread
+     *
+     * @param keys the keys
+     * @param misses receives the keys that the loader has no value for, can be null
+     * @return the values that were found or loaded
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses)
+    {
+        long loads = completedLoads.get();  //before the misses
+        List<K> missing = new ArrayList<>();
+        Map<K, V> values = new LinkedHashMap<>(cache.getAll(keys, missing));
+        if (missing.isEmpty()) return values;
+
+        //claim the keys that nobody is loading, wait for the others
+        Map<K, CompletableFuture<V>> claimed = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> waiting = new LinkedHashMap<>();
+        for (K key : missing)
+        {
+            if (claimed.containsKey(key) || waiting.containsKey(key)) continue;
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+            if (existing == null) claimed.put(key, future);
+            else waiting.put(key, existing);
+        }
+
+        Map<K, CompletableFuture<V>> toLoad = claimed;
+        if (!claimed.isEmpty() && completedLoads.get() != loads)
+        {
+            //loads completed since the misses, the keys that they cached are not loaded again
+            toLoad = new LinkedHashMap<>(claimed);
+            for (Map.Entry<K, V> entry : cache.getAll(claimed.keySet()).entrySet())
+            {
+                CompletableFuture<V> future = toLoad.remove(entry.getKey());
+                loading.remove(entry.getKey(), future);
+                future.complete(entry.getValue());
+            }
+        }
+
+        if (!toLoad.isEmpty())
+        {
+            long start = System.nanoTime();
+            try
+            {
+                Map<K, V> loaded = loader.loadAll(toLoad.keySet());
+                for (Map.Entry<K, CompletableFuture<V>> entry : toLoad.entrySet())
+                {
+                    V value = loaded.get(entry.getKey());
+                    complete(entry.getKey(), entry.getValue(), value);
+                    entry.getValue().complete(value);
+                }
+                recordLoad(true, start);    //after the values were cached, a put that throws is a failed load
+            }
+            catch (Throwable e)
+            {
+                recordLoad(false, start);
+                for (CompletableFuture<V> future : toLoad.values()) future.completeExceptionally(e);
+                throw propagate(e);
+            }
+            finally
+            {
+                for (Map.Entry<K, CompletableFuture<V>> entry : toLoad.entrySet()) loading.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (K key : missing)
+        {
+            CompletableFuture<V> future = claimed.containsKey(key) ? claimed.get(key) : waiting.get(key);
+            V value = join(future);
+            if (value != null) values.put(key, value);
+            else if (misses != null) misses.add(key);
+        }
+        return values;
+    }
+
+    @Override
+    public int getSize() {return cache.getSize();}
+
+    @Override
+    public long getHitCount() {return cache.getHitCount();}
+
+    @Override
+    public long getMissCount() {return cache.getMissCount();}
+
+    /**
+     * @return the number of loads that returned, including those without a value
+     */
+    public long getLoadSuccessCount() {return loadSuccessCount.sum();}
+
+    /**
+     * @return the number of loads that threw an exception
+     */
+    public long getLoadFailureCount() {return loadFailureCount.sum();}
+
+    /**
+     * @return the total time spent loading, in nanoseconds
+     */
+    public long getTotalLoadTime() {return totalLoadTime.sum();}
+
+    /**
+     * @return the average time of a load in nanoseconds, 0 if nothing was loaded
+     */
+    public double getAverageLoadPenalty()
+    {
+        long loads = getLoadSuccessCount() + getLoadFailureCount();
+        return loads == 0 ? 0 : (double) getTotalLoadTime() / loads;
+    }
+
+    //loads a key, or waits for the load of another thread. loads is the number of completed loads before the miss
+    private V load(K key, long loads)
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) return join(existing);   //another thread is loading the key
+        if (completedLoads.get() != loads)
+        {
+            //a load completed after the miss and before the claim, it may have cached the key
+            V cached = cache.get(key);
+            if (cached != null)
+            {
+                loading.remove(key, future);
+                future.complete(cached);
+                return cached;
+            }
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            V value = loader.load(key);
+            complete(key, future, value);
+            recordLoad(true, start);    //after the value was cached, a put that throws is a failed load
+            future.complete(value);
+            return value;
+        }
+        catch (Throwable e)
+        {
+            recordLoad(false, start);
+            future.completeExceptionally(e);
+            throw propagate(e);
+        }
+        finally
+        {
+            loading.remove(key, future);
+        }
+    }
+
+    //caches a loaded value and ends its load, unless a put or an invalidation of the key cancelled the load by removing it.
+    //The value is put before the load is removed, so the later misses find it. The put runs outside of the map of the
+    //loads, so the eviction work that it does holds no lock of the map: a load that is cancelled during the put removes
+    //its value again, so it never replaces the value of the put that cancelled it
+    private void complete(K key, CompletableFuture<V> future, V value)
+    {
+        if (value != null && loading.get(key) == future)
+        {
+            cache.put(key, value);
+            completedLoads.incrementAndGet();   //before the load is removed, so a later claim of the key sees it
+            if (!loading.remove(key, future)) cache.remove(key);
+        }
+        else loading.remove(key, future);
+    }
+
+    private void recordLoad(boolean success, long start)
+    {
+        totalLoadTime.add(System.nanoTime() - start);
+        if (success) loadSuccessCount.increment();
+        else loadFailureCount.increment();
+    }
+
+    //waits for a load of another thread and throws its exception the same way as the loading thread
+    private static <V> V join(CompletableFuture<V> future)
+    {
+        try {return future.join();}
+        catch (CompletionException e) {throw propagate(e.getCause());}
+    }
+
+    //unchecked exceptions and errors are thrown as they are, checked exceptions are wrapped
+    private static RuntimeException propagate(Throwable e)
+    {
+        if (e instanceof RuntimeException) return (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new CompletionException(e);
+    }
+}
@@ -0,0 +1,59 @@
+package org.CacheEx;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Transport} to nodes in the same JVM, every node is a {@link ConcurrentCacheImpl}.
+ * Used to test a {@link DistributedCache} and to compare it with a {@link TcpTransport} without the network
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class LocalTransport<K, V> implements Transport<K, V>
+{
+    private final Map<String, ConcurrentCacheImpl<K, V>> shards = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the cache of a node, must be called before the node is added to the {@link DistributedCache}
+     * @param node the node
+     * @param shard the cache of the node
+     */
+    public void register(String node, ConcurrentCacheImpl<K, V> shard) {shards.put(node, shard);}
+
+    @Override
+    public Map<K, V> getAll(String node, Collection<K> keys) {return shard(node).getAll(keys);}
+
+    @Override
+    public void putAll(String node, Map<K, V> entries) {shard(node).putAll(entries);}
+
+    @Override
+    public V remove(String node, K key) {return shard(node).remove(key);}
+
+    @Override
+    public void removeAll(String node, Collection<K> keys)
+    {
+        ConcurrentCacheImpl<K, V> shard = shard(node);
+        for (K key : keys) shard.remove(key);
+    }
+
+    @Override
+    public void clear(String node) {shard(node).invalidateAll();}
+
+    @Override
+    public ScanBatch<K, V> scan(String node, long[] ranges, int segment, long fromHash, int limit)
+    {
+        return shard(node).scan(ranges, segment, fromHash, limit);
+    }
+
+    @Override
+    public int size(String node) {return shard(node).getSize();}
+
+    private ConcurrentCacheImpl<K, V> shard(String node)
+    {
+        ConcurrentCacheImpl<K, V> shard = shards.get(node);
+        if (shard == null) throw new IllegalArgumentException("Unknown node: " + node);
+        return shard;
+    }
+}
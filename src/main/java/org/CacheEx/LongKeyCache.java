@@ -0,0 +1,73 @@
+package org.CacheEx;
+
+/**
+ * A cache with primitive {@code long} keys
+ * <p>
+ *
+ * The entries are stored in parallel arrays ({@code long[]} keys, {@code Object[]} values and the
+ * {@code int[]} links of the {@link IndexedPolicy}) instead of a {@code HashMap} of {@link Node}s,
+ * so {@link #get(long)} does not box the key or allocate anything and an entry costs about 28 bytes
+ * (36 with LFU) instead of the 80+ bytes of {@link CacheImpl}.
+ * Supports the LRU, MRU and LFU policies.
+ *
+ * @param <V> the value
+ */
+public class LongKeyCache<V> extends AbstractLongKeyCache<V>
+{
+    private final Object[] values;
+
+    public LongKeyCache(int capacity, CacheReplacementPolicy policy)
+    {
+        super(capacity, policy);
+        values = new Object[capacity];
+    }
+
+    /**
+     * Get the value for a key. Returns null if the key is not
+     * in the cache.
+     *
+     * @param key the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        int slot = lookup(key);
+        return slot == IndexedPolicy.NIL ? null : (V) values[slot];
+    }
+
+    /**
+     * Put a new key value pair in the cache
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(long key, V value) {values[slotForPut(key)] = value;}
+
+    /**
+     * Remove a key from the cache
+     *
+     * @param key the key
+     * @return the removed value, or null if the key was not in the cache
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        int slot = findSlot(key);
+        if (slot == IndexedPolicy.NIL) return null;
+        V value = (V) values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    @Override
+    public V get(Long key) {return get(key.longValue());}
+
+    @Override
+    public void put(Long key, V value) {put(key.longValue(), value);}
+
+    @Override
+    public V remove(Long key) {return remove(key.longValue());}
+
+    @Override
+    protected void clearValue(int slot) {values[slot] = null;}
+}
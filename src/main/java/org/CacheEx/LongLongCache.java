@@ -0,0 +1,79 @@
+package org.CacheEx;
+
+/**
+ * A cache with primitive {@code long} keys and {@code long} values
+ * <p>
+ *
+ * Like {@link LongKeyCache} but the values are stored in a {@code long[]}, so an entry has no
+ * object at all and costs about 32 bytes (40 with LFU).
+ * Supports the LRU, MRU and LFU policies.
+ */
+public class LongLongCache extends AbstractLongKeyCache<Long>
+{
+    private final long[] values;
+
+    public LongLongCache(int capacity, CacheReplacementPolicy policy)
+    {
+        super(capacity, policy);
+        values = new long[capacity];
+    }
+
+    /**
+     * Get the value for a key
+     *
+     * @param key the key
+     * @param missingValue the value that is returned if the key is not in the cache
+     */
+    public long get(long key, long missingValue)
+    {
+        int slot = lookup(key);
+        return slot == IndexedPolicy.NIL ? missingValue : values[slot];
+    }
+
+    /**
+     * Put a new key value pair in the cache
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(long key, long value) {values[slotForPut(key)] = value;}
+
+    /**
+     * Remove a key from the cache
+     *
+     * @param key the key
+     * @param missingValue the value that is returned if the key is not in the cache
+     * @return the removed value
+     */
+    public long remove(long key, long missingValue)
+    {
+        int slot = findSlot(key);
+        if (slot == IndexedPolicy.NIL) return missingValue;
+        long value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    @Override
+    public Long get(Long key)
+    {
+        int slot = lookup(key);
+        return slot == IndexedPolicy.NIL ? null : values[slot];
+    }
+
+    @Override
+    public void put(Long key, Long value) {put(key.longValue(), value.longValue());}
+
+    @Override
+    public Long remove(Long key)
+    {
+        int slot = findSlot(key);
+        if (slot == IndexedPolicy.NIL) return null;
+        long value = values[slot];
+        removeSlot(slot);
+        return value;
+    }
+
+    @Override
+    protected void clearValue(int slot) {}
+}
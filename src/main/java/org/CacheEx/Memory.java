@@ -0,0 +1,252 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Memory outside of the Java heap that is addressed with long addresses
+ * <p>
+ *
+ * The memory is a list of equally sized chunks (a {@link ByteBuffer} can hold at most 2 GB) that are
+ * created on demand. An address is {@code chunk index * chunk size + offset}. Records must not
+ * cross a chunk boundary, which is guaranteed by the allocator of {@link OffHeapStore}.
+ * The memory can track the pages that are written, so that only the changes are saved (see {@link Journal}).
+ */
+abstract class Memory implements Closeable
+{
+    static final int PAGE_SHIFT = 12;   //4 KB pages
+
+    private final int chunkSize;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final int maxChunks;
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private ByteBuffer[] views = new ByteBuffer[4];    //reusable views for the serializers
+    private int chunkCount;
+    private int pageShift;
+    private long[] dirtyPages;      //a bit per page written since the last clearDirtyPages, null if the writes are not tracked
+
+    /**
+     * @param chunkSize the size of a chunk, a power of two
+     * @param maxSize the maximum number of bytes
+     */
+    protected Memory(int chunkSize, long maxSize)
+    {
+        if (Integer.bitCount(chunkSize) != 1) throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkSize);
+        this.chunkSize = chunkSize;
+        chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        chunkMask = chunkSize - 1;
+        maxChunks = (int) Math.min(Integer.MAX_VALUE, (maxSize + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Creates a chunk. The contents of a new chunk are zero, unless it maps existing data
+     * @param index the index of the chunk
+     * @return the chunk
+     */
+    protected abstract ByteBuffer allocateChunk(int index) throws IOException;
+
+    int getChunkSize() {return chunkSize;}
+    int getChunkCount() {return chunkCount;}
+
+    /**
+     * Tracks the pages that are written. A page is at most a chunk, so it never crosses a chunk boundary
+     */
+    protected void trackWrites()
+    {
+        pageShift = Math.min(PAGE_SHIFT, chunkShift);
+        dirtyPages = new long[1];
+    }
+
+    int getPageSize() {return 1 << pageShift;}
+
+    /**
+     * Marks bytes as written. Called by the writes of this class, and by the users of {@link #view} that write to it
+     * @param address the address of the first byte
+     * @param length the number of bytes
+     */
+    void markWritten(long address, int length)
+    {
+        if (dirtyPages == null || length <= 0) return;
+        long last = (address + length - 1) >>> pageShift;
+        for (long page = address >>> pageShift; page <= last; page++)
+        {
+            int index = (int) (page >>> 6);
+            if (index >= dirtyPages.length) dirtyPages = Arrays.copyOf(dirtyPages, Math.max(dirtyPages.length * 2, index + 1));
+            dirtyPages[index] |= 1L << page;
+        }
+    }
+
+    /**
+     * @param page the first page to look at
+     * @return the first page from the given one that was written since the last {@link #clearDirtyPages()}, or -1
+     */
+    long nextDirtyPage(long page)
+    {
+        int index = (int) (page >>> 6);
+        if (dirtyPages == null || index >= dirtyPages.length) return -1;
+        long bits = dirtyPages[index] & (-1L << page);
+        while (bits == 0)
+        {
+            if (++index == dirtyPages.length) return -1;
+            bits = dirtyPages[index];
+        }
+        return ((long) index << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    void clearDirtyPages()
+    {
+        if (dirtyPages != null) Arrays.fill(dirtyPages, 0);
+    }
+
+    /**
+     * Makes sure that an address can be used
+     * @param address the address
+     * @return false if the address is beyond the maximum size
+     */
+    boolean ensureAddress(long address)
+    {
+        long index = address >>> chunkShift;
+        if (index >= maxChunks) return false;
+        while (chunkCount <= index)
+        {
+            if (chunkCount == chunks.length)
+            {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+                views = Arrays.copyOf(views, views.length * 2);
+            }
+            try {chunks[chunkCount] = allocateChunk(chunkCount);}
+            catch (IOException e) {throw new UncheckedIOException(e);}
+            views[chunkCount] = chunks[chunkCount].duplicate();
+            chunkCount++;
+        }
+        return true;
+    }
+
+    //the end of the chunk that contains an address
+    long chunkEnd(long address) {return (address | chunkMask) + 1;}
+
+    long getLong(long address) {return chunks[(int) (address >>> chunkShift)].getLong((int) (address & chunkMask));}
+    void putLong(long address, long value)
+    {
+        chunks[(int) (address >>> chunkShift)].putLong((int) (address & chunkMask), value);
+        if (dirtyPages != null) markWritten(address, Long.BYTES);
+    }
+
+    int getInt(long address) {return chunks[(int) (address >>> chunkShift)].getInt((int) (address & chunkMask));}
+    void putInt(long address, int value)
+    {
+        chunks[(int) (address >>> chunkShift)].putInt((int) (address & chunkMask), value);
+        if (dirtyPages != null) markWritten(address, Integer.BYTES);
+    }
+
+    /**
+     * Returns a buffer positioned at an address. The buffer is reused by the next call for the same chunk
+     * @param address the address
+     * @param length the number of bytes that can be read or written
+     * @return the buffer
+     */
+    ByteBuffer view(long address, int length)
+    {
+        ByteBuffer view = views[(int) (address >>> chunkShift)];
+        int offset = (int) (address & chunkMask);
+        view.clear();
+        view.position(offset);
+        view.limit(offset + length);
+        return view;
+    }
+
+    /**
+     * Copies bytes from a buffer to the memory
+     * @param address the destination
+     * @param source the buffer, its bytes from 0 to length are copied
+     * @param length the number of bytes
+     */
+    void write(long address, ByteBuffer source, int length)
+    {
+        ByteBuffer view = view(address, length);
+        ByteBuffer bytes = source.duplicate();
+        bytes.clear();
+        bytes.limit(length);
+        view.put(bytes);
+        markWritten(address, length);
+    }
+
+    /**
+     * Compares bytes of the memory with the bytes of a buffer
+     * @param address the address
+     * @param other the buffer, its bytes from 0 to length are compared
+     * @param length the number of bytes
+     * @return true if the bytes are equal
+     */
+    boolean equals(long address, ByteBuffer other, int length)
+    {
+        ByteBuffer chunk = chunks[(int) (address >>> chunkShift)];
+        int offset = (int) (address & chunkMask);
+        int i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES)
+        {
+            if (chunk.getLong(offset + i) != other.getLong(i)) return false;
+        }
+        for (; i < length; i++)
+        {
+            if (chunk.get(offset + i) != other.get(i)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        Arrays.fill(chunks, null);  //direct buffers are released when they are collected
+        Arrays.fill(views, null);
+        chunkCount = 0;
+    }
+
+    /**
+     * Memory in direct byte buffers
+     */
+    static final class Direct extends Memory
+    {
+        Direct(int chunkSize, long maxSize) {super(chunkSize, maxSize);}
+
+        @Override
+        protected ByteBuffer allocateChunk(int index) {return ByteBuffer.allocateDirect(getChunkSize());}
+    }
+
+    /**
+     * Memory mapped privately from a file. Chunk i is mapped at file offset {@code i * chunk size} and the file
+     * grows when a new chunk is mapped. The changes are copy on write: they are never written to the file by
+     * the operating system, a {@link Journal} writes the pages that are tracked as written
+     */
+    static final class Mapped extends Memory
+    {
+        private final FileChannel channel;
+
+        Mapped(FileChannel channel, int chunkSize, long maxSize)
+        {
+            super(chunkSize, maxSize);
+            this.channel = channel;
+            trackWrites();
+        }
+
+        @Override
+        protected ByteBuffer allocateChunk(int index) throws IOException
+        {
+            return channel.map(FileChannel.MapMode.PRIVATE, (long) index * getChunkSize(), getChunkSize());
+        }
+
+        FileChannel getChannel() {return channel;}
+
+        @Override
+        public void close() throws IOException
+        {
+            super.close();
+            channel.close();
+        }
+    }
+}
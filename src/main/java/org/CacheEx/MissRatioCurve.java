@@ -0,0 +1,192 @@
+package org.CacheEx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Predicts the hit ratio that an LRU cache would have at other sizes, from a sample of the accessed keys (SHARDS)
+ * <p>
+ *
+ * A key is sampled if the hash of the key is below a threshold, so every access of a sampled key is sampled and the
+ * sampled keys behave like a smaller cache. The reuse distance of an access (the number of distinct keys accessed since
+ * the previous access of the same key) is measured among the sampled keys and divided by the sampling rate.
+ * A cache of size c hits the accesses whose reuse distance is below c, so a histogram of the distances is the miss
+ * ratio curve of every size up to the maximum size at once.
+ * <p>
+ *
+ * The distances are counted with a Fenwick tree over the time of the last access of every sampled key. The sampling
+ * starts at a fixed rate (1% by default) and the number of sampled keys is bounded (fixed size SHARDS): when the bound
+ * is reached the threshold is halved and the keys above it are dropped, so the memory does not depend on the number
+ * of keys. The counts recorded at the previous rate are halved as well, so that every count stands for the same number
+ * of accesses. Can be used from any thread, only the accesses of sampled keys lock. A small set of keys needs a
+ * higher rate to be predicted accurately, a rate of 1 records every key until the bound is reached.
+ */
+public final class MissRatioCurve
+{
+    static final int DEFAULT_SAMPLED_KEYS = 8192;
+    static final double DEFAULT_SAMPLING_RATE = 0.01;
+    private static final int HASH_RANGE = 1 << 24;
+    private static final int BUCKETS = 256;
+    private static final int MIN_TIMES = 1024;
+
+    private final long maximumSize;
+    private final int maxSampledKeys;
+    private final long bucketWidth;
+    private volatile int threshold;     //a key is sampled if its hash is below
+    private final double[] histogram = new double[BUCKETS + 1];   //the last bucket counts the larger distances and the first accesses
+    private double total;
+    private final Map<Object, Integer> lastAccess = new HashMap<>();   //sampled key -> time of its last access
+    private int[] tree = new int[MIN_TIMES + 1];    //Fenwick tree, 1 at the time of the last access of every sampled key
+    private int time;
+
+    /**
+     * @param maximumSize the largest cache size that is predicted
+     */
+    public MissRatioCurve(long maximumSize)
+    {
+        this(maximumSize, DEFAULT_SAMPLED_KEYS);
+    }
+
+    /**
+     * @param maximumSize the largest cache size that is predicted
+     * @param maxSampledKeys the maximum number of sampled keys, a larger sample is more accurate
+     */
+    public MissRatioCurve(long maximumSize, int maxSampledKeys)
+    {
+        this(maximumSize, maxSampledKeys, DEFAULT_SAMPLING_RATE);
+    }
+
+    /**
+     * @param maximumSize the largest cache size that is predicted
+     * @param maxSampledKeys the maximum number of sampled keys, a larger sample is more accurate
+     * @param samplingRate the initial fraction of the keys that are sampled, in (0, 1]
+     */
+    public MissRatioCurve(long maximumSize, int maxSampledKeys, double samplingRate)
+    {
+        if (maximumSize <= 0) throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        if (maxSampledKeys <= 0) throw new IllegalArgumentException("Sampled keys must be positive: " + maxSampledKeys);
+        if (!(samplingRate > 0 && samplingRate <= 1)) throw new IllegalArgumentException("Invalid sampling rate: " + samplingRate);
+        this.maximumSize = maximumSize;
+        this.maxSampledKeys = maxSampledKeys;
+        bucketWidth = (maximumSize + BUCKETS - 1) / BUCKETS;
+        threshold = Math.max(1, (int) (samplingRate * HASH_RANGE));
+    }
+
+    /**
+     * Records an access of a key
+     * @param key the key
+     */
+    public void record(Object key)
+    {
+        if (hash(key) >= threshold) return;
+        synchronized (this)
+        {
+            if (hash(key) < threshold) recordSampled(key);
+        }
+    }
+
+    /**
+     * @param size the size of the cache, in entries
+     * @return the predicted hit ratio of an LRU cache of that size, 0 if nothing was recorded
+     */
+    public synchronized double hitRatio(long size)
+    {
+        if (total == 0) return 0;
+        long buckets = Math.min(BUCKETS, Math.max(0, size) / bucketWidth);
+        double hits = 0;
+        for (int b = 0; b < buckets; b++) hits += histogram[b];
+        return hits / total;
+    }
+
+    /**
+     * @param size the size of the cache, in entries
+     * @return the predicted miss ratio of an LRU cache of that size, 1 if nothing was recorded
+     */
+    public double missRatio(long size) {return 1 - hitRatio(size);}
+
+    /**
+     * @return the estimated number of recorded accesses, sampled or not
+     */
+    public synchronized double getAccessCount() {return total * HASH_RANGE / threshold;}
+
+    /**
+     * @return the fraction of the keys that are sampled
+     */
+    public double getSamplingRate() {return (double) threshold / HASH_RANGE;}
+
+    public long getMaximumSize() {return maximumSize;}
+
+    private void recordSampled(Object key)
+    {
+        if (time + 1 == tree.length) compact();
+        int now = ++time;
+        Integer previous = lastAccess.put(key, now);
+        if (previous == null) histogram[BUCKETS]++;     //the first access misses at any size
+        else
+        {
+            int distance = lastAccess.size() - prefixSum(previous);  //the keys accessed after the previous access
+            add(previous, -1);
+            long scaled = (long) (distance * (double) HASH_RANGE / threshold);
+            histogram[(int) Math.min(BUCKETS, scaled / bucketWidth)]++;
+        }
+        add(now, 1);
+        total++;
+        while (lastAccess.size() > maxSampledKeys && threshold > 1) lowerThreshold();
+    }
+
+    //halves the sampling rate and drops the keys that are no longer sampled
+    private void lowerThreshold()
+    {
+        threshold /= 2;
+        for (int b = 0; b < histogram.length; b++) histogram[b] /= 2;
+        total /= 2;
+        for (Iterator<Map.Entry<Object, Integer>> i = lastAccess.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry<Object, Integer> entry = i.next();
+            if (hash(entry.getKey()) < threshold) continue;
+            add(entry.getValue(), -1);
+            i.remove();
+        }
+    }
+
+    //renumbers the times of the sampled keys from 1, in the same order, when the times run out
+    private void compact()
+    {
+        List<Map.Entry<Object, Integer>> entries = new ArrayList<>(lastAccess.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        tree = new int[Math.max(MIN_TIMES, entries.size() * 4) + 1];
+        time = 0;
+        for (Map.Entry<Object, Integer> entry : entries)
+        {
+            entry.setValue(++time);
+            add(time, 1);
+        }
+    }
+
+    private void add(int index, int delta)
+    {
+        for (; index < tree.length; index += index & -index) tree[index] += delta;
+    }
+
+    private int prefixSum(int index)
+    {
+        int sum = 0;
+        for (; index > 0; index -= index & -index) sum += tree[index];
+        return sum;
+    }
+
+    //a hash in [0, HASH_RANGE) that does not depend on the hashing of the caches
+    private static int hash(Object key)
+    {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & (HASH_RANGE - 1);
+    }
+}
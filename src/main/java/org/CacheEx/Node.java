@@ -8,9 +8,12 @@ package org.CacheEx;
 public class Node<K, V>
 {
     private K key;
-    private V value;
+    private V value;    //a ConcurrentNode holds the value of the lock free readers
     private Node<K, V> next, prev;
+    private CustomLinkedList<K, V> list; //the list that currently holds the node
     private long frequency;
+    private int weight;
+    private TimerWheel.Timer<K, V> timer;   //the expiration of the node, null unless the cache expires entries
 
     public Node(K key, V value)
     {
@@ -18,6 +21,23 @@ public class Node<K, V>
         this.value = value;
         next = prev = null;
         frequency = 1;
+        weight = 1;
+    }
+
+    /**
+     * Reuses an evicted node for a new entry, as if it was created by the constructor
+     * @param key the new key
+     * @param value the new value
+     */
+    void reset(K key, V value)
+    {
+        this.key = key;
+        setValue(value);
+        next = prev = null;
+        list = null;
+        frequency = 1;
+        weight = 1;
+        if (timer != null) timer.clear();   //kept for the next entry, the node left the timer wheel when it was evicted
     }
 
     public V getValue() {return value;}
@@ -32,9 +52,19 @@ public class Node<K, V>
     public Node<K, V> getPrev() {return prev;}
     public void setPrev(Node<K, V> prev) {this.prev = prev;}
 
+    public CustomLinkedList<K, V> getList() {return list;}
+    public void setList(CustomLinkedList<K, V> list) {this.list = list;}
+
     public long getFrequency() {return frequency;}
     public void incrementFrequency() {frequency++;}
+    void setFrequency(long frequency) {this.frequency = frequency;}
+
+    public int getWeight() {return weight;}
+    public void setWeight(int weight) {this.weight = weight;}
+
+    TimerWheel.Timer<K, V> getTimer() {return timer;}
+    void setTimer(TimerWheel.Timer<K, V> timer) {this.timer = timer;}
 
     @Override
-    public String toString() {return "Key=" + key + ", Value=" + value;}
+    public String toString() {return "Key=" + key + ", Value=" + getValue();}
 }
\ No newline at end of file
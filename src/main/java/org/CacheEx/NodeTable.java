@@ -0,0 +1,229 @@
+package org.CacheEx;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing hash table of the nodes of a {@link CacheImpl}
+ * <p>
+ *
+ * The keys and the nodes are stored next to each other in one array (linear probing, deletion by backward
+ * shifting), so unlike a {@link java.util.HashMap} a {@code put} does not allocate an entry. The hashes of the
+ * keys are kept in a parallel array where 0 marks an empty slot, so a probe reads the keys only when the hashes
+ * are equal and a lookup never reads the node. The table is sized for the capacity of the cache with a load
+ * factor of at most 1/2 and only grows if the cache holds more nodes than expected.
+ * Null keys are not supported and the iterators do not support removal.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+final class NodeTable<K, V> extends AbstractMap<K, Node<K, V>>
+{
+    private int[] hashes;
+    private Object[] entries;   //the key of slot i at 2 * i and its node at 2 * i + 1
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize the number of nodes the table must hold without growing
+     */
+    NodeTable(int expectedSize)
+    {
+        int length = Integer.highestOneBit(Math.max(2 * expectedSize - 1, 1)) << 1;
+        hashes = new int[length];
+        entries = new Object[2 * length];
+        mask = length - 1;
+    }
+
+    @Override
+    public Node<K, V> get(Object key)
+    {
+        int hash = hash(key);
+        for (int i = hash & mask; hashes[i] != 0; i = (i + 1) & mask)
+        {
+            if (hashes[i] == hash && matches(i, key)) return node(i);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {return get(key) != null;}
+
+    @Override
+    public Node<K, V> put(K key, Node<K, V> node)
+    {
+        int hash = hash(key);
+        int i = hash & mask;
+        for (; hashes[i] != 0; i = (i + 1) & mask)
+        {
+            if (hashes[i] == hash && matches(i, key))
+            {
+                Node<K, V> old = node(i);
+                entries[2 * i + 1] = node;
+                return old;
+            }
+        }
+        hashes[i] = hash;
+        entries[2 * i] = key;
+        entries[2 * i + 1] = node;
+        if (++size > hashes.length / 2) resize();
+        return null;
+    }
+
+    @Override
+    public Node<K, V> remove(Object key)
+    {
+        int hash = hash(key);
+        for (int i = hash & mask; hashes[i] != 0; i = (i + 1) & mask)
+        {
+            if (hashes[i] != hash || !matches(i, key)) continue;
+            Node<K, V> removed = node(i);
+            shiftBack(i);
+            size--;
+            return removed;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {return size;}
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(hashes, 0);
+        Arrays.fill(entries, null);
+        size = 0;
+    }
+
+    @Override
+    public Collection<Node<K, V>> values()
+    {
+        return new AbstractCollection<Node<K, V>>()
+        {
+            @Override
+            public Iterator<Node<K, V>> iterator() {return new NodeIterator();}
+
+            @Override
+            public int size() {return size;}
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, Node<K, V>>> entrySet()
+    {
+        return new AbstractSet<Map.Entry<K, Node<K, V>>>()
+        {
+            @Override
+            public Iterator<Map.Entry<K, Node<K, V>>> iterator()
+            {
+                NodeIterator nodes = new NodeIterator();
+                return new Iterator<Map.Entry<K, Node<K, V>>>()
+                {
+                    @Override
+                    public boolean hasNext() {return nodes.hasNext();}
+
+                    @Override
+                    public Map.Entry<K, Node<K, V>> next()
+                    {
+                        Node<K, V> node = nodes.next();
+                        return new SimpleImmutableEntry<>(node.getKey(), node);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {return size;}
+        };
+    }
+
+    //the same instance is the common case and does not read the key
+    private boolean matches(int slot, Object key)
+    {
+        Object slotKey = entries[2 * slot];
+        return slotKey == key || slotKey.equals(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V> node(int slot) {return (Node<K, V>) entries[2 * slot + 1];}
+
+    //the hash code is mixed because the table is a power of two and probed linearly, 0 is reserved for empty slots
+    private static int hash(Object key)
+    {
+        int h = key.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h != 0 ? h : 1;
+    }
+
+    //fills the hole at a slot with the later entries of the probe sequence that may not skip it
+    private void shiftBack(int hole)
+    {
+        for (int i = (hole + 1) & mask; hashes[i] != 0; i = (i + 1) & mask)
+        {
+            int home = hashes[i] & mask;
+            //the entry can move to the hole if its home is not in the cyclic range (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask))
+            {
+                move(i, hole);
+                hole = i;
+            }
+        }
+        hashes[hole] = 0;
+        entries[2 * hole] = entries[2 * hole + 1] = null;
+    }
+
+    private void move(int from, int to)
+    {
+        hashes[to] = hashes[from];
+        entries[2 * to] = entries[2 * from];
+        entries[2 * to + 1] = entries[2 * from + 1];
+    }
+
+    private void resize()
+    {
+        int[] oldHashes = hashes;
+        Object[] oldEntries = entries;
+        hashes = new int[oldHashes.length * 2];
+        entries = new Object[oldEntries.length * 2];
+        mask = hashes.length - 1;
+        for (int j = 0; j < oldHashes.length; j++)
+        {
+            if (oldHashes[j] == 0) continue;
+            int i = oldHashes[j] & mask;
+            while (hashes[i] != 0) i = (i + 1) & mask;
+            hashes[i] = oldHashes[j];
+            entries[2 * i] = oldEntries[2 * j];
+            entries[2 * i + 1] = oldEntries[2 * j + 1];
+        }
+    }
+
+    private final class NodeIterator implements Iterator<Node<K, V>>
+    {
+        private int slot = advance(0);
+
+        @Override
+        public boolean hasNext() {return slot < hashes.length;}
+
+        @Override
+        public Node<K, V> next()
+        {
+            if (slot >= hashes.length) throw new NoSuchElementException();
+            Node<K, V> node = node(slot);
+            slot = advance(slot + 1);
+            return node;
+        }
+
+        private int advance(int from)
+        {
+            while (from < hashes.length && hashes[from] == 0) from++;
+            return from;
+        }
+    }
+}
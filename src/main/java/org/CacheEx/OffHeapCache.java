@@ -0,0 +1,141 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A cache that stores its entries outside of the Java heap
+ * <p>
+ *
+ * The hash index, the links of the replacement policy and the serialized keys and values live in
+ * direct {@link ByteBuffer}s managed by an {@link OffHeapStore}, so the garbage collector never sees
+ * the contents of the cache, only a handful of objects. Keys and values are converted with {@link Serializer}s
+ * (see {@link Serializers}). Supports the LRU, MRU and LFU policies.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class OffHeapCache<K, V> implements Cache<K, V>, Closeable
+{
+    static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    final OffHeapStore store;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private ByteBuffer keyBuffer = ByteBuffer.allocate(64);    //the serialized key of the current operation
+    private long hitCount, missCount;
+
+    /**
+     * @param capacity the maximum number of entries
+     * @param maxMemory the maximum number of off heap bytes (index and entries)
+     * @param policy the replacement policy (LRU, MRU or LFU)
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public OffHeapCache(int capacity, long maxMemory, CacheReplacementPolicy policy, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this(new Memory.Direct(chunkSizeFor(maxMemory), maxMemory), capacity, policy, keySerializer, valueSerializer);
+    }
+
+    OffHeapCache(Memory memory, int capacity, CacheReplacementPolicy policy, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this(new OffHeapStore(memory, policy, capacity), keySerializer, valueSerializer);
+    }
+
+    OffHeapCache(OffHeapStore store, Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this.store = store;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        int keyLength = serializeKey(key);
+        long record = store.find(keyBuffer, keyLength, hash(keyLength));
+        if (record == 0)
+        {
+            missCount++;
+            return null;
+        }
+        if (!store.verify(record))
+        {
+            store.remove(record);   //a corrupted entry is dropped
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        store.access(record);
+        return valueSerializer.read(store.valueView(record), store.valueLength(record));
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        int keyLength = serializeKey(key);
+        int valueLength = valueSerializer.serializedSize(value);
+        long record = store.put(keyBuffer, keyLength, hash(keyLength), valueLength);
+        valueSerializer.write(value, store.valueView(record));
+        store.seal(record);
+    }
+
+    /**
+     * Removes a key. A corrupted entry is removed but its value is not returned
+     */
+    @Override
+    public V remove(K key)
+    {
+        int keyLength = serializeKey(key);
+        long record = store.find(keyBuffer, keyLength, hash(keyLength));
+        if (record == 0) return null;
+        V value = store.verify(record) ? valueSerializer.read(store.valueView(record), store.valueLength(record)) : null;
+        store.remove(record);
+        return value;
+    }
+
+    @Override
+    public void invalidateAll() {store.clear();}
+
+    @Override
+    public int getSize() {return store.size;}
+
+    @Override
+    public long getHitCount() {return hitCount;}
+
+    @Override
+    public long getMissCount() {return missCount;}
+
+    /**
+     * Releases the off heap memory. The cache cannot be used afterwards
+     */
+    @Override
+    public void close() throws IOException {store.memory.close();}
+
+    //serializes a key to the key buffer and returns its length
+    private int serializeKey(K key)
+    {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        int length = keySerializer.serializedSize(key);
+        if (keyBuffer.capacity() < length) keyBuffer = ByteBuffer.allocate(Math.max(length, keyBuffer.capacity() * 2));
+        keyBuffer.clear();
+        keySerializer.write(key, keyBuffer);
+        return length;
+    }
+
+    //FNV-1a of the serialized key, the hash must not depend on the hashCode of the key
+    private int hash(int keyLength)
+    {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < keyLength; i++) hash = (hash ^ keyBuffer.get(i)) * 0x01000193;
+        return hash ^ (hash >>> 16);
+    }
+
+    //the chunks are at most 64 MB and never larger than the memory
+    static int chunkSizeFor(long maxMemory)
+    {
+        if (maxMemory >= DEFAULT_CHUNK_SIZE) return DEFAULT_CHUNK_SIZE;
+        return Integer.highestOneBit((int) Math.max(maxMemory - 1, 1 << OffHeapStore.MIN_BLOCK_SHIFT)) << 1;
+    }
+}
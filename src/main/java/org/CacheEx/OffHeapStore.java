@@ -0,0 +1,560 @@
+package org.CacheEx;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The storage engine of {@link OffHeapCache}. Every structure of the cache lives in a {@link Memory}
+ * <p>
+ *
+ * The memory is laid out as
+ * <pre>
+ * [header][hash index][LFU buckets][entry blocks...]
+ * </pre>
+ * The hash index is an open addressing table of record addresses with linear probing and backward
+ * shift deletion. An entry is a record with the links of the replacement policy, the hash, the lengths
+ * and the serialized key and value. The records are allocated from power of two size classes
+ * (64 bytes and up) with a free list per class, and never cross a chunk of the memory.
+ * LRU and MRU link the records in one list, LFU links them in frequency buckets like {@link CacheImpl}.
+ * The buckets are preallocated (there are never more buckets than entries) and recycled through a free list.
+ * Address 0 is the header, so 0 is used as the null address.
+ * <p>
+ *
+ * The header holds the state of the store (the allocator, the list heads and the size) so that a store
+ * in a memory mapped file can be reopened by {@link PersistentCache}. The header is versioned and protected
+ * by a CRC32, and with checksums enabled every record carries the CRC32 of its key and value.
+ */
+final class OffHeapStore
+{
+    static final int HEADER_SIZE = 4096;
+
+    static final int MAGIC = 0x43585053; //"CXPS"
+    static final int FORMAT_VERSION = 1;
+    //the layout of the header
+    static final int H_MAGIC = 0, H_VERSION = 4, H_CLEAN = 8, H_POLICY = 12, H_CAPACITY = 16, H_CHUNK_SIZE = 20,
+            H_TOP = 24, H_SIZE = 32, H_HEAD = 40, H_TAIL = 48, H_LOWEST_BUCKET = 56, H_FREE_BUCKET = 64,
+            H_USED_BUCKETS = 72, H_FREE_LIST_COUNT = 76, H_FREE_LISTS = 80, H_CHECKSUM = HEADER_SIZE - 8;
+
+    //the layout of an entry record
+    static final int PREV = 0, NEXT = 8, BUCKET = 16, HASH = 24, KEY_LENGTH = 28, VALUE_LENGTH = 32, CHECKSUM = 36, ENTRY_HEADER = 40;
+    //the layout of an LFU bucket
+    static final int FREQUENCY = 0, HEAD = 8, TAIL = 16, BUCKET_PREV = 24, BUCKET_NEXT = 32, BUCKET_SIZE = 40;
+
+    static final int MIN_BLOCK_SHIFT = 6;
+
+    final Memory memory;
+    final CacheReplacementPolicy policy;
+    final int capacity;
+    final long indexAddress;
+    final int indexMask;
+    final long bucketAddress;
+    final long[] freeLists;
+    private final boolean checksums;
+    private final CRC32 crc = new CRC32();
+
+    long top;                   //the first address that was never allocated
+    int size;
+    long head, tail;            //the list of LRU and MRU
+    long lowestBucket, freeBucket;
+    int usedBuckets;            //the number of buckets that have been handed out at least once
+
+    OffHeapStore(Memory memory, CacheReplacementPolicy policy, int capacity)
+    {
+        this(memory, policy, capacity, false);
+    }
+
+    /**
+     * Creates an empty store. The memory is not written, so {@link #loadState()} can restore the state of
+     * a store that was saved in the same memory with the same configuration
+     * @param memory the memory
+     * @param policy the replacement policy (LRU, MRU or LFU)
+     * @param capacity the maximum number of entries
+     * @param checksums true to keep a CRC32 of every entry
+     */
+    OffHeapStore(Memory memory, CacheReplacementPolicy policy, int capacity, boolean checksums)
+    {
+        switch (policy)
+        {
+            case LRU:
+            case MRU:
+            case LFU:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported cache replacement policy: " + policy);
+        }
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.memory = memory;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.checksums = checksums;
+
+        int indexSize = Integer.highestOneBit(Math.max(2, capacity) - 1) << 2; //at most half full
+        indexMask = indexSize - 1;
+        indexAddress = HEADER_SIZE;
+        bucketAddress = indexAddress + (long) indexSize * Long.BYTES;
+        top = firstBlock();
+        freeLists = new long[Integer.numberOfTrailingZeros(memory.getChunkSize()) - MIN_BLOCK_SHIFT + 1];
+
+        if (!memory.ensureAddress(top)) throw new IllegalArgumentException("Not enough memory for the index of " + capacity + " entries");
+    }
+
+    //================================= Entries =======================================
+
+    /**
+     * @param key the serialized key (bytes 0 to keyLength)
+     * @param keyLength the length of the key
+     * @param hash the hash of the key
+     * @return the record of the key or 0
+     */
+    long find(ByteBuffer key, int keyLength, int hash)
+    {
+        int index = findIndex(key, keyLength, hash);
+        return index < 0 ? 0 : indexAt(index);
+    }
+
+    /**
+     * Puts an entry. If the key exists it is updated, otherwise a new record is created and
+     * entries are evicted until the record fits. The value must be written by the caller in {@link #valueView}
+     * @param key the serialized key (bytes 0 to keyLength)
+     * @param keyLength the length of the key
+     * @param hash the hash of the key
+     * @param valueLength the length of the value
+     * @return the record of the key
+     */
+    long put(ByteBuffer key, int keyLength, int hash, int valueLength)
+    {
+        int recordSize = ENTRY_HEADER + keyLength + valueLength;
+        if (recordSize > memory.getChunkSize()) throw new IllegalArgumentException("Entry of " + recordSize + " bytes is larger than a chunk");
+
+        int index = findIndex(key, keyLength, hash);
+        if (index >= 0)
+        {
+            long record = indexAt(index);
+            if (sizeClass(recordSize) == sizeClass(recordSize(record)))
+            {
+                memory.putInt(record + VALUE_LENGTH, valueLength); //the new value fits in the block
+                access(record);
+                return record;
+            }
+            return relocate(record, key, keyLength, hash, valueLength);
+        }
+
+        if (size == capacity) remove(evict());
+        long record = allocateEvicting(recordSize);
+        writeHeader(record, key, keyLength, hash, valueLength);
+        addToIndex(record, hash);
+        insert(record);
+        size++;
+        return record;
+    }
+
+    /**
+     * Moves an updated entry to a block of another size class, keeping its place in the policy
+     */
+    private long relocate(long old, ByteBuffer key, int keyLength, int hash, int valueLength)
+    {
+        int recordSize = ENTRY_HEADER + keyLength + valueLength;
+        long record = allocateEvicting(recordSize);
+        writeHeader(record, key, keyLength, hash, valueLength);
+        if (find(key, keyLength, hash) != old)
+        {
+            //the old record was evicted to make room, so this is a new entry
+            addToIndex(record, hash);
+            insert(record);
+            size++;
+            return record;
+        }
+
+        //the new record takes the links of the old one
+        long prev = memory.getLong(old + PREV), next = memory.getLong(old + NEXT), bucket = memory.getLong(old + BUCKET);
+        memory.putLong(record + PREV, prev);
+        memory.putLong(record + NEXT, next);
+        memory.putLong(record + BUCKET, bucket);
+        if (prev != 0) memory.putLong(prev + NEXT, record);
+        else setHead(bucket, record);
+        if (next != 0) memory.putLong(next + PREV, record);
+        else setTail(bucket, record);
+
+        setIndexAt(findIndex(key, keyLength, hash), record);
+        free(old, recordSize(old));
+        access(record);
+        return record;
+    }
+
+    /**
+     * Removes an entry
+     * @param record the record of the entry
+     */
+    void remove(long record)
+    {
+        if (record == 0) return;
+        removeFromIndex(record);
+        unlink(record);
+        free(record, recordSize(record));
+        size--;
+    }
+
+    /**
+     * @param record the record
+     * @return a buffer positioned at the value of the record
+     */
+    ByteBuffer valueView(long record)
+    {
+        int keyLength = memory.getInt(record + KEY_LENGTH);
+        return memory.view(record + ENTRY_HEADER + keyLength, memory.getInt(record + VALUE_LENGTH));
+    }
+
+    /**
+     * @param record the record
+     * @return a buffer positioned at the key of the record
+     */
+    ByteBuffer keyView(long record) {return memory.view(record + ENTRY_HEADER, memory.getInt(record + KEY_LENGTH));}
+
+    /**
+     * Stores the checksum of an entry after its value has been written
+     * @param record the record
+     */
+    void seal(long record)
+    {
+        memory.markWritten(record, recordSize(record)); //the value was written through its view
+        if (checksums) memory.putInt(record + CHECKSUM, checksum(record));
+    }
+
+    /**
+     * @param record the record
+     * @return false if the key or the value of the entry are corrupted
+     */
+    boolean verify(long record)
+    {
+        return !checksums || memory.getInt(record + CHECKSUM) == checksum(record);
+    }
+
+    private int checksum(long record)
+    {
+        crc.reset();
+        crc.update(memory.view(record + ENTRY_HEADER, recordSize(record) - ENTRY_HEADER));
+        return (int) crc.getValue();
+    }
+
+    int valueLength(long record) {return memory.getInt(record + VALUE_LENGTH);}
+    int keyLength(long record) {return memory.getInt(record + KEY_LENGTH);}
+
+    private int recordSize(long record)
+    {
+        return ENTRY_HEADER + memory.getInt(record + KEY_LENGTH) + memory.getInt(record + VALUE_LENGTH);
+    }
+
+    private void writeHeader(long record, ByteBuffer key, int keyLength, int hash, int valueLength)
+    {
+        memory.putInt(record + HASH, hash);
+        memory.putInt(record + KEY_LENGTH, keyLength);
+        memory.putInt(record + VALUE_LENGTH, valueLength);
+        memory.write(record + ENTRY_HEADER, key, keyLength);
+    }
+
+    /**
+     * Removes every entry. Only the index is zeroed, the old blocks are overwritten when they are reused
+     */
+    void clear()
+    {
+        for (long address = indexAddress; address < bucketAddress; address += Long.BYTES) memory.putLong(address, 0);
+        top = firstBlock();
+        size = 0;
+        head = tail = 0;
+        lowestBucket = freeBucket = 0;
+        usedBuckets = 0;
+        Arrays.fill(freeLists, 0);
+    }
+
+    //================================= State =======================================
+
+    /**
+     * Writes the state of the store to the header
+     * @param clean true if the entries are consistent with the state (nothing will be changed until the next open)
+     */
+    void saveState(boolean clean)
+    {
+        memory.putInt(H_MAGIC, MAGIC);
+        memory.putInt(H_VERSION, FORMAT_VERSION);
+        memory.putInt(H_CLEAN, clean ? 1 : 0);
+        memory.putInt(H_POLICY, policy.ordinal());
+        memory.putInt(H_CAPACITY, capacity);
+        memory.putInt(H_CHUNK_SIZE, memory.getChunkSize());
+        memory.putLong(H_TOP, top);
+        memory.putLong(H_SIZE, size);
+        memory.putLong(H_HEAD, head);
+        memory.putLong(H_TAIL, tail);
+        memory.putLong(H_LOWEST_BUCKET, lowestBucket);
+        memory.putLong(H_FREE_BUCKET, freeBucket);
+        memory.putInt(H_USED_BUCKETS, usedBuckets);
+        memory.putInt(H_FREE_LIST_COUNT, freeLists.length);
+        for (int i = 0; i < freeLists.length; i++) memory.putLong(H_FREE_LISTS + (long) i * Long.BYTES, freeLists[i]);
+        memory.putLong(H_CHECKSUM, headerChecksum());
+    }
+
+    /**
+     * Restores the state of the store from the header
+     * @return false if the header is missing, corrupted, of another version or configuration, or was not saved clean
+     */
+    boolean loadState()
+    {
+        if (memory.getInt(H_MAGIC) != MAGIC || memory.getInt(H_VERSION) != FORMAT_VERSION) return false;
+        if (memory.getLong(H_CHECKSUM) != headerChecksum()) return false;
+        if (memory.getInt(H_CLEAN) != 1) return false;
+        if (memory.getInt(H_POLICY) != policy.ordinal() || memory.getInt(H_CAPACITY) != capacity
+                || memory.getInt(H_CHUNK_SIZE) != memory.getChunkSize()
+                || memory.getInt(H_FREE_LIST_COUNT) != freeLists.length) return false;
+
+        long savedTop = memory.getLong(H_TOP);
+        if (savedTop < top || !memory.ensureAddress(savedTop - 1)) return false;
+        top = savedTop;
+        size = (int) memory.getLong(H_SIZE);
+        head = memory.getLong(H_HEAD);
+        tail = memory.getLong(H_TAIL);
+        lowestBucket = memory.getLong(H_LOWEST_BUCKET);
+        freeBucket = memory.getLong(H_FREE_BUCKET);
+        usedBuckets = memory.getInt(H_USED_BUCKETS);
+        for (int i = 0; i < freeLists.length; i++) freeLists[i] = memory.getLong(H_FREE_LISTS + (long) i * Long.BYTES);
+        return true;
+    }
+
+    private long headerChecksum()
+    {
+        crc.reset();
+        crc.update(memory.view(0, H_CHECKSUM));
+        return crc.getValue();
+    }
+
+    //================================= Allocator =======================================
+
+    //the first block after the index and the buckets
+    private long firstBlock()
+    {
+        long bucketsEnd = bucketAddress + (policy == CacheReplacementPolicy.LFU ? (long) capacity * BUCKET_SIZE : 0);
+        return (bucketsEnd + 63) & ~63L;
+    }
+
+    /**
+     * Allocates a block and evicts entries until there is enough memory
+     * @param size the size of the record
+     * @return the block
+     */
+    private long allocateEvicting(int size)
+    {
+        long block;
+        while ((block = allocate(size)) == 0)
+        {
+            if (this.size == 0) throw new IllegalStateException("Not enough off heap memory for an entry of " + size + " bytes");
+            remove(evict());
+        }
+        return block;
+    }
+
+    //takes a block from the free list of its size class or from the unused memory
+    private long allocate(int size)
+    {
+        int sizeClass = sizeClass(size);
+        long block = freeLists[sizeClass];
+        if (block != 0)
+        {
+            freeLists[sizeClass] = memory.getLong(block);
+            return block;
+        }
+
+        long blockSize = 1L << (sizeClass + MIN_BLOCK_SHIFT);
+        long start = top;
+        if (start + blockSize > memory.chunkEnd(start)) start = memory.chunkEnd(start); //do not cross a chunk
+        if (!memory.ensureAddress(start + blockSize - 1)) return 0;
+        top = start + blockSize;
+        return start;
+    }
+
+    //returns a block to the free list of its size class
+    private void free(long block, int size)
+    {
+        int sizeClass = sizeClass(size);
+        memory.putLong(block, freeLists[sizeClass]);
+        freeLists[sizeClass] = block;
+    }
+
+    private static int sizeClass(int size)
+    {
+        return Math.max(0, 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_BLOCK_SHIFT);
+    }
+
+    //================================= Index =======================================
+
+    private long indexAt(int index) {return memory.getLong(indexAddress + (long) index * Long.BYTES);}
+    private void setIndexAt(int index, long record) {memory.putLong(indexAddress + (long) index * Long.BYTES, record);}
+
+    private int findIndex(ByteBuffer key, int keyLength, int hash)
+    {
+        int index = hash & indexMask;
+        long record;
+        while ((record = indexAt(index)) != 0)
+        {
+            if (memory.getInt(record + HASH) == hash && memory.getInt(record + KEY_LENGTH) == keyLength
+                    && memory.equals(record + ENTRY_HEADER, key, keyLength)) return index;
+            index = (index + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    private void addToIndex(long record, int hash)
+    {
+        int index = hash & indexMask;
+        while (indexAt(index) != 0) index = (index + 1) & indexMask;
+        setIndexAt(index, record);
+    }
+
+    //removes a record and shifts back the records of its probe sequence
+    private void removeFromIndex(long record)
+    {
+        int index = memory.getInt(record + HASH) & indexMask;
+        while (indexAt(index) != record) index = (index + 1) & indexMask;
+
+        int hole = index;
+        setIndexAt(hole, 0);
+        long entry;
+        while ((entry = indexAt(index = (index + 1) & indexMask)) != 0)
+        {
+            int home = memory.getInt(entry + HASH) & indexMask;
+            //the entry stays if its home bucket is cyclically in (hole, index]
+            boolean stays = hole <= index ? hole < home && home <= index : hole < home || home <= index;
+            if (stays) continue;
+            setIndexAt(hole, entry);
+            setIndexAt(index, 0);
+            hole = index;
+        }
+    }
+
+    //================================= Policy =======================================
+
+    /**
+     * Records a hit on an entry
+     * @param record the record
+     */
+    void access(long record)
+    {
+        if (policy != CacheReplacementPolicy.LFU)
+        {
+            if (record == tail) return;
+            unlinkFrom(0, record);
+            linkLast(0, record);
+            return;
+        }
+
+        long bucket = memory.getLong(record + BUCKET);
+        long frequency = memory.getLong(bucket + FREQUENCY) + 1;
+        long nextBucket = memory.getLong(bucket + BUCKET_NEXT);
+        if (nextBucket == 0 || memory.getLong(nextBucket + FREQUENCY) != frequency)
+        {
+            //the record is alone in its bucket, so the bucket can move to the new frequency
+            if (memory.getLong(bucket + HEAD) == memory.getLong(bucket + TAIL))
+            {
+                memory.putLong(bucket + FREQUENCY, frequency);
+                return;
+            }
+            nextBucket = newBucket(frequency);
+            memory.putLong(nextBucket + BUCKET_PREV, bucket);
+            memory.putLong(nextBucket + BUCKET_NEXT, memory.getLong(bucket + BUCKET_NEXT));
+            if (memory.getLong(bucket + BUCKET_NEXT) != 0) memory.putLong(memory.getLong(bucket + BUCKET_NEXT) + BUCKET_PREV, nextBucket);
+            memory.putLong(bucket + BUCKET_NEXT, nextBucket);
+        }
+        unlink(record);
+        linkLast(nextBucket, record);
+    }
+
+    private void insert(long record)
+    {
+        if (policy != CacheReplacementPolicy.LFU)
+        {
+            linkLast(0, record);
+            return;
+        }
+        if (lowestBucket == 0 || memory.getLong(lowestBucket + FREQUENCY) != 1)
+        {
+            long bucket = newBucket(1);
+            memory.putLong(bucket + BUCKET_NEXT, lowestBucket);
+            if (lowestBucket != 0) memory.putLong(lowestBucket + BUCKET_PREV, bucket);
+            lowestBucket = bucket;
+        }
+        linkLast(lowestBucket, record);
+    }
+
+    //the record that the policy selects for eviction, it is not removed
+    private long evict()
+    {
+        if (policy == CacheReplacementPolicy.LFU) return lowestBucket == 0 ? 0 : memory.getLong(lowestBucket + HEAD);
+        return policy == CacheReplacementPolicy.LRU ? head : tail;
+    }
+
+    //removes a record from the policy
+    private void unlink(long record)
+    {
+        long bucket = memory.getLong(record + BUCKET);
+        unlinkFrom(bucket, record);
+        if (bucket != 0 && memory.getLong(bucket + HEAD) == 0) //the bucket is empty
+        {
+            long prev = memory.getLong(bucket + BUCKET_PREV), next = memory.getLong(bucket + BUCKET_NEXT);
+            if (prev != 0) memory.putLong(prev + BUCKET_NEXT, next);
+            else lowestBucket = next;
+            if (next != 0) memory.putLong(next + BUCKET_PREV, prev);
+            memory.putLong(bucket + BUCKET_NEXT, freeBucket);
+            freeBucket = bucket;
+        }
+    }
+
+    //appends a record to a list (a bucket or the LRU/MRU list if the bucket is 0)
+    private void linkLast(long bucket, long record)
+    {
+        long last = bucket == 0 ? tail : memory.getLong(bucket + TAIL);
+        memory.putLong(record + BUCKET, bucket);
+        memory.putLong(record + PREV, last);
+        memory.putLong(record + NEXT, 0);
+        if (last != 0) memory.putLong(last + NEXT, record);
+        else setHead(bucket, record);
+        setTail(bucket, record);
+    }
+
+    private void unlinkFrom(long bucket, long record)
+    {
+        long prev = memory.getLong(record + PREV), next = memory.getLong(record + NEXT);
+        if (prev != 0) memory.putLong(prev + NEXT, next);
+        else setHead(bucket, next);
+        if (next != 0) memory.putLong(next + PREV, prev);
+        else setTail(bucket, prev);
+    }
+
+    private void setHead(long bucket, long record)
+    {
+        if (bucket == 0) head = record;
+        else memory.putLong(bucket + HEAD, record);
+    }
+
+    private void setTail(long bucket, long record)
+    {
+        if (bucket == 0) tail = record;
+        else memory.putLong(bucket + TAIL, record);
+    }
+
+    //takes a bucket from the free list or from the preallocated buckets
+    private long newBucket(long frequency)
+    {
+        long bucket;
+        if (freeBucket != 0)
+        {
+            bucket = freeBucket;
+            freeBucket = memory.getLong(bucket + BUCKET_NEXT);
+        }
+        else bucket = bucketAddress + (long) usedBuckets++ * BUCKET_SIZE;
+
+        memory.putLong(bucket + FREQUENCY, frequency);
+        memory.putLong(bucket + HEAD, 0);
+        memory.putLong(bucket + TAIL, 0);
+        memory.putLong(bucket + BUCKET_PREV, 0);
+        memory.putLong(bucket + BUCKET_NEXT, 0);
+        return bucket;
+    }
+}
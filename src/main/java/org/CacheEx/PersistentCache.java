@@ -0,0 +1,195 @@
+package org.CacheEx;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link OffHeapCache} whose memory is a memory mapped file, so the cache survives a restart
+ * <p>
+ *
+ * Everything the cache needs (the index, the LRU/MRU list or the LFU buckets and the entries) is already
+ * in the file, so reopening it only validates the header: there are no entries to deserialize and the
+ * cache is warm right away, in the same replacement order as before. The file is mapped privately, so the
+ * changes reach it only through a {@link #flush()}, in the background every flush interval and on {@link #close()}.
+ * A flush writes the state and the modified pages to a {@link Journal} and then to the file, so after a crash
+ * the cache restarts with the state of the last flush.
+ * <p>
+ *
+ * The header stores a format version, the configuration and a CRC32, and every entry has a CRC32 of its
+ * key and value that is checked when the entry is read. A file that was written by another version or
+ * configuration or has a corrupted header is discarded and the cache starts empty. A corrupted entry is
+ * dropped and counts as a miss. The operations are synchronized, because the flusher runs on its own thread.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class PersistentCache<K, V> extends OffHeapCache<K, V>
+{
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final Memory.Mapped memory;
+    private final FileChannel journal;
+    private final ScheduledExecutorService flusher;
+    private final boolean restored;
+
+    /**
+     * Opens or creates a persistent cache
+     * @param file the file of the cache
+     * @param capacity the maximum number of entries
+     * @param maxSize the maximum size of the file
+     * @param policy the replacement policy (LRU, MRU or LFU)
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public PersistentCache(Path file, int capacity, long maxSize, CacheReplacementPolicy policy,
+                           Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException
+    {
+        this(file, capacity, maxSize, policy, keySerializer, valueSerializer, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens or creates a persistent cache
+     * @param file the file of the cache
+     * @param capacity the maximum number of entries
+     * @param maxSize the maximum size of the file
+     * @param policy the replacement policy (LRU, MRU or LFU)
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @param flushIntervalMillis the interval of the background flushes, 0 to flush only on close
+     */
+    public PersistentCache(Path file, int capacity, long maxSize, CacheReplacementPolicy policy,
+                           Serializer<K> keySerializer, Serializer<V> valueSerializer, long flushIntervalMillis) throws IOException
+    {
+        super(open(file, capacity, maxSize, policy), keySerializer, valueSerializer);
+        memory = (Memory.Mapped) store.memory;
+        restored = store.size > 0;
+        try {journal = FileChannel.open(Journal.fileOf(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);}
+        catch (IOException e)
+        {
+            memory.close();
+            throw e;
+        }
+
+        if (flushIntervalMillis > 0)
+        {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-flusher-" + file.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushInBackground, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else flusher = null;
+    }
+
+    /**
+     * @return true if the entries were restored from the file
+     */
+    public boolean isRestored() {return restored;}
+
+    @Override
+    public synchronized V get(K key) {return super.get(key);}
+
+    @Override
+    public synchronized void put(K key, V value) {super.put(key, value);}
+
+    @Override
+    public synchronized V remove(K key) {return super.remove(key);}
+
+    @Override
+    public synchronized void invalidateAll() {super.invalidateAll();}
+
+    @Override
+    public synchronized int getSize() {return super.getSize();}
+
+    /**
+     * Writes the state of the cache and the pages modified since the last flush to the file and waits until they are
+     * written. The cache is locked only while the pages are copied, the journal and the file are written after
+     */
+    public void flush() throws IOException
+    {
+        synchronized (journal)
+        {
+            Journal.replay(journal, memory.getChannel());   //a journal left by a flush that failed
+            List<Journal.Run> pages;
+            synchronized (this)
+            {
+                store.saveState(true);
+                pages = Journal.copyDirtyPages(memory);
+            }
+            try {writeJournal(pages);}
+            catch (IOException | RuntimeException e)
+            {
+                synchronized (this) {Journal.markDirty(memory, pages);}   //written by the next flush
+                throw e;
+            }
+            Journal.replay(journal, memory.getChannel());
+        }
+    }
+
+    //writes the copied pages to the journal, without the lock of the cache
+    void writeJournal(List<Journal.Run> pages) throws IOException {Journal.write(journal, pages);}
+
+    /**
+     * Flushes the cache and closes the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (flusher != null)
+        {
+            flusher.shutdown();
+            try {flusher.awaitTermination(1, TimeUnit.MINUTES);}
+            catch (InterruptedException e) {Thread.currentThread().interrupt();}
+        }
+        try {flush();}
+        finally
+        {
+            super.close();
+            journal.close();
+        }
+    }
+
+    private void flushInBackground()
+    {
+        try {flush();}
+        catch (IOException | RuntimeException e)
+        {
+            //the pages stay modified and are written by the next flush, the flusher must keep running
+        }
+    }
+
+    //maps the file and restores the store, or starts an empty store if the file cannot be restored
+    private static OffHeapStore open(Path file, int capacity, long maxSize, CacheReplacementPolicy policy) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileChannel journal = FileChannel.open(Journal.fileOf(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            Journal.replay(journal, channel);   //completes the flush that a crash interrupted
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+        boolean existing = channel.size() >= OffHeapStore.HEADER_SIZE;
+        Memory.Mapped memory = new Memory.Mapped(channel, chunkSizeFor(maxSize), maxSize);
+        try
+        {
+            OffHeapStore store = new OffHeapStore(memory, policy, capacity, true);
+            if (!existing || !store.loadState()) store.clear();
+            return store;
+        }
+        catch (RuntimeException e)
+        {
+            memory.close();
+            throw e;
+        }
+    }
+}
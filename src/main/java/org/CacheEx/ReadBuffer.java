@@ -0,0 +1,65 @@
+package org.CacheEx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lossy, bounded ring buffer that records the cache hits of a {@link ConcurrentCacheImpl} segment
+ * <p>
+ *
+ * Any number of threads can add to the buffer without blocking, while only the thread that holds
+ * the segment lock drains it. When the buffer is full or another thread wins the race for a slot
+ * the access is simply dropped, which only makes the replacement policy slightly less accurate.
+ *
+ * @param <K> the key of a node
+ * @param <V> the value of a node
+ */
+final class ReadBuffer<K, V>
+{
+    static final int BUFFER_SIZE = 32; //must be a power of two
+    private static final int MASK = BUFFER_SIZE - 1;
+
+    private final AtomicReferenceArray<Node<K, V>> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong writeCounter = new AtomicLong();
+    private volatile long readCounter; //only written by the draining thread
+
+    /**
+     * Records an access to a node
+     * @param node the node that was accessed
+     * @return true if the buffer is full and should be drained
+     */
+    boolean offer(Node<K, V> node)
+    {
+        long head = readCounter;
+        long tail = writeCounter.get();
+        long size = tail - head;
+        if (size >= BUFFER_SIZE) return true;   //full, the access is dropped
+
+        if (writeCounter.compareAndSet(tail, tail + 1))
+        {
+            buffer.lazySet((int) (tail & MASK), node);
+            return size + 1 == BUFFER_SIZE;
+        }
+        return false;   //contended, the access is dropped
+    }
+
+    /**
+     * Passes every recorded access to the consumer. Must be called by one thread at a time
+     * @param consumer applies the access to the replacement policy
+     */
+    void drainTo(Consumer<Node<K, V>> consumer)
+    {
+        long head = readCounter;
+        long tail = writeCounter.get();
+        for (; head != tail; head++)
+        {
+            int index = (int) (head & MASK);
+            Node<K, V> node = buffer.get(index);
+            if (node == null) break;    //the slot was claimed but the node is not published yet
+            buffer.lazySet(index, null);
+            consumer.accept(node);
+        }
+        readCounter = head;
+    }
+}
@@ -0,0 +1,16 @@
+package org.CacheEx;
+
+/**
+ * The reason an entry was removed from a cache
+ */
+public enum RemovalCause
+{
+    /** Evicted by the replacement policy to stay within the capacity or the maximum weight */
+    SIZE,
+    /** Removed because its expiration time passed */
+    EXPIRED,
+    /** Removed by {@link Cache#remove} or {@link Cache#invalidateAll}, or moved to another node of a {@link DistributedCache} */
+    EXPLICIT,
+    /** The value was replaced by a put, the notification carries the old value */
+    REPLACED
+}
@@ -0,0 +1,20 @@
+package org.CacheEx;
+
+/**
+ * Is notified when an entry leaves a cache, e.g. to write it back or to release its resources.
+ * The notifications are delivered asynchronously by a {@link RemovalNotifier}, one at a time and in order, but not
+ * always on the same thread. A listener must not wait for another thread that uses the cache
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V>
+{
+    /**
+     * @param key the key of the entry
+     * @param value the value of the entry, the old value if it was {@link RemovalCause#REPLACED}
+     * @param cause why the entry was removed
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+}
@@ -0,0 +1,99 @@
+package org.CacheEx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the removal notifications of a cache to a {@link RemovalListener} off the thread of the cache operation
+ * <p>
+ *
+ * The notifications are added to a bounded queue that a task drains on the executor, so a get or put only pays
+ * for an offer to the queue. Every notification passes through the queue and is delivered under one lock, so
+ * the listener is called by one thread at a time in the order of the queue. A notification is never dropped:
+ * if the listener cannot keep up and the queue is full, the thread of the cache operation delivers the oldest
+ * notifications itself until its own one fits, and if the executor rejects the task it drains the queue.
+ * Such a thread waits for the call of the listener in progress, often under the lock of the cache, so a listener
+ * must not wait for another thread that uses the cache.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+final class RemovalNotifier<K, V>
+{
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final RemovalListener<? super K, ? super V> listener;
+    private final Executor executor;
+    private final ArrayBlockingQueue<Notification<K, V>> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();   //a drain task is scheduled or running
+    private final ReentrantLock deliverer = new ReentrantLock();  //held while a notification is delivered
+
+    RemovalNotifier(RemovalListener<? super K, ? super V> listener, Executor executor, int queueCapacity)
+    {
+        this.listener = listener;
+        this.executor = executor;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    void notify(K key, V value, RemovalCause cause)
+    {
+        Notification<K, V> notification = new Notification<>(key, value, cause);
+        //the listener is behind, slow the caller down instead of losing the notification or overtaking the queue
+        while (!queue.offer(notification)) deliverNext();
+        if (draining.compareAndSet(false, true))
+        {
+            try {executor.execute(this::drain);}
+            catch (RuntimeException e)  //the executor rejected the task
+            {
+                drain();
+            }
+        }
+    }
+
+    private void drain()
+    {
+        do
+        {
+            while (deliverNext()) {}
+            draining.set(false);
+        }
+        while (!queue.isEmpty() && draining.compareAndSet(false, true));    //added after the last poll
+    }
+
+    //delivers the oldest notification, returns false if the queue is empty
+    private boolean deliverNext()
+    {
+        deliverer.lock();
+        try
+        {
+            Notification<K, V> notification = queue.poll();
+            if (notification == null) return false;
+            try {listener.onRemoval(notification.key, notification.value, notification.cause);}
+            catch (RuntimeException e)
+            {
+                //a failing listener must not break the cache or the delivery of the other notifications
+            }
+            return true;
+        }
+        finally
+        {
+            deliverer.unlock();
+        }
+    }
+
+    private static final class Notification<K, V>
+    {
+        final K key;
+        final V value;
+        final RemovalCause cause;
+
+        Notification(K key, V value, RemovalCause cause)
+        {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
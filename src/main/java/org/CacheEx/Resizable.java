@@ -0,0 +1,19 @@
+package org.CacheEx;
+
+/**
+ * A thread safe cache whose capacity can be changed while other threads use it, e.g. by a {@link CapacityController}.
+ * {@link CacheImpl} is not thread safe, so it is not resizable by another thread, a {@link ConcurrentCacheImpl} is
+ */
+public interface Resizable
+{
+    /**
+     * @return the capacity, or the maximum total weight if there is a weigher
+     */
+    long getMaximumWeight();
+
+    /**
+     * Changes the capacity, or the maximum total weight if there is a weigher
+     * @param maximumWeight the new capacity or maximum total weight
+     */
+    void setMaximumWeight(long maximumWeight);
+}
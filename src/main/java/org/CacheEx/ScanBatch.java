@@ -0,0 +1,34 @@
+package org.CacheEx;
+
+import java.util.Map;
+
+/**
+ * A batch of entries returned by {@link Transport#scan} and the position of the next batch.
+ * The first batch of a scan starts at segment 0 and hash {@link Long#MIN_VALUE}
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public final class ScanBatch<K, V>
+{
+    private final Map<K, V> entries;
+    private final int nextSegment;  //-1 after the last batch
+    private final long nextHash;
+
+    /**
+     * @param entries the entries of the batch
+     * @param nextSegment the segment of the node where the next batch starts, -1 if this is the last batch
+     * @param nextHash the lowest key hash of the next batch within its segment
+     */
+    public ScanBatch(Map<K, V> entries, int nextSegment, long nextHash)
+    {
+        this.entries = entries;
+        this.nextSegment = nextSegment;
+        this.nextHash = nextHash;
+    }
+
+    public Map<K, V> getEntries() {return entries;}
+    public int getNextSegment() {return nextSegment;}
+    public long getNextHash() {return nextHash;}
+    public boolean isLast() {return nextSegment < 0;}
+}
@@ -0,0 +1,32 @@
+package org.CacheEx;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts keys or values to bytes for the caches that do not keep objects on the heap
+ *
+ * @param <T> the type of the objects
+ */
+public interface Serializer<T>
+{
+    /**
+     * @param value the object
+     * @return the number of bytes that {@link #write} will write
+     */
+    int serializedSize(T value);
+
+    /**
+     * Writes exactly {@link #serializedSize} bytes starting at the position of the buffer
+     * @param value the object
+     * @param buffer the buffer
+     */
+    void write(T value, ByteBuffer buffer);
+
+    /**
+     * Reads an object from the position of the buffer
+     * @param buffer the buffer
+     * @param size the number of bytes of the object
+     * @return the object
+     */
+    T read(ByteBuffer buffer, int size);
+}
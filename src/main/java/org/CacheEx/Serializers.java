@@ -0,0 +1,94 @@
+package org.CacheEx;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link Serializer}s for the common key and value types
+ */
+public final class Serializers
+{
+    private Serializers() {}
+
+    public static final Serializer<byte[]> BYTE_ARRAY = new Serializer<byte[]>()
+    {
+        @Override
+        public int serializedSize(byte[] value) {return value.length;}
+
+        @Override
+        public void write(byte[] value, ByteBuffer buffer) {buffer.put(value);}
+
+        @Override
+        public byte[] read(ByteBuffer buffer, int size)
+        {
+            byte[] value = new byte[size];
+            buffer.get(value);
+            return value;
+        }
+    };
+
+    public static final Serializer<String> STRING = new Serializer<String>()
+    {
+        @Override
+        public int serializedSize(String value)
+        {
+            //the exact UTF-8 length without encoding the string
+            int size = 0;
+            for (int i = 0; i < value.length(); i++)
+            {
+                char c = value.charAt(i);
+                if (c < 0x80) size++;
+                else if (c < 0x800) size += 2;
+                else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+                {
+                    size += 4;
+                    i++;
+                }
+                else if (Character.isSurrogate(c)) size++;   //an unpaired surrogate is encoded as '?'
+                else size += 3;
+            }
+            return size;
+        }
+
+        @Override
+        public void write(String value, ByteBuffer buffer) {buffer.put(value.getBytes(StandardCharsets.UTF_8));}
+
+        @Override
+        public String read(ByteBuffer buffer, int size)
+        {
+            if (buffer.hasArray())
+            {
+                String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), size, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + size);
+                return value;
+            }
+            byte[] bytes = new byte[size];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final Serializer<Long> LONG = new Serializer<Long>()
+    {
+        @Override
+        public int serializedSize(Long value) {return Long.BYTES;}
+
+        @Override
+        public void write(Long value, ByteBuffer buffer) {buffer.putLong(value);}
+
+        @Override
+        public Long read(ByteBuffer buffer, int size) {return buffer.getLong();}
+    };
+
+    public static final Serializer<Integer> INTEGER = new Serializer<Integer>()
+    {
+        @Override
+        public int serializedSize(Integer value) {return Integer.BYTES;}
+
+        @Override
+        public void write(Integer value, ByteBuffer buffer) {buffer.putInt(value);}
+
+        @Override
+        public Integer read(ByteBuffer buffer, int size) {return buffer.getInt();}
+    };
+}
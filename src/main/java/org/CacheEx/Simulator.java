@@ -0,0 +1,227 @@
+package org.CacheEx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays an access trace through a {@link CacheImpl} for every combination of replacement policy and
+ * capacity and reports the hit ratio and the throughput of each, to compare the policies on real workloads
+ * <p>
+ *
+ * The trace is read once, in batches that are shared by one worker thread per policy, so the policies are
+ * replayed in parallel on separate cores. Every worker has a small bounded queue of batches, which keeps
+ * the memory bounded for traces of any length: the reader waits when the slowest worker falls behind.
+ * A key that is not in a cache is put after the miss, the way a cache in front of a slower store is used.
+ * <p>
+ *
+ * Usage: {@code java -cp cache3.0.jar org.CacheEx.Simulator <trace> <format> <policies> <capacities>},
+ * e.g. {@code trace.gz ARC LRU,LFU,WTINYLFU 1000,10000}. A trace ending in .gz is decompressed.
+ * The results are printed as CSV.
+ */
+public class Simulator
+{
+    static final int BATCH_SIZE = 4096;
+    static final int QUEUE_CAPACITY = 16;  //batches per worker
+    private static final long[] END = new long[0];
+
+    private final List<CacheReplacementPolicy> policies;
+    private final int[] capacities;
+
+    /**
+     * @param policies the replacement policies, each is replayed by its own thread
+     * @param capacities the capacities of the caches of every policy
+     */
+    public Simulator(List<CacheReplacementPolicy> policies, int... capacities)
+    {
+        if (policies.isEmpty() || capacities.length == 0) throw new IllegalArgumentException("No policies or capacities");
+        this.policies = new ArrayList<>(policies);
+        this.capacities = capacities.clone();
+    }
+
+    /**
+     * Replays a trace through all the caches
+     * @param reader the trace, it is not closed
+     * @return the results, ordered by policy and capacity
+     */
+    public List<Result> run(TraceReader reader) throws IOException
+    {
+        List<Worker> workers = new ArrayList<>();
+        for (CacheReplacementPolicy policy : policies) workers.add(new Worker(policy));
+        for (Worker worker : workers) worker.start();
+
+        try
+        {
+            long[] keys = new long[BATCH_SIZE];
+            for (int n; (n = reader.read(keys)) > 0; )
+            {
+                long[] batch = n == keys.length ? keys : Arrays.copyOf(keys, n);
+                for (Worker worker : workers) worker.queue.put(batch);
+                keys = new long[BATCH_SIZE];    //the batch is shared by the workers and never modified
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the trace", e);
+        }
+        finally
+        {
+            for (Worker worker : workers) worker.finish();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Worker worker : workers)
+        {
+            if (worker.failure != null) throw new IllegalStateException("The simulation of " + worker.policy.name() + " failed", worker.failure);
+            results.addAll(Arrays.asList(worker.results));
+        }
+        return results;
+    }
+
+    /**
+     * Replays the batches through the caches of one policy
+     */
+    private final class Worker extends Thread
+    {
+        final CacheReplacementPolicy policy;
+        final BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Result[] results = new Result[capacities.length];
+        private final List<CacheImpl<Long, Boolean>> caches = new ArrayList<>();
+        volatile Throwable failure;
+
+        Worker(CacheReplacementPolicy policy)
+        {
+            super("simulator-" + policy.name());
+            setDaemon(true);
+            this.policy = policy;
+            for (int i = 0; i < capacities.length; i++)
+            {
+                caches.add(new CacheImpl<>(capacities[i], policy));
+                results[i] = new Result(policy, capacities[i]);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (long[] batch; (batch = queue.take()) != END; )
+                {
+                    if (failure != null) continue;  //keep draining so the reader never blocks
+                    try {replay(batch);}
+                    catch (RuntimeException | Error e) {failure = e;}
+                }
+            }
+            catch (InterruptedException e)
+            {
+                failure = e;
+            }
+        }
+
+        private void replay(long[] batch)
+        {
+            for (int i = 0; i < caches.size(); i++)
+            {
+                CacheImpl<Long, Boolean> cache = caches.get(i);
+                long start = System.nanoTime();
+                for (long key : batch)
+                {
+                    if (cache.get(key) == null) cache.put(key, Boolean.TRUE);
+                }
+                results[i].nanos += System.nanoTime() - start;
+                results[i].accesses += batch.length;
+            }
+        }
+
+        //sends the end of the trace and waits for the remaining batches
+        void finish()
+        {
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    queue.put(END);
+                    join();
+                    break;
+                }
+                catch (InterruptedException e) {interrupted = true;}
+            }
+            for (int i = 0; i < caches.size(); i++) results[i].hits = caches.get(i).getHitCount();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The result of one policy and capacity
+     */
+    public static final class Result
+    {
+        public static final String CSV_HEADER = "policy,capacity,accesses,hits,hit_ratio,throughput_ops_per_sec";
+
+        private final CacheReplacementPolicy policy;
+        private final int capacity;
+        private long accesses, hits, nanos;
+
+        Result(CacheReplacementPolicy policy, int capacity)
+        {
+            this.policy = policy;
+            this.capacity = capacity;
+        }
+
+        public CacheReplacementPolicy getPolicy() {return policy;}
+        public int getCapacity() {return capacity;}
+        public long getAccesses() {return accesses;}
+        public long getHits() {return hits;}
+
+        public double getHitRatio() {return accesses == 0 ? 0 : (double) hits / accesses;}
+
+        /**
+         * @return the accesses per second, measured in the worker thread
+         */
+        public double getThroughput() {return nanos == 0 ? 0 : accesses * 1e9 / nanos;}
+
+        public String toCsv() {return String.format(Locale.ROOT, "%s,%d,%d,%d,%.6f,%.0f", policy.name(), capacity, accesses, hits, getHitRatio(), getThroughput());}
+
+        @Override
+        public String toString() {return toCsv();}
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 4)
+        {
+            System.err.println("Usage: Simulator <trace> <BINARY|TEXT|ARC|LIRS> <policy,...> <capacity,...>");
+            System.exit(1);
+        }
+        TraceFormat format = TraceFormat.valueOf(args[1].toUpperCase());
+        List<CacheReplacementPolicy> policies = Arrays.stream(args[2].split(","))
+                .map(policy -> CacheReplacementPolicy.valueOf(policy.trim().toUpperCase()))
+                .collect(Collectors.toList());
+        int[] capacities = Arrays.stream(args[3].split(",")).mapToInt(capacity -> Integer.parseInt(capacity.trim())).toArray();
+
+        InputStream in = Files.newInputStream(Paths.get(args[0]));
+        if (args[0].endsWith(".gz")) in = new GZIPInputStream(in, 1 << 16);
+        List<Result> results;
+        try (TraceReader reader = format.open(in))
+        {
+            results = new Simulator(policies, capacities).run(reader);
+        }
+
+        PrintStream out = System.out;
+        out.println(Result.CSV_HEADER);
+        for (Result result : results) out.println(result.toCsv());
+    }
+}
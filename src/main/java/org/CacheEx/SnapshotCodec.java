@@ -0,0 +1,146 @@
+package org.CacheEx;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The binary format of the snapshots of {@link CacheImpl} and {@link ConcurrentCacheImpl}
+ * <p>
+ *
+ * A snapshot is a header followed by length prefixed records and an end marker. The keys and values are
+ * written with {@link Serializer}s, the frequency is used by LFU to rebuild its buckets.
+ * <pre>
+ * header  MAGIC int, VERSION int
+ * record  key size int, value size int, frequency long, key bytes, value bytes
+ * end     -1 int
+ * </pre>
+ * The records are streamed through one direct buffer that only grows for an entry that does not fit in it,
+ * so a snapshot of any size is written and read in constant memory and the channel writes from the buffer
+ * without another copy. A snapshot written to a file can be sent to a peer with {@code FileChannel.transferTo}.
+ */
+final class SnapshotCodec<K, V>
+{
+    static final int MAGIC = 0x43534E50;    //"CSNP"
+    static final int VERSION = 1;
+    static final int END = -1;
+    static final int BUFFER_SIZE = 64 << 10;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    SnapshotCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+    }
+
+    void writeHeader()
+    {
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(VERSION);
+    }
+
+    void writeEntry(WritableByteChannel channel, K key, V value, long frequency) throws IOException
+    {
+        int keySize = keySerializer.serializedSize(key);
+        int valueSize = valueSerializer.serializedSize(value);
+        ensureSpace(channel, RECORD_HEADER_SIZE + keySize + valueSize);
+        buffer.putInt(keySize).putInt(valueSize).putLong(frequency);
+        keySerializer.write(key, buffer);
+        valueSerializer.write(value, buffer);
+    }
+
+    //writes the end marker and the rest of the buffer
+    void writeEnd(WritableByteChannel channel) throws IOException
+    {
+        ensureSpace(channel, Integer.BYTES);
+        buffer.putInt(END);
+        flush(channel);
+    }
+
+    /**
+     * Reads a snapshot and passes its entries to an action in the order in which they were written
+     * @param channel the channel, it is read up to the end marker
+     * @param action the action
+     * @return the number of entries
+     */
+    long read(ReadableByteChannel channel, EntryAction<K, V> action) throws IOException
+    {
+        buffer.clear().flip();  //empty, in read mode
+        fill(channel, Integer.BYTES * 2);
+        if (buffer.getInt() != MAGIC) throw new StreamCorruptedException("Not a cache snapshot");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new StreamCorruptedException("Unsupported snapshot version: " + version);
+
+        long count = 0;
+        while (true)
+        {
+            fill(channel, Integer.BYTES);
+            int keySize = buffer.getInt();
+            if (keySize == END) return count;
+            fill(channel, RECORD_HEADER_SIZE - Integer.BYTES);
+            int valueSize = buffer.getInt();
+            long frequency = buffer.getLong();
+            if (keySize < 0 || valueSize < 0) throw new StreamCorruptedException("Invalid record sizes: " + keySize + ", " + valueSize);
+
+            fill(channel, keySize + valueSize);
+            int end = buffer.position() + keySize;
+            K key = keySerializer.read(buffer, keySize);
+            buffer.position(end);
+            V value = valueSerializer.read(buffer, valueSize);
+            buffer.position(end + valueSize);
+            action.accept(key, value, frequency);
+            count++;
+        }
+    }
+
+    //flushes the buffer if the bytes do not fit in it, and grows it for an entry that is larger than the buffer
+    private void ensureSpace(WritableByteChannel channel, int size) throws IOException
+    {
+        if (buffer.remaining() >= size) return;
+        flush(channel);
+        if (buffer.capacity() < size) buffer = ByteBuffer.allocateDirect(size);
+    }
+
+    private void flush(WritableByteChannel channel) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    //reads until at least size bytes are in the buffer
+    private void fill(ReadableByteChannel channel, int size) throws IOException
+    {
+        if (buffer.remaining() >= size) return;
+        if (buffer.capacity() < size)
+        {
+            ByteBuffer larger = ByteBuffer.allocateDirect(size);
+            larger.put(buffer);
+            buffer = larger;
+        }
+        else buffer.compact();
+        while (buffer.position() < size)
+        {
+            if (channel.read(buffer) < 0) throw new EOFException("The snapshot is truncated");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Receives the entries of a snapshot
+     * @param <K> the key
+     * @param <V> the value
+     */
+    @FunctionalInterface
+    interface EntryAction<K, V>
+    {
+        void accept(K key, V value, long frequency) throws IOException;
+    }
+}
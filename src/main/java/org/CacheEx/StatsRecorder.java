@@ -0,0 +1,51 @@
+package org.CacheEx;
+
+/**
+ * Records the statistics of a cache. The cache calls the recorder on every operation, so an
+ * implementation must be cheap and, for a {@link ConcurrentCacheImpl}, thread safe. {@link #disabled()}
+ * does nothing and does not read the clock, {@link ConcurrentStatsRecorder} records everything
+ */
+public interface StatsRecorder
+{
+    void recordHits(int count);
+
+    void recordMisses(int count);
+
+    /**
+     * A new entry was put in the cache
+     * @param weight the weight of the entry
+     */
+    void recordPut(int weight);
+
+    /**
+     * The value of an entry was replaced
+     * @param weightDifference the new weight minus the old weight
+     */
+    void recordUpdate(int weightDifference);
+
+    /**
+     * An entry was removed from the cache
+     * @param cause the cause of the removal
+     * @param weight the weight of the entry
+     */
+    void recordRemoval(RemovalCause cause, int weight);
+
+    /**
+     * @return false if the cache does not need to measure the latencies
+     */
+    boolean isRecordingLatency();
+
+    void recordGetLatency(long nanos);
+
+    void recordPutLatency(long nanos);
+
+    /**
+     * @return the statistics that were recorded until now
+     */
+    CacheStats snapshot();
+
+    /**
+     * @return a recorder that records nothing
+     */
+    static StatsRecorder disabled() {return DisabledStatsRecorder.INSTANCE;}
+}
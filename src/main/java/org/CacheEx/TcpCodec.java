@@ -0,0 +1,170 @@
+package org.CacheEx;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The messages between a {@link TcpTransport} and a {@link CacheServer}
+ * <p>
+ *
+ * A request is an operation byte followed by its arguments, the response follows on the same connection.
+ * A key or a value is its serialized size followed by its bytes, a collection is its size followed by the elements.
+ * A message larger than the maximum frame size is rejected before its buffers are allocated, so a corrupted or
+ * hostile peer cannot make the other side allocate more memory than it sent.
+ * <pre>
+ * GET_ALL    keys                                     -&gt; entries
+ * PUT_ALL    entries                                  -&gt; OK
+ * REMOVE     key                                      -&gt; boolean found, value if found
+ * REMOVE_ALL keys                                     -&gt; OK
+ * CLEAR                                               -&gt; OK
+ * SCAN       ranges, int segment, long hash, int limit -&gt; entries, int next segment, long next hash
+ * SIZE                                                -&gt; int
+ * </pre>
+ */
+final class TcpCodec<K, V>
+{
+    static final byte GET_ALL = 1, PUT_ALL = 2, REMOVE_ALL = 3, SCAN = 4, SIZE = 5, REMOVE = 6, CLEAR = 7;
+    static final byte OK = 0;
+    static final int DEFAULT_MAX_FRAME_SIZE = 64 << 20;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int maxFrameSize;
+    private long frameSize;    //the bytes of the message read so far
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    TcpCodec(Serializer<K> keySerializer, Serializer<V> valueSerializer, int maxFrameSize)
+    {
+        if (maxFrameSize <= 0) throw new IllegalArgumentException("Maximum frame size must be positive: " + maxFrameSize);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Starts to read a message, its size is counted against the maximum frame size
+     */
+    void startFrame() {frameSize = 0;}
+
+    void writeKey(DataOutputStream out, K key) throws IOException {write(out, keySerializer, key);}
+
+    K readKey(DataInputStream in) throws IOException {return read(in, keySerializer);}
+
+    //a value that may be null
+    void writeValue(DataOutputStream out, V value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null) write(out, valueSerializer, value);
+    }
+
+    V readValue(DataInputStream in) throws IOException
+    {
+        charge(1);
+        return in.readBoolean() ? read(in, valueSerializer) : null;
+    }
+
+    void writeKeys(DataOutputStream out, Collection<K> keys) throws IOException
+    {
+        out.writeInt(keys.size());
+        for (K key : keys) write(out, keySerializer, key);
+    }
+
+    List<K> readKeys(DataInputStream in) throws IOException
+    {
+        int count = readCount(in, Integer.BYTES);
+        List<K> keys = new ArrayList<>();   //not sized by the count, it is checked but not trusted
+        for (int i = 0; i < count; i++) keys.add(read(in, keySerializer));
+        return keys;
+    }
+
+    void writeEntries(DataOutputStream out, Map<K, V> entries) throws IOException
+    {
+        out.writeInt(entries.size());
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            write(out, keySerializer, entry.getKey());
+            write(out, valueSerializer, entry.getValue());
+        }
+    }
+
+    Map<K, V> readEntries(DataInputStream in) throws IOException
+    {
+        int count = readCount(in, Integer.BYTES * 2);
+        Map<K, V> entries = new HashMap<>();
+        for (int i = 0; i < count; i++) entries.put(read(in, keySerializer), read(in, valueSerializer));
+        return entries;
+    }
+
+    void writeRanges(DataOutputStream out, long[] ranges) throws IOException
+    {
+        out.writeInt(ranges.length);
+        for (long bound : ranges) out.writeLong(bound);
+    }
+
+    long[] readRanges(DataInputStream in) throws IOException
+    {
+        int count = readCount(in, Long.BYTES);
+        long[] ranges = new long[count];   //the count was checked against the frame
+        charge((long) count * Long.BYTES);
+        for (int i = 0; i < count; i++) ranges[i] = in.readLong();
+        return ranges;
+    }
+
+    int readInt(DataInputStream in) throws IOException
+    {
+        charge(Integer.BYTES);
+        return in.readInt();
+    }
+
+    long readLong(DataInputStream in) throws IOException
+    {
+        charge(Long.BYTES);
+        return in.readLong();
+    }
+
+    private <T> void write(DataOutputStream out, Serializer<T> serializer, T value) throws IOException
+    {
+        int size = serializer.serializedSize(value);
+        ensureBuffer(size);
+        serializer.write(value, buffer);
+        out.writeInt(size);
+        out.write(buffer.array(), 0, size);
+    }
+
+    private <T> T read(DataInputStream in, Serializer<T> serializer) throws IOException
+    {
+        int size = readCount(in, 1);
+        charge(size);
+        ensureBuffer(size);
+        in.readFully(buffer.array(), 0, size);
+        return serializer.read(buffer, size);
+    }
+
+    private void ensureBuffer(int size)
+    {
+        if (buffer.capacity() < size) buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        buffer.clear();
+    }
+
+    //reads a count of elements of at least a number of bytes, the elements must fit in the rest of the frame
+    private int readCount(DataInputStream in, int elementSize) throws IOException
+    {
+        int count = readInt(in);
+        if (count < 0) throw new IOException("Corrupted message: " + count);
+        if ((long) count * elementSize > maxFrameSize - frameSize) throw new IOException("Message larger than the maximum frame size of " + maxFrameSize + " bytes");
+        return count;
+    }
+
+    private void charge(long bytes) throws IOException
+    {
+        frameSize += bytes;
+        if (frameSize > maxFrameSize) throw new IOException("Message larger than the maximum frame size of " + maxFrameSize + " bytes");
+    }
+}
@@ -0,0 +1,268 @@
+package org.CacheEx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link Transport} to {@link CacheServer}s over TCP
+ * <p>
+ *
+ * There is one connection per node, opened on the first request. The requests to a node are sent one at a time
+ * on its connection, the requests to different nodes run in parallel. A connection that fails is closed and
+ * reopened by the next request, the failed request throws the {@link IOException}. A node that does not answer
+ * within the read timeout fails the request, so a hung server does not block the {@link DistributedCache}
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class TcpTransport<K, V> implements Transport<K, V>
+{
+    static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 30_000;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int readTimeoutMillis;
+    private final int maxFrameSize;
+    private final Map<String, InetSocketAddress> addresses = new ConcurrentHashMap<>();
+    private final Map<String, Connection<K, V>> connections = new ConcurrentHashMap<>();
+
+    /**
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     */
+    public TcpTransport(Serializer<K> keySerializer, Serializer<V> valueSerializer)
+    {
+        this(keySerializer, valueSerializer, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @param readTimeoutMillis the longest wait for a response, a request that waits longer throws a {@link java.net.SocketTimeoutException}
+     */
+    public TcpTransport(Serializer<K> keySerializer, Serializer<V> valueSerializer, int readTimeoutMillis)
+    {
+        this(keySerializer, valueSerializer, readTimeoutMillis, TcpCodec.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param keySerializer the serializer of the keys
+     * @param valueSerializer the serializer of the values
+     * @param readTimeoutMillis the longest wait for a response, a request that waits longer throws a {@link java.net.SocketTimeoutException}
+     * @param maxFrameSize the largest response in bytes, a larger response fails the request
+     */
+    public TcpTransport(Serializer<K> keySerializer, Serializer<V> valueSerializer, int readTimeoutMillis, int maxFrameSize)
+    {
+        if (maxFrameSize <= 0) throw new IllegalArgumentException("Maximum frame size must be positive: " + maxFrameSize);
+        if (readTimeoutMillis <= 0) throw new IllegalArgumentException("Read timeout must be positive: " + readTimeoutMillis);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Registers the address of a node, must be called before the node is added to the {@link DistributedCache}
+     * @param node the node
+     * @param address the address of its {@link CacheServer}
+     */
+    public void register(String node, InetSocketAddress address) {addresses.put(node, address);}
+
+    @Override
+    public Map<K, V> getAll(String node, Collection<K> keys) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.GET_ALL);
+                connection.codec.writeKeys(connection.out, keys);
+                connection.send();
+                return connection.codec.readEntries(connection.in);
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public void putAll(String node, Map<K, V> entries) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.PUT_ALL);
+                connection.codec.writeEntries(connection.out, entries);
+                connection.send();
+                connection.readOk();
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public V remove(String node, K key) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.REMOVE);
+                connection.codec.writeKey(connection.out, key);
+                connection.send();
+                return connection.codec.readValue(connection.in);
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public void removeAll(String node, Collection<K> keys) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.REMOVE_ALL);
+                connection.codec.writeKeys(connection.out, keys);
+                connection.send();
+                connection.readOk();
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public void clear(String node) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.CLEAR);
+                connection.send();
+                connection.readOk();
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public ScanBatch<K, V> scan(String node, long[] ranges, int segment, long fromHash, int limit) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.SCAN);
+                connection.codec.writeRanges(connection.out, ranges);
+                connection.out.writeInt(segment);
+                connection.out.writeLong(fromHash);
+                connection.out.writeInt(limit);
+                connection.send();
+                Map<K, V> entries = connection.codec.readEntries(connection.in);
+                return new ScanBatch<>(entries, connection.codec.readInt(connection.in), connection.codec.readLong(connection.in));
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    @Override
+    public int size(String node) throws IOException
+    {
+        Connection<K, V> connection = connection(node);
+        synchronized (connection)
+        {
+            try
+            {
+                connection.out.writeByte(TcpCodec.SIZE);
+                connection.send();
+                return connection.in.readInt();
+            }
+            catch (IOException e) {throw fail(node, connection, e);}
+        }
+    }
+
+    /**
+     * Closes the connections
+     */
+    @Override
+    public void close() throws IOException
+    {
+        for (Connection<K, V> connection : connections.values()) connection.socket.close();
+        connections.clear();
+    }
+
+    private Connection<K, V> connection(String node) throws IOException
+    {
+        Connection<K, V> connection = connections.get(node);
+        if (connection != null) return connection;
+
+        InetSocketAddress address = addresses.get(node);
+        if (address == null) throw new IllegalArgumentException("Unknown node: " + node);
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(readTimeoutMillis);
+        socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+        connection = new Connection<>(socket, new TcpCodec<>(keySerializer, valueSerializer, maxFrameSize));
+
+        Connection<K, V> existing = connections.putIfAbsent(node, connection);
+        if (existing == null) return connection;
+        socket.close(); //another thread connected first
+        return existing;
+    }
+
+    //the state of a failed connection is unknown, so it is not reused
+    private IOException fail(String node, Connection<K, V> connection, IOException e)
+    {
+        connections.remove(node, connection);
+        try {connection.socket.close();}
+        catch (IOException suppressed) {e.addSuppressed(suppressed);}
+        return e;
+    }
+
+    //================================= Inner Classes =======================================
+
+    private static final class Connection<K, V>
+    {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final TcpCodec<K, V> codec;
+
+        Connection(Socket socket, TcpCodec<K, V> codec) throws IOException
+        {
+            this.socket = socket;
+            this.codec = codec;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        //sends the request, the response is a new frame
+        void send() throws IOException
+        {
+            out.flush();
+            codec.startFrame();
+        }
+
+        void readOk() throws IOException
+        {
+            if (in.readByte() != TcpCodec.OK) throw new IOException("Unexpected response");
+        }
+    }
+}
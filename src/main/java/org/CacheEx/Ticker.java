@@ -0,0 +1,19 @@
+package org.CacheEx;
+
+/**
+ * A source of time in nanoseconds, used by the expiration of the cache entries.
+ * Tests can supply their own ticker to control the time
+ */
+@FunctionalInterface
+public interface Ticker
+{
+    /**
+     * @return the current time in nanoseconds, only the difference between two readings is meaningful
+     */
+    long read();
+
+    /**
+     * @return a ticker that reads {@link System#nanoTime()}
+     */
+    static Ticker systemTicker() {return System::nanoTime;}
+}
@@ -0,0 +1,177 @@
+package org.CacheEx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A two level cache: a small {@link CacheImpl} (L1) in front of a large cache (L2), e.g. a {@link CacheImpl},
+ * an {@link OffHeapCache} or a {@link DistributedCache}
+ * <p>
+ *
+ * New entries are written to L2 and an entry is promoted to L1 when it is found in L2, so L1 holds the hot
+ * entries and serves them without the cost of L2. The replacement policy of L1 decides which hot entries stay.
+ * <ul>
+ *     <li>{@link Mode#INCLUSIVE}: L2 keeps a copy of every entry of L1. A write goes to L2 and updates L1
+ *     if the key is there, the entries evicted from L1 are dropped. The capacity is the capacity of L2.</li>
+ *     <li>{@link Mode#EXCLUSIVE}: an entry is in one tier only. A promoted entry is removed from L2 and the
+ *     entries evicted from L1 are demoted to L2, a write goes to the tier of the key. The capacity is the sum
+ *     of the capacities.</li>
+ * </ul>
+ * Like {@link CacheImpl} the tiered cache is not thread safe.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+public class TieredCache<K, V> implements Cache<K, V>
+{
+    /**
+     * Whether L2 keeps a copy of the entries of L1
+     */
+    public enum Mode {INCLUSIVE, EXCLUSIVE}
+
+    private final CacheImpl<K, V> l1;
+    private final Cache<K, V> l2;
+    private final Mode mode;
+    private long l1HitCount, l1MissCount, l2HitCount, l2MissCount;
+    private long promotionCount, demotionCount;
+
+    /**
+     * @param l1Capacity the capacity of L1
+     * @param l1Policy the replacement policy of L1
+     * @param l2 the second level
+     * @param mode inclusive or exclusive
+     */
+    public TieredCache(int l1Capacity, CacheReplacementPolicy l1Policy, Cache<K, V> l2, Mode mode)
+    {
+        this.l1 = new CacheImpl<>(l1Capacity, l1Policy);
+        this.l2 = Objects.requireNonNull(l2, "l2");
+        this.mode = Objects.requireNonNull(mode, "mode");
+        if (mode == Mode.EXCLUSIVE) l1.setEvictionHook(this::demote);
+    }
+
+    @Override
+    public V get(K key)
+    {
+        V value = l1.get(key);
+        if (value != null)
+        {
+            l1HitCount++;
+            return value;
+        }
+        l1MissCount++;
+
+        value = l2.get(key);
+        if (value == null)
+        {
+            l2MissCount++;
+            return null;
+        }
+        l2HitCount++;
+        promote(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        if (l1.getNode(key) != null)
+        {
+            l1.put(key, value);
+            if (mode == Mode.INCLUSIVE) l2.put(key, value);
+        }
+        else l2.put(key, value);    //new entries start in L2 until they are read again
+    }
+
+    /**
+     * Removes a key from both tiers
+     */
+    @Override
+    public V remove(K key)
+    {
+        V value = l1.remove(key);
+        V l2Value = l2.remove(key);
+        return value != null ? value : l2Value;
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        l1.invalidateAll();
+        l2.invalidateAll();
+    }
+
+    /**
+     * Looks up the keys in L1 and the misses of L1 in L2 with one {@link Cache#getAll} call
+     */
+    @Override
+    public Map<K, V> getAll(Iterable<? extends K> keys, Collection<? super K> misses)
+    {
+        List<K> l1Misses = new ArrayList<>();
+        Map<K, V> values = l1.getAll(keys, l1Misses);
+        l1HitCount += values.size();
+        l1MissCount += l1Misses.size();
+        if (l1Misses.isEmpty()) return values;
+
+        Map<K, V> found = l2.getAll(l1Misses, misses);
+        l2HitCount += found.size();
+        l2MissCount += l1Misses.size() - found.size();
+        for (Map.Entry<K, V> entry : found.entrySet()) promote(entry.getKey(), entry.getValue());
+        values.putAll(found);
+        return values;
+    }
+
+    /**
+     * @return the number of entries, in exclusive mode the sum of the tiers
+     */
+    @Override
+    public int getSize() {return mode == Mode.EXCLUSIVE ? l1.getSize() + l2.getSize() : l2.getSize();}
+
+    @Override
+    public long getHitCount() {return l1HitCount + l2HitCount;}
+
+    /**
+     * @return the lookups that missed both tiers
+     */
+    @Override
+    public long getMissCount() {return l2MissCount;}
+
+    public long getL1HitCount() {return l1HitCount;}
+    public long getL1MissCount() {return l1MissCount;}
+    public long getL2HitCount() {return l2HitCount;}
+    public long getL2MissCount() {return l2MissCount;}
+
+    /**
+     * @return the number of entries that were copied or moved from L2 to L1
+     */
+    public long getPromotionCount() {return promotionCount;}
+
+    /**
+     * @return the number of entries that were moved from L1 to L2 (exclusive mode only)
+     */
+    public long getDemotionCount() {return demotionCount;}
+
+    /**
+     * @return the number of entries in L1
+     */
+    public int getL1Size() {return l1.getSize();}
+
+    public Mode getMode() {return mode;}
+
+    private void promote(K key, V value)
+    {
+        promotionCount++;
+        if (mode == Mode.EXCLUSIVE) l2.remove(key);
+        l1.put(key, value);     //may demote the victim of L1
+    }
+
+    //called by L1 for every evicted entry in exclusive mode
+    private void demote(K key, V value)
+    {
+        demotionCount++;
+        l2.put(key, value);
+    }
+
+}
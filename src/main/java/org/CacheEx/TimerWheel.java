@@ -0,0 +1,176 @@
+package org.CacheEx;
+
+import java.util.function.Predicate;
+
+/**
+ * A hierarchical timing wheel that finds the expired nodes of a cache in amortized O(1)
+ * <p>
+ *
+ * Every level is an array of buckets that each hold a circular doubly linked list of the timers of the nodes
+ * that expire within the time span of the bucket. The spans are powers of two close to a second, a minute, an
+ * hour and a day, so a bucket is found with a shift and a mask. When the time advances only the buckets whose span
+ * has passed are visited: their nodes are either expired or moved to a bucket of a lower level,
+ * so every node is moved at most once per level and the cache is never scanned.
+ *
+ * @param <K> the key of a node
+ * @param <V> the value of a node
+ */
+final class TimerWheel<K, V>
+{
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final int[] SHIFT = {30, 36, 42, 47, 49};    //~1.07 s, ~1.14 m, ~1.22 h, ~1.63 d, ~6.5 d
+    private static final long[] SPANS = {1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49};
+
+    private final Timer<K, V>[][] wheel;
+    private long nanos;     //the time of the last advance
+
+    @SuppressWarnings("unchecked")
+    TimerWheel(long nanos)
+    {
+        this.nanos = nanos;
+        wheel = (Timer<K, V>[][]) new Timer<?, ?>[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++)
+        {
+            wheel[i] = (Timer<K, V>[]) new Timer<?, ?>[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++)
+            {
+                Timer<K, V> sentinel = new Timer<>(null);
+                sentinel.next = sentinel.prev = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * @param node the node
+     * @return the timer of the node, created by the first call. Only the nodes of a cache that expires entries have one
+     */
+    static <K, V> Timer<K, V> timerOf(Node<K, V> node)
+    {
+        Timer<K, V> timer = node.getTimer();
+        if (timer == null)
+        {
+            timer = new Timer<>(node);
+            node.setTimer(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Adds a node to the wheel, or moves it if it is already in the wheel
+     * @param node the node, the expiration time of its timer is set
+     */
+    void schedule(Node<K, V> node) {schedule(timerOf(node));}
+
+    /**
+     * Removes a node from the wheel, does nothing if it is not in the wheel
+     * @param node the node
+     */
+    void deschedule(Node<K, V> node)
+    {
+        Timer<K, V> timer = node.getTimer();
+        if (timer != null) deschedule(timer);
+    }
+
+    /**
+     * @param node the node
+     * @return true if the node is in the wheel
+     */
+    static boolean isScheduled(Node<?, ?> node) {return node.getTimer() != null && node.getTimer().next != null;}
+
+    /**
+     * Advances the time and passes the expired nodes to the cache
+     * @param currentNanos the current time
+     * @param expire removes an expired node from the cache, returns false if the node must stay in the wheel
+     */
+    void advance(long currentNanos, Predicate<Node<K, V>> expire)
+    {
+        long previousNanos = nanos;
+        nanos = currentNanos;
+        for (int i = 0; i < SHIFT.length; i++)
+        {
+            long previousTicks = previousNanos >>> SHIFT[i];
+            long currentTicks = currentNanos >>> SHIFT[i];
+            if (currentTicks - previousTicks <= 0) break;   //the higher levels have not moved either
+            expire(i, previousTicks, currentTicks - previousTicks, expire);
+        }
+    }
+
+    private void schedule(Timer<K, V> timer)
+    {
+        deschedule(timer);
+        Timer<K, V> sentinel = findBucket(timer.expirationTime);
+        Timer<K, V> last = sentinel.prev;
+        timer.prev = last;
+        timer.next = sentinel;
+        last.next = timer;
+        sentinel.prev = timer;
+    }
+
+    private void deschedule(Timer<K, V> timer)
+    {
+        if (timer.next == null) return;
+        timer.next.prev = timer.prev;
+        timer.prev.next = timer.next;
+        timer.next = timer.prev = null;
+    }
+
+    //visits the buckets of a level whose span has passed
+    private void expire(int level, long previousTicks, long delta, Predicate<Node<K, V>> expire)
+    {
+        Timer<K, V>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++)
+        {
+            Timer<K, V> sentinel = buckets[i & mask];
+            Timer<K, V> timer = sentinel.next;
+            sentinel.next = sentinel.prev = sentinel;   //detach the whole list, the timers that are not expired are added again
+
+            while (timer != sentinel)
+            {
+                Timer<K, V> next = timer.next;
+                timer.next = timer.prev = null;
+                if (timer.expirationTime - nanos > 0 || !expire.test(timer.node)) schedule(timer);
+                timer = next;
+            }
+        }
+    }
+
+    //the bucket of an expiration time, relative to the time of the last advance
+    private Timer<K, V> findBucket(long time)
+    {
+        long duration = time - nanos;
+        for (int i = 0; i < SHIFT.length - 1; i++)
+        {
+            if (duration < SPANS[i + 1])
+            {
+                long ticks = time >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+        return wheel[SHIFT.length - 1][0];
+    }
+
+    //================================= Inner Classes =======================================
+
+    /**
+     * The expiration of a node. Kept out of the {@link Node}, so the nodes of a cache that does not expire
+     * entries only hold a null reference to it
+     * @param <K> the key of the node
+     * @param <V> the value of the node
+     */
+    static final class Timer<K, V>
+    {
+        final Node<K, V> node;      //null for the sentinel of a bucket
+        long expirationTime;        //when the node expires, if it is in the wheel
+        long writeTime, timeToLive; //the time of the last write and the time to live after it, 0 if none
+        Timer<K, V> next, prev;     //the links of the bucket, null if the node is not in the wheel
+
+        Timer(Node<K, V> node) {this.node = node;}
+
+        //forgets the times of a node that is reused, the node is not in the wheel
+        void clear() {expirationTime = writeTime = timeToLive = 0;}
+    }
+}
@@ -0,0 +1,234 @@
+package org.CacheEx;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The formats of the access traces that the {@link Simulator} can replay
+ */
+public enum TraceFormat
+{
+    /**
+     * The compact binary format: every key is the zigzag varint of its difference from the previous key,
+     * so sequential and nearby keys take a single byte. Written by {@link #writeBinary}
+     */
+    BINARY
+    {
+        @Override
+        public TraceReader open(InputStream in) {return new BinaryReader(in);}
+    },
+
+    /**
+     * One key per line. A numeric key is used as is, any other key is hashed to 64 bits
+     */
+    TEXT
+    {
+        @Override
+        public TraceReader open(InputStream in)
+        {
+            return new LineReader(in)
+            {
+                @Override
+                boolean parse(String line)
+                {
+                    line = line.trim();
+                    if (line.isEmpty()) return false;
+                    try {nextKey = Long.parseLong(line);}
+                    catch (NumberFormatException e) {nextKey = hash(line);}
+                    remaining = 1;
+                    return true;
+                }
+            };
+        }
+    },
+
+    /**
+     * The format of the ARC traces: every line is {@code start count ignored requestNumber}
+     * and accesses the blocks from start to start + count - 1
+     */
+    ARC
+    {
+        @Override
+        public TraceReader open(InputStream in)
+        {
+            return new LineReader(in)
+            {
+                @Override
+                boolean parse(String line)
+                {
+                    String[] fields = line.trim().split("\\s+");
+                    if (fields.length < 2) return false;
+                    nextKey = Long.parseLong(fields[0]);
+                    remaining = Long.parseLong(fields[1]);
+                    return remaining > 0;
+                }
+            };
+        }
+    },
+
+    /**
+     * The format of the LIRS traces: one block number per line, other lines (e.g. {@code *}) are skipped
+     */
+    LIRS
+    {
+        @Override
+        public TraceReader open(InputStream in)
+        {
+            return new LineReader(in)
+            {
+                @Override
+                boolean parse(String line)
+                {
+                    line = line.trim();
+                    if (line.isEmpty() || !Character.isDigit(line.charAt(line.length() - 1))) return false;
+                    try {nextKey = Long.parseLong(line);}
+                    catch (NumberFormatException e) {return false;}
+                    remaining = 1;
+                    return true;
+                }
+            };
+        }
+    };
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * @param in the trace, it is closed with the reader
+     * @return a reader of the trace
+     */
+    public abstract TraceReader open(InputStream in);
+
+    /**
+     * Converts a trace to the {@link #BINARY} format
+     * @param reader the trace
+     * @param out the destination, it is not closed
+     * @return the number of keys
+     */
+    public static long writeBinary(TraceReader reader, OutputStream out) throws IOException
+    {
+        BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+        long[] keys = new long[4096];
+        long previous = 0, count = 0;
+        for (int n; (n = reader.read(keys)) > 0; count += n)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                long delta = keys[i] - previous;
+                long zigzag = (delta << 1) ^ (delta >> 63);
+                while ((zigzag & ~0x7FL) != 0)
+                {
+                    buffered.write((int) ((zigzag & 0x7F) | 0x80));
+                    zigzag >>>= 7;
+                }
+                buffered.write((int) zigzag);
+                previous = keys[i];
+            }
+        }
+        buffered.flush();
+        return count;
+    }
+
+    //64 bit FNV-1a of a string key
+    static long hash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        return hash;
+    }
+
+    private static final class BinaryReader implements TraceReader
+    {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position, limit;
+        private long previous;
+
+        BinaryReader(InputStream in) {this.in = in;}
+
+        @Override
+        public int read(long[] keys) throws IOException
+        {
+            int count = 0;
+            while (count < keys.length)
+            {
+                int b = nextByte();
+                if (b < 0) break;   //the end of the trace
+
+                long zigzag = 0;
+                for (int shift = 0; ; shift += 7)
+                {
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) break;
+                    if ((b = nextByte()) < 0) throw new EOFException("Truncated key");
+                }
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                keys[count++] = previous;
+            }
+            return count;
+        }
+
+        //a plain buffer, BufferedInputStream synchronizes every read
+        private int nextByte() throws IOException
+        {
+            if (position == limit)
+            {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0)
+                {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public void close() throws IOException {in.close();}
+    }
+
+    /**
+     * Reads a text trace line by line. A line accesses {@code remaining} consecutive keys from {@code nextKey}
+     */
+    private abstract static class LineReader implements TraceReader
+    {
+        private final BufferedReader in;
+        long nextKey, remaining;
+
+        LineReader(InputStream in) {this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);}
+
+        /**
+         * Sets the keys of a line
+         * @param line the line
+         * @return false if the line has no keys
+         */
+        abstract boolean parse(String line);
+
+        @Override
+        public int read(long[] keys) throws IOException
+        {
+            int count = 0;
+            while (count < keys.length)
+            {
+                if (remaining == 0)
+                {
+                    String line = in.readLine();
+                    if (line == null) break;    //the end of the trace
+                    if (!parse(line)) continue;
+                }
+                keys[count++] = nextKey++;
+                remaining--;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {in.close();}
+    }
+}
@@ -0,0 +1,17 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the keys of an access trace in batches, so a trace of any length is streamed with bounded memory
+ */
+public interface TraceReader extends Closeable
+{
+    /**
+     * Reads the next keys of the trace
+     * @param keys the array that receives the keys
+     * @return the number of keys that were read, 0 at the end of the trace
+     */
+    int read(long[] keys) throws IOException;
+}
@@ -0,0 +1,72 @@
+package org.CacheEx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Sends the requests of a {@link DistributedCache} to its nodes. Every request carries a batch of keys,
+ * so a bulk operation costs one round trip per node and not one per key. Must be thread safe
+ *
+ * @param <K> the key
+ * @param <V> the value
+ * @see LocalTransport
+ * @see TcpTransport
+ */
+public interface Transport<K, V> extends Closeable
+{
+    /**
+     * @param node the node
+     * @param keys the keys, all owned by the node
+     * @return the keys that were found and their values
+     */
+    Map<K, V> getAll(String node, Collection<K> keys) throws IOException;
+
+    /**
+     * @param node the node
+     * @param entries the key value pairs, all owned by the node
+     */
+    void putAll(String node, Map<K, V> entries) throws IOException;
+
+    /**
+     * @param node the node
+     * @param key the key, owned by the node
+     * @return the value that was removed, null if the key was not found
+     */
+    V remove(String node, K key) throws IOException;
+
+    /**
+     * @param node the node
+     * @param keys the keys to remove
+     */
+    void removeAll(String node, Collection<K> keys) throws IOException;
+
+    /**
+     * Removes every entry of a node
+     * @param node the node
+     */
+    void clear(String node) throws IOException;
+
+    /**
+     * Copies the next batch of the entries of a node whose keys hash into ranges of the hash ring, used to move the
+     * entries when the nodes change without copying a whole node. The node scans its segments in the order of the
+     * key hashes, so the entries of a batch can be removed before the next batch
+     * @param node the node
+     * @param ranges sorted pairs of the first and the last {@link HashRing#keyHash} of a range, both included
+     * @param segment the segment where the batch starts, {@link ScanBatch#getNextSegment} of the previous batch
+     * @param fromHash the lowest hash of the batch in the segment, {@link ScanBatch#getNextHash} of the previous batch
+     * @param limit the number of entries of a batch
+     * @return the batch
+     */
+    ScanBatch<K, V> scan(String node, long[] ranges, int segment, long fromHash, int limit) throws IOException;
+
+    /**
+     * @param node the node
+     * @return the number of entries of the node
+     */
+    int size(String node) throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+}
@@ -0,0 +1,19 @@
+package org.CacheEx;
+
+/**
+ * Calculates the weight of an entry, e.g. its size in bytes. A cache that is created
+ * with a weigher is bounded by the total weight of its entries instead of their number
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+@FunctionalInterface
+public interface Weigher<K, V>
+{
+    /**
+     * @param key the key
+     * @param value the value
+     * @return the weight of the entry, must not be negative
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,159 @@
+package org.CacheEx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The pending writes of a write-behind cache and the background thread that writes them with a {@link CacheWriter}
+ * <p>
+ *
+ * A write only puts the key and its value in a concurrent map, so repeated writes of a key before the next flush
+ * are coalesced into one write of the latest value. Every interval (or as soon as a batch is full) the flusher
+ * moves the pending entries to the batch that is being written and writes them with {@link CacheWriter#writeAll}.
+ * A failed batch is pending again, unless its keys were written meanwhile, and is retried at the next flush.
+ * <p>
+ *
+ * Before an entry leaves the cache, the cache calls {@link #flush(Object)}, which writes the key on the
+ * thread of the cache operation if its write is still pending or waits for the batch that is writing it.
+ * The pending writes are the dirty entries of the cache, a clean entry costs two lookups. So a key whose write is not in the store yet is always in the cache, and a reader that misses the cache
+ * and reads the store sees the latest value. The segments of a {@link ConcurrentCacheImpl} share one instance.
+ *
+ * @param <K> the key
+ * @param <V> the value
+ */
+final class WriteBehind<K, V>
+{
+    private final CacheWriter<? super K, ? super V> writer;
+    private final int batchSize;
+    private final ConcurrentHashMap<K, V> pending = new ConcurrentHashMap<>();  //the latest value of every key to write
+    private final ConcurrentHashMap<K, V> writing = new ConcurrentHashMap<>();  //the batch that is being written
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean batchScheduled = new AtomicBoolean();  //a full batch is scheduled before the interval
+    private final ReentrantLock lock = new ReentrantLock(true);   //held for one write, fair so a flush(key) is not overtaken by the next batch
+
+    WriteBehind(CacheWriter<? super K, ? super V> writer, int batchSize, long interval, TimeUnit unit)
+    {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        if (interval <= 0) throw new IllegalArgumentException("Interval must be positive: " + interval);
+        this.writer = writer;
+        this.batchSize = batchSize;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushInBackground, interval, interval, unit);
+    }
+
+    //records a write, it replaces the value of a pending write of the same key
+    void write(K key, V value)
+    {
+        pending.put(key, value);
+        if (pending.size() >= batchSize && batchScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                flusher.execute(() -> {
+                    batchScheduled.set(false);
+                    flushInBackground();
+                });
+            }
+            catch (RejectedExecutionException e)    //closed, the entries are written by close
+            {
+                batchScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes every pending entry now, in batches. The lock is held for one batch at a time, so a
+     * {@link #flush(Object)} waits only for the batch that is being written
+     * @throws CompletionException if the writer fails (the rest of the entries stay pending)
+     */
+    void flush()
+    {
+        Iterator<Map.Entry<K, V>> entries = pending.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            lock.lock();
+            try
+            {
+                while (entries.hasNext() && writing.size() < batchSize)
+                {
+                    Map.Entry<K, V> entry = entries.next();
+                    K key = entry.getKey();
+                    V value = entry.getValue();
+                    writing.put(key, value);    //before it leaves the pending writes, see flush(key)
+                    if (!pending.remove(key, value)) writing.remove(key);   //written again or by flush(key)
+                }
+                writeBatch();
+            }
+            finally {lock.unlock();}
+        }
+    }
+
+    /**
+     * Writes a key now if its write is pending, or waits until the batch that writes it is written.
+     * A failed write stays pending
+     * @param key the key
+     */
+    void flush(K key)
+    {
+        if (!pending.containsKey(key) && !writing.containsKey(key)) return;
+        lock.lock();    //after the batch that is being written
+        try
+        {
+            V value = pending.remove(key);  //null if the batch that had the key is written
+            if (value == null) return;
+            try {writer.write(key, value);}
+            catch (Exception e)
+            {
+                pending.putIfAbsent(key, value);    //retried by the flusher
+            }
+        }
+        finally {lock.unlock();}
+    }
+
+    /**
+     * Stops the flusher and writes the pending entries
+     * @throws CompletionException if the writer fails
+     */
+    void close()
+    {
+        flusher.shutdown();
+        try {flusher.awaitTermination(1, TimeUnit.MINUTES);}
+        catch (InterruptedException e) {Thread.currentThread().interrupt();}
+        flush();
+    }
+
+    private void writeBatch()
+    {
+        if (writing.isEmpty()) return;
+        try {writer.writeAll(new HashMap<>(writing));}
+        catch (Exception e)
+        {
+            writing.forEach(pending::putIfAbsent);  //unless the key was written again meanwhile
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
+            throw new CompletionException(e);
+        }
+        finally {writing.clear();}
+    }
+
+    private void flushInBackground()
+    {
+        try {flush();}
+        catch (RuntimeException e)
+        {
+            //the failed entries are retried at the next flush, the flusher must keep running
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncCacheTest {
+    static int CACHE_CAPACITY = 100;
+
+    //runs the tasks when the test asks for it
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {tasks.add(task);}
+
+        void runAll() {
+            while (!tasks.isEmpty()) tasks.poll().run();
+        }
+    }
+
+    private static class FakeTicker implements Ticker {
+        long nanos;
+
+        @Override
+        public long read() {return nanos;}
+    }
+
+    @Test
+    public void testLoadIsAsynchronous() throws ExecutionException, InterruptedException {
+        ManualExecutor executor = new ManualExecutor();
+        AsyncCache<Integer, String> cache = new AsyncCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, key -> "value" + key, executor);
+
+        CompletableFuture<String> first = cache.get(1);
+        CompletableFuture<String> second = cache.get(1);
+        assertFalse(first.isDone());
+        assertSame(first, second);  //the misses share one load
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals("value1", first.get());
+        assertEquals("value1", cache.getIfPresent(1).get());
+        assertTrue(cache.get(1).isDone());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        AsyncCache<Integer, String> cache = new AsyncCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU, key -> {
+            if (loads.incrementAndGet() == 1) throw new IllegalStateException("unavailable");
+            return "value" + key;
+        }, Runnable::run);
+
+        assertTrue(cache.get(1).isCompletedExceptionally());
+        assertNull(cache.getIfPresent(1));
+        assertEquals("value1", cache.get(1).join());
+    }
+
+    @Test
+    public void testRefreshServesStaleValue() {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        AtomicInteger version = new AtomicInteger();
+        AsyncCache<Integer, String> cache = new AsyncCache<>(CACHE_CAPACITY, CacheReplacementPolicy.WTINYLFU,
+                key -> "value" + key + "-" + version.incrementAndGet(), executor);
+        cache.setTicker(ticker);
+        cache.setRefreshAfterWrite(1, TimeUnit.MINUTES);
+
+        cache.get(1);
+        executor.runAll();
+        assertEquals("value1-1", cache.get(1).join());
+
+        ticker.nanos += TimeUnit.MINUTES.toNanos(2);
+        assertEquals("value1-1", cache.get(1).join());  //stale, but returned without waiting
+        assertEquals("value1-1", cache.get(1).join());
+        assertEquals(1, executor.tasks.size());         //one refresh
+
+        executor.runAll();
+        assertEquals("value1-2", cache.get(1).join());
+        assertTrue(executor.tasks.isEmpty());           //the new value is fresh
+    }
+
+    @Test
+    public void testInvalidateAndPutCancelTheRefresh() {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        AtomicInteger version = new AtomicInteger();
+        AsyncCache<Integer, String> cache = new AsyncCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU,
+                key -> "value" + key + "-" + version.incrementAndGet(), executor);
+        cache.setTicker(ticker);
+        cache.setRefreshAfterWrite(1, TimeUnit.MINUTES);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        ticker.nanos += TimeUnit.MINUTES.toNanos(2);
+        cache.get(1);   //starts a refresh
+        cache.get(2);
+        cache.invalidate(1);
+        cache.put(2, "TWO");
+        executor.runAll();
+
+        assertNull(cache.getIfPresent(1));                  //not brought back by the refresh
+        assertEquals("TWO", cache.getIfPresent(2).join());  //not overwritten by the refresh
+    }
+}
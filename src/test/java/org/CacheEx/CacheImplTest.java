@@ -1,9 +1,25 @@
 package org.CacheEx;
 
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -155,6 +171,86 @@ public class CacheImplTest {
         assertNull(cache.get(3));   //check if LFU was evicted
     }
 
+    @Test
+    public void testLFUTieBreakByInsertionOrder() {
+        Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(2);           //frequency of key 2 is 2
+        cache.get(1);           //frequency of key 1 is 2, inserted after key 2 in its bucket
+        cache.get(3);           //frequency of key 3 is 2, inserted after key 1 in its bucket
+        cache.put(4, "four");   //evicts key 2, the oldest node with the lowest frequency
+        cache.put(5, "five");   //evicts key 4, the only node with frequency 1
+
+        assertNull(cache.get(2));
+        assertNull(cache.get(4));
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("five", cache.get(5));
+    }
+
+    @Test
+    public void testWTinyLFUOrder() {
+        Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.WTINYLFU);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);           //key 1 and 2 are popular
+        cache.get(1);
+        cache.get(2);
+        cache.put(4, "four");   //key 3 is the candidate of the window and is not admitted
+        cache.put(5, "five");   //key 4 is the candidate of the window and is not admitted
+
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertEquals("five", cache.get(5));
+        assertNull(cache.get(3));
+        assertNull(cache.get(4));
+    }
+
+    @Test
+    public void testWTinyLFUScanResistance() {
+        int capacity = 100;
+        Cache<Integer, Integer> wTinyLfu = new CacheImpl<>(capacity, CacheReplacementPolicy.WTINYLFU);
+        Cache<Integer, Integer> lru = new CacheImpl<>(capacity, CacheReplacementPolicy.LRU);
+
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < capacity / 2; key++) {  //a popular working set of half the capacity
+                if (wTinyLfu.get(key) == null) wTinyLfu.put(key, key);
+                if (lru.get(key) == null) lru.put(key, key);
+            }
+        }
+        for (int key = capacity; key < capacity * 20; key++) {  //a scan of one hit wonders
+            wTinyLfu.put(key, key);
+            lru.put(key, key);
+        }
+
+        int wTinyLfuHits = 0, lruHits = 0;
+        for (int key = 0; key < capacity / 2; key++) {
+            if (wTinyLfu.get(key) != null) wTinyLfuHits++;
+            if (lru.get(key) != null) lruHits++;
+        }
+        assertEquals(0, lruHits);                   //the scan flushed the LRU cache
+        assertTrue(wTinyLfuHits >= capacity / 2 - 1);   //the working set survived the scan (except the window)
+    }
+
+    @Test
+    public void testWTinyLFUStressTest() {
+        Cache<Integer, String> cache = new CacheImpl<>(MAX_CACHE_CAPACITY, CacheReplacementPolicy.WTINYLFU);
+        Random random = new Random(SEED_FOR_RANDOM);
+
+        for (int i = 0; i < MAX_CACHE_CAPACITY * 4; i++) {
+            int key = random.nextInt(MAX_CACHE_CAPACITY * 2);
+            String value = cache.get(key);
+            if (value != null) assertEquals("value" + key, value);
+            else cache.put(key, "value" + key);
+            assertTrue(cache.getSize() <= MAX_CACHE_CAPACITY);
+        }
+    }
+
     @Test
     public void testLRUEdgeCase() {
         Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
@@ -233,4 +329,515 @@ public class CacheImplTest {
             if (expected != null) assertEquals("value" + key, expected);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWeightedEviction() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(10, (key, value) -> value.length(), CacheReplacementPolicy.LRU);
+
+        cache.put(1, "aaa");
+        cache.put(2, "bbb");
+        cache.put(3, "ccc");
+        assertEquals(9, cache.getWeightedSize());
+        cache.put(4, "dddddd");     //evicts 1 and 2 to make room for 6
+
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("ccc", cache.get(3));
+        assertEquals("dddddd", cache.get(4));
+        assertEquals(2, cache.getSize());
+        assertEquals(9, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testWeightedUpdate() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(10, (key, value) -> value.length(), CacheReplacementPolicy.LRU);
+
+        cache.put(1, "aaa");
+        cache.put(2, "bbb");
+        cache.put(3, "ccc");
+        cache.put(2, "bbbbbbb");    //the heavier value evicts 1
+
+        assertNull(cache.get(1));
+        assertEquals("ccc", cache.get(3));
+        assertEquals("bbbbbbb", cache.get(2));
+        assertEquals(10, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testEntryTooHeavyIsNotAdmitted() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(10, 5, (key, value) -> value.length(), CacheReplacementPolicy.LFU);
+
+        cache.put(1, "aaa");
+        cache.put(2, "bbb");
+        cache.put(3, "cccccc");     //heavier than the entry limit
+        cache.put(1, "aaaaaaa");    //the old value is removed too
+
+        assertNull(cache.get(3));
+        assertNull(cache.get(1));
+        assertEquals("bbb", cache.get(2));
+        assertEquals(1, cache.getSize());
+        assertEquals(3, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testWeightedStressTest() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            CacheImpl<Integer, String> cache = new CacheImpl<>(MAX_CACHE_CAPACITY * 10L, (key, value) -> value.length(), policy);
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < MAX_CACHE_CAPACITY * 5; i++) {
+                int key = random.nextInt(MAX_CACHE_CAPACITY * 2);
+                if (random.nextBoolean()) {
+                    String value = cache.get(key);
+                    if (value != null) assertTrue(value.startsWith(key + "-"));
+                }
+                else cache.put(key, key + "-" + new String(new char[random.nextInt(30)]));
+                assertTrue(cache.getWeightedSize() <= cache.getMaximumWeight());
+            }
+        }
+    }
+
+    //a ticker that is moved by the test
+    private static class FakeTicker implements Ticker {
+        long nanos;
+
+        @Override
+        public long read() {return nanos;}
+
+        void advance(long duration, TimeUnit unit) {nanos += unit.toNanos(duration);}
+    }
+
+    @Test
+    public void testExpireAfterWrite() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            FakeTicker ticker = new FakeTicker();
+            CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, policy);
+            cache.setTicker(ticker);
+            cache.setExpireAfterWrite(10, TimeUnit.SECONDS);
+
+            cache.put(1, "one");
+            ticker.advance(5, TimeUnit.SECONDS);
+            cache.put(2, "two");
+            assertEquals("one", cache.get(1));   //reading does not extend the expiration
+
+            ticker.advance(6, TimeUnit.SECONDS);
+            assertNull(cache.get(1));
+            assertEquals("two", cache.get(2));
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());   //the expired hit is a miss
+            assertEquals(1, cache.getSize());
+        }
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        FakeTicker ticker = new FakeTicker();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setTicker(ticker);
+        cache.setExpireAfterAccess(10, TimeUnit.SECONDS);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        for (int i = 0; i < 5; i++) {
+            ticker.advance(5, TimeUnit.SECONDS);
+            assertEquals("one", cache.get(1));   //every read extends the expiration
+        }
+
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testPerEntryTimeToLive() {
+        FakeTicker ticker = new FakeTicker();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        cache.setTicker(ticker);
+
+        cache.put(1, "one", 1, TimeUnit.MINUTES);
+        cache.put(2, "two", 1, TimeUnit.HOURS);
+        cache.put(3, "three");                  //never expires
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        assertNull(cache.get(1));
+        assertEquals("two", cache.get(2));
+
+        ticker.advance(2, TimeUnit.HOURS);
+        assertNull(cache.get(2));
+        assertEquals("three", cache.get(3));
+    }
+
+    @Test
+    public void testExpiredEntriesAreReclaimed() {
+        FakeTicker ticker = new FakeTicker();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MAX_CACHE_CAPACITY, CacheReplacementPolicy.WTINYLFU);
+        cache.setTicker(ticker);
+        cache.setExpireAfterWrite(1, TimeUnit.MINUTES);
+
+        for (int i = 0; i < MAX_CACHE_CAPACITY; i++) cache.put(i, "value" + i);
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.cleanUp();
+
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeightedSize());
+        cache.put(1, "one");
+        assertEquals("one", cache.get(1));
+    }
+
+    @Test
+    public void testGetAll() {
+        Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        List<Integer> misses = new ArrayList<>();
+        Map<Integer, String> values = cache.getAll(Arrays.asList(4, 1, 3, 5), misses);
+
+        assertEquals(Arrays.asList(1, 3), new ArrayList<>(values.keySet()));   //in the order of the keys
+        assertEquals("one", values.get(1));
+        assertEquals(Arrays.asList(4, 5), misses);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        cache.put(4, "four");   //1 and 3 were accessed, so 2 is evicted
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void testPutAll() {
+        Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        Map<Integer, String> entries = new LinkedHashMap<>();
+        entries.put(1, "one");
+        entries.put(2, "two");
+        entries.put(3, "three");
+        entries.put(4, "four");
+        cache.putAll(entries);
+
+        assertEquals(MIN_CACHE_CAPACITY, cache.getSize());
+        assertNull(cache.get(1));   //evicted by 4
+        assertEquals("four", cache.get(4));
+    }
+
+    //a working set of half the capacity that is read many times, followed by a long scan
+    private static int hitsAfterScan(CacheReplacementPolicy policy, int capacity) {
+        Cache<Integer, Integer> cache = new CacheImpl<>(capacity, policy);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < capacity / 2; key++) {
+                if (cache.get(key) == null) cache.put(key, key);
+            }
+        }
+        for (int key = capacity; key < capacity * 20; key++) cache.put(key, key);
+
+        int hits = 0;
+        for (int key = 0; key < capacity / 2; key++) {
+            if (cache.get(key) != null) hits++;
+        }
+        return hits;
+    }
+
+    @Test
+    public void testARCScanResistance() {
+        assertEquals(50, hitsAfterScan(CacheReplacementPolicy.ARC, 100));
+    }
+
+    @Test
+    public void testLIRSScanResistance() {
+        assertEquals(50, hitsAfterScan(CacheReplacementPolicy.LIRS, 100));
+    }
+
+    @Test
+    public void testARCAdaptsToRecency() {
+        //keys that are reused after a short time, ARC must do as well as LRU
+        Cache<Integer, Integer> arc = new CacheImpl<>(100, CacheReplacementPolicy.ARC);
+        Cache<Integer, Integer> lru = new CacheImpl<>(100, CacheReplacementPolicy.LRU);
+        Random random = new Random(SEED_FOR_RANDOM);
+        for (int i = 0; i < 100_000; i++) {
+            int key = i / 10 + random.nextInt(50);     //a sliding window of keys
+            if (arc.get(key) == null) arc.put(key, key);
+            if (lru.get(key) == null) lru.put(key, key);
+        }
+        assertTrue(arc.getHitCount() >= lru.getHitCount() * 0.95);
+    }
+
+    @Test
+    public void testClockSecondChance() {
+        Cache<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.CLOCK);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);   //key 1 is referenced
+        cache.put(4, "four");
+
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));   //the first unreferenced key after the hand
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    public void testClockPoliciesApproximateLRU() {
+        for (CacheReplacementPolicy policy : new CacheReplacementPolicy[]{CacheReplacementPolicy.CLOCK, CacheReplacementPolicy.CLOCK_PRO}) {
+            Cache<Integer, Integer> clock = new CacheImpl<>(100, policy);
+            Cache<Integer, Integer> lru = new CacheImpl<>(100, CacheReplacementPolicy.LRU);
+            Random random = new Random(SEED_FOR_RANDOM);
+            for (int i = 0; i < 100_000; i++) {
+                int key = (int) Math.pow(1000, random.nextDouble());    //skewed towards the small keys
+                if (clock.get(key) == null) clock.put(key, key);
+                if (lru.get(key) == null) lru.put(key, key);
+            }
+            assertTrue(policy.name(), clock.getHitCount() >= lru.getHitCount() * 0.95);
+        }
+    }
+
+    @Test
+    public void testClockProScanResistance() {
+        assertTrue(hitsAfterScan(CacheReplacementPolicy.CLOCK_PRO, 100) > hitsAfterScan(CacheReplacementPolicy.CLOCK, 100));
+    }
+
+    @Test
+    public void testAdaptivePoliciesStressTest() {
+        for (CacheReplacementPolicy policy : new CacheReplacementPolicy[]{CacheReplacementPolicy.ARC, CacheReplacementPolicy.LIRS,
+                CacheReplacementPolicy.CLOCK, CacheReplacementPolicy.CLOCK_PRO}) {
+            FakeTicker ticker = new FakeTicker();
+            CacheImpl<Integer, String> cache = new CacheImpl<>(MAX_CACHE_CAPACITY / 10, policy);
+            cache.setTicker(ticker);
+            cache.setExpireAfterWrite(1, TimeUnit.MINUTES);     //removals in the middle of the lists
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < MAX_CACHE_CAPACITY * 20; i++) {
+                int key = random.nextInt(10) < 8 ? random.nextInt(MAX_CACHE_CAPACITY / 20) : random.nextInt(MAX_CACHE_CAPACITY * 2);
+                String value = cache.get(key);
+                if (value == null) cache.put(key, "value" + key);
+                else assertEquals("value" + key, value);
+                if (i % 100 == 0) ticker.advance(1, TimeUnit.SECONDS);
+                assertTrue(cache.getSize() <= MAX_CACHE_CAPACITY / 10);
+            }
+            assertTrue(cache.getHitCount() > cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testRecycledNodesBehaveLikeNewNodes() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            CacheImpl<Integer, String> expected = new CacheImpl<>(MAX_CACHE_CAPACITY / 10, policy);
+            CacheImpl<Integer, String> actual = new CacheImpl<>(MAX_CACHE_CAPACITY / 10, policy, true);
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < MAX_CACHE_CAPACITY * 5; i++) {
+                int key = random.nextInt(MAX_CACHE_CAPACITY / 5);
+                String value = expected.get(key);
+                assertEquals(policy.name(), value, actual.get(key));
+                if (value == null) {
+                    expected.put(key, "value" + key);
+                    actual.put(key, "value" + key);
+                }
+                else if (random.nextInt(20) == 0) {
+                    expected.remove(key);
+                    actual.remove(key);
+                }
+            }
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getHitCount(), actual.getHitCount());
+        }
+    }
+
+    @Test
+    public void testPutThatEvictsDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        for (CacheReplacementPolicy policy : new CacheReplacementPolicy[]{CacheReplacementPolicy.LRU, CacheReplacementPolicy.MRU,
+                CacheReplacementPolicy.LFU, CacheReplacementPolicy.CLOCK}) {
+            CacheImpl<Integer, Integer> cache = new CacheImpl<>(MAX_CACHE_CAPACITY, policy, true);
+            Integer[] keys = new Integer[MAX_CACHE_CAPACITY * 4];
+            for (int i = 0; i < keys.length; i++) keys[i] = i;
+            for (Integer key : keys) cache.put(key, key);   //fills the cache and the free list
+
+            long thread = Thread.currentThread().getId();
+            long before = allocations.getThreadAllocatedBytes(thread);
+            for (int round = 0; round < 10; round++) {
+                for (Integer key : keys) cache.put(key, key);   //every put misses and evicts
+            }
+            long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+            assertTrue(policy + " allocated " + allocated + " bytes", allocated < 64 * 1024);
+        }
+    }
+
+    @Test
+    public void testRemoveAndInvalidateAll() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, policy);
+            cache.put(1, "one");
+            cache.put(2, "two");
+            cache.put(3, "three");
+
+            assertEquals(policy.name(), "two", cache.remove(2));
+            assertNull(cache.remove(2));
+            assertNull(cache.get(2));
+            assertEquals(2, cache.getSize());
+
+            cache.put(4, "four");   //fits in the freed space, nothing is evicted
+            assertEquals("one", cache.get(1));
+            assertEquals("three", cache.get(3));
+
+            cache.invalidateAll();
+            assertEquals(0, cache.getSize());
+            assertNull(cache.get(1));
+            assertNull(cache.get(4));
+        }
+    }
+
+    @Test
+    public void testRemovalListenerCauses() {
+        FakeTicker ticker = new FakeTicker();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setTicker(ticker);
+        cache.setExpireAfterWrite(10, TimeUnit.SECONDS);
+        List<String> removals = new ArrayList<>();
+        cache.setRemovalListener((key, value, cause) -> removals.add(key + "=" + value + " " + cause), Runnable::run);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.put(4, "four");       //evicts key 1
+        cache.put(2, "TWO");        //replaces the value of key 2
+        cache.put(2, "TWO");        //the same value is not a replacement
+        cache.remove(3);
+        ticker.advance(11, TimeUnit.SECONDS);
+        cache.get(4);               //expired, the read also removes the other expired entries
+
+        assertEquals(Arrays.asList("1=one SIZE", "2=two REPLACED", "3=three EXPLICIT", "4=four EXPIRED", "2=TWO EXPIRED"), removals);
+    }
+
+    @Test
+    public void testFailingRemovalListenerDoesNotBreakTheCache() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setRemovalListener((key, value, cause) -> {throw new IllegalStateException();}, Runnable::run);
+
+        for (int i = 0; i < 10; i++) cache.put(i, "value" + i);
+
+        assertEquals("value9", cache.get(9));
+        assertEquals(MIN_CACHE_CAPACITY, cache.getSize());
+    }
+
+    @Test
+    public void testRemovalListenerIsCalledInOrderWhenTheQueueIsFull() throws InterruptedException {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger maxCalls = new AtomicInteger();
+        List<Integer> removed = Collections.synchronizedList(new ArrayList<>());
+        RemovalListener<Integer, String> listener = (key, value, cause) -> {
+            maxCalls.accumulateAndGet(calls.incrementAndGet(), Math::max);
+            try {
+                if (key == 0) release.await();  //the listener falls behind and the queue fills up
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            removed.add(key);
+            calls.decrementAndGet();
+        };
+        cache.setRemovalNotifier(new RemovalNotifier<>(listener, task -> new Thread(task).start(), 2));
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 100 + MIN_CACHE_CAPACITY; i++) cache.put(i, "value" + i);
+        });
+        writer.start();
+        Thread.sleep(100);
+        release.countDown();
+        writer.join(10_000);
+        for (long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10); removed.size() < 100 && System.nanoTime() < deadline; ) {
+            Thread.sleep(1);
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) expected.add(i);
+        assertEquals(expected, removed);
+        assertEquals(1, maxCalls.get());
+    }
+
+    @Test
+    public void testSnapshotRebuildsEvictionOrder() throws IOException {
+        for (CacheReplacementPolicy policy : new CacheReplacementPolicy[]{CacheReplacementPolicy.LRU, CacheReplacementPolicy.MRU,
+                CacheReplacementPolicy.LFU}) {
+            CacheImpl<Integer, String> original = new CacheImpl<>(MAX_CACHE_CAPACITY, policy);
+            Random random = new Random(SEED_FOR_RANDOM);
+            for (int i = 0; i < MAX_CACHE_CAPACITY * 5; i++) {
+                int key = random.nextInt(MAX_CACHE_CAPACITY * 2);
+                if (original.get(key) == null) original.put(key, "value" + key);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = original.writeSnapshot(out, Serializers.INTEGER, Serializers.STRING);
+            CacheImpl<Integer, String> copy = new CacheImpl<>(MAX_CACHE_CAPACITY, policy);
+            long read = copy.loadSnapshot(new ByteArrayInputStream(out.toByteArray()), Serializers.INTEGER, Serializers.STRING);
+            assertEquals(original.getSize(), written);
+            assertEquals(written, read);
+
+            //the same new keys evict the same entries
+            for (int i = 0; i < MAX_CACHE_CAPACITY / 2; i++) {
+                original.put(-i - 1, "new");
+                copy.put(-i - 1, "new");
+            }
+            List<Integer> originalKeys = new ArrayList<>(), copyKeys = new ArrayList<>();
+            original.forEach((key, value) -> originalKeys.add(key));
+            copy.forEach((key, value) -> {
+                copyKeys.add(key);
+                assertEquals(key < 0 ? "new" : "value" + key, value);
+            });
+            Collections.sort(originalKeys);
+            Collections.sort(copyKeys);
+            assertEquals(policy.name(), originalKeys, copyKeys);
+        }
+    }
+
+    @Test
+    public void testSnapshotStreamsLargeEntries() throws IOException {
+        CacheImpl<Integer, byte[]> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        byte[] large = new byte[SnapshotCodec.BUFFER_SIZE * 3];   //larger than the buffer of the snapshot
+        large[large.length - 1] = 7;
+        cache.put(1, new byte[]{1});
+        cache.put(2, large);
+        cache.put(3, new byte[0]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cache.writeSnapshot(out, Serializers.INTEGER, Serializers.BYTE_ARRAY);
+        byte[] snapshot = out.toByteArray();
+        CacheImpl<Integer, byte[]> copy = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        copy.loadSnapshot(new ByteArrayInputStream(snapshot), Serializers.INTEGER, Serializers.BYTE_ARRAY);
+
+        assertArrayEquals(new byte[]{1}, copy.get(1));
+        assertArrayEquals(large, copy.get(2));
+        assertArrayEquals(new byte[0], copy.get(3));
+
+        try {
+            new CacheImpl<Integer, byte[]>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU).loadSnapshot(
+                    new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length / 2)), Serializers.INTEGER, Serializers.BYTE_ARRAY);
+            fail("a truncated snapshot was loaded");
+        } catch (EOFException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testSetCapacityShrinksIncrementally() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            CacheImpl<Integer, Integer> cache = new CacheImpl<>(MAX_CACHE_CAPACITY, policy);
+            for (int i = 0; i < MAX_CACHE_CAPACITY; i++) cache.put(i, i);
+
+            cache.setCapacity(100);
+            assertEquals(policy.name(), MAX_CACHE_CAPACITY, cache.getSize());   //nothing is evicted at once
+            cache.put(-1, -1);
+            assertTrue(policy.name(), cache.getSize() < MAX_CACHE_CAPACITY);
+            assertTrue(policy.name(), cache.getSize() > MAX_CACHE_CAPACITY - 100);  //only a batch is evicted
+            for (int i = 0; i < MAX_CACHE_CAPACITY; i++) cache.cleanUp();
+            assertEquals(policy.name(), 100, cache.getSize());
+
+            cache.setCapacity(200);
+            for (int i = 0; i < MAX_CACHE_CAPACITY; i++) cache.put(-i - 2, i);
+            assertEquals(policy.name(), 200, cache.getSize());
+        }
+    }
+}
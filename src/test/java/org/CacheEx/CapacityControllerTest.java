@@ -0,0 +1,63 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CapacityControllerTest {
+    static int MAX_CAPACITY = 10_000;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testResizeForHitRatio() {
+        ConcurrentCacheImpl<Integer, Integer> cache = new ConcurrentCacheImpl<>(MAX_CAPACITY, CacheReplacementPolicy.LRU);
+        MissRatioCurve curve = curve();
+        cache.setMissRatioCurve(curve);
+        read(cache, 500, 20);   //a working set of 500 keys
+
+        CapacityController controller = new CapacityController();
+        controller.register(cache, curve, 10, MAX_CAPACITY);
+        controller.resizeForHitRatio(0.9);
+
+        //a random key of the working set hits with a probability of about capacity / 500
+        assertTrue(String.valueOf(cache.getMaximumWeight()), cache.getMaximumWeight() >= 400);
+        assertTrue(String.valueOf(cache.getMaximumWeight()), cache.getMaximumWeight() <= 520);
+    }
+
+    @Test
+    public void testResizeForBudget() {
+        ConcurrentCacheImpl<Integer, Integer> small = new ConcurrentCacheImpl<>(MAX_CAPACITY, CacheReplacementPolicy.LRU);
+        ConcurrentCacheImpl<Integer, Integer> large = new ConcurrentCacheImpl<>(MAX_CAPACITY, CacheReplacementPolicy.LRU, 4);
+        MissRatioCurve smallCurve = curve(), largeCurve = curve();
+        small.setMissRatioCurve(smallCurve);
+        large.setMissRatioCurve(largeCurve);
+        read(small, 1_000, 20);
+        read(large, 8_000, 5);
+
+        CapacityController controller = new CapacityController();
+        controller.register(small, smallCurve, 100, MAX_CAPACITY);
+        controller.register(large, largeCurve, 100, MAX_CAPACITY);
+        long given = controller.resizeForBudget(6_000);
+
+        //the small working set fits, the rest goes to the large one
+        assertTrue(small.getMaximumWeight() >= 1_000 && small.getMaximumWeight() < 1_500);
+        assertEquals(given, small.getMaximumWeight() + large.getMaximumWeight());
+        assertTrue(given > 5_500);
+    }
+
+    //the working sets are small, so every key is sampled
+    private static MissRatioCurve curve() {
+        return new MissRatioCurve(MAX_CAPACITY, MissRatioCurve.DEFAULT_SAMPLED_KEYS, 1);
+    }
+
+    //reads random keys of a working set and puts the misses
+    private static void read(Cache<Integer, Integer> cache, int keys, int rounds) {
+        Random random = new Random(SEED_FOR_RANDOM);
+        for (int i = 0; i < keys * rounds; i++) {
+            int key = random.nextInt(keys);
+            if (cache.get(key) == null) cache.put(key, key);
+        }
+    }
+}
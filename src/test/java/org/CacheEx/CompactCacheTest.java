@@ -0,0 +1,111 @@
+package org.CacheEx;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompactCacheTest {
+    static int MIN_CACHE_CAPACITY = 3;
+    static int CACHE_CAPACITY = 1_000;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testLRURemoval() {
+        CompactCache<Integer, String> cache = new CompactCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);
+        cache.put(4, "four");
+
+        assertNull(cache.get(2)); // Key 2 should be evicted
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    public void testRemoveReusesTheSlot() {
+        CompactCache<Integer, String> cache = new CompactCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        assertEquals("two", cache.remove(2));
+        assertNull(cache.remove(2));
+        cache.put(4, "four");   //nothing is evicted
+
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+        assertEquals(3, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(1));
+        cache.put(5, "five");
+        assertEquals("five", cache.get(5));
+    }
+
+    @Test
+    public void testSameEvictionsAsCacheImpl() {
+        CacheReplacementPolicy[] policies = {CacheReplacementPolicy.LRU, CacheReplacementPolicy.MRU, CacheReplacementPolicy.LFU};
+        for (CacheReplacementPolicy policy : policies) {
+            CacheImpl<Integer, Integer> expected = new CacheImpl<>(CACHE_CAPACITY, policy);
+            CompactCache<Integer, Integer> actual = new CompactCache<>(CACHE_CAPACITY, policy);
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < CACHE_CAPACITY * 50; i++) {
+                int key = random.nextInt(CACHE_CAPACITY * 3);
+                if (random.nextInt(20) == 0) {
+                    assertEquals(policy.name(), expected.remove(key), actual.remove(key));
+                    continue;
+                }
+                Integer value = expected.get(key);
+                assertEquals(policy.name(), value, actual.get(key));
+                if (value == null) {
+                    expected.put(key, i);
+                    actual.put(key, i);
+                }
+            }
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getHitCount(), actual.getHitCount());
+        }
+    }
+
+    @Test
+    public void testFootprint() {
+        Integer[] keys = new Integer[CACHE_CAPACITY];
+        for (int i = 0; i < keys.length; i++) keys[i] = i;
+
+        for (CacheReplacementPolicy policy : new CacheReplacementPolicy[]{CacheReplacementPolicy.LRU, CacheReplacementPolicy.LFU}) {
+            CacheImpl<Integer, Integer> current = new CacheImpl<>(CACHE_CAPACITY, policy);
+            CompactCache<Integer, Integer> compact = new CompactCache<>(CACHE_CAPACITY, policy);
+            long emptyCurrent = footprint(current, keys, policy);
+            long emptyCompact = footprint(compact, keys, policy);
+
+            for (Integer key : keys) {
+                current.put(key, key);
+                compact.put(key, key);
+            }
+            long perEntryCurrent = (footprint(current, keys, policy) - emptyCurrent) / CACHE_CAPACITY;
+            long perEntryCompact = (footprint(compact, keys, policy) - emptyCompact) / CACHE_CAPACITY;
+
+            assertTrue(policy + ": empty " + emptyCompact + " vs " + emptyCurrent + " bytes", emptyCompact * 3 < emptyCurrent);
+            //a node of CacheImpl without expiry holds no timer, so the per entry saving is at least a third
+            assertTrue(policy + ": " + perEntryCompact + " vs " + perEntryCurrent + " bytes per entry", perEntryCompact * 3 < perEntryCurrent * 2);
+        }
+    }
+
+    //the bytes reachable from a cache, without the keys (that are also the values) and the shared policy constant
+    private static long footprint(Object cache, Integer[] keys, CacheReplacementPolicy policy) {
+        Object[] shared = new Object[keys.length + 1];
+        System.arraycopy(keys, 0, shared, 0, keys.length);
+        shared[keys.length] = policy;
+        return GraphLayout.parseInstance(cache).subtract(GraphLayout.parseInstance(shared)).totalSize();
+    }
+}
@@ -0,0 +1,212 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentCacheImplTest {
+    static int CACHE_CAPACITY = 1_000;
+    static int THREADS = 8;
+    static int OPERATIONS_PER_THREAD = 20_000;
+
+    @Test
+    public void testPutAndGetForEveryPolicy() {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            Cache<Integer, String> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, policy);
+
+            for (int i = 0; i < CACHE_CAPACITY / 2; i++) cache.put(i, "value" + i);
+            for (int i = 0; i < CACHE_CAPACITY / 2; i++) assertEquals("value" + i, cache.get(i));
+            assertEquals(CACHE_CAPACITY / 2, cache.getSize());
+            assertEquals(CACHE_CAPACITY / 2, cache.getHitCount());
+        }
+    }
+
+    @Test
+    public void testSizeNeverExceedsCapacity() {
+        Cache<Integer, Integer> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, 16);
+
+        for (int i = 0; i < CACHE_CAPACITY * 10; i++) cache.put(i, i);
+
+        assertEquals(CACHE_CAPACITY, cache.getSize()); //every segment is full
+    }
+
+    @Test
+    public void testSegmentCountIsBoundedByCapacity() {
+        ConcurrentCacheImpl<Integer, Integer> cache = new ConcurrentCacheImpl<>(3, CacheReplacementPolicy.LRU, 64);
+
+        assertEquals(2, cache.getSegmentCount()); //every segment holds at least one entry
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullKey() {
+        new ConcurrentCacheImpl<Integer, Integer>(CACHE_CAPACITY, CacheReplacementPolicy.LRU).get(null);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            Cache<Integer, Integer> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, policy);
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+
+            for (int t = 0; t < THREADS; t++) {
+                final int seed = t;
+                Thread thread = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int key = random.nextInt(CACHE_CAPACITY * 2);
+                        Integer value = cache.get(key);
+                        if (value != null) assertEquals(key, value.intValue()); //values always match their keys
+                        else cache.put(key, key);
+                    }
+                });
+                thread.setUncaughtExceptionHandler((th, e) -> {synchronized (errors) {errors.add(e);}});
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+
+            assertTrue(errors.isEmpty());
+            assertTrue(cache.getSize() <= CACHE_CAPACITY);
+            assertEquals(THREADS * OPERATIONS_PER_THREAD, cache.getHitCount() + cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testBufferedReadsApplyRecency() {
+        ConcurrentCacheImpl<Integer, String> cache = new ConcurrentCacheImpl<>(3, CacheReplacementPolicy.LRU, 1, true);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        assertEquals("one", cache.get(1)); //buffered, applied before the next put evicts
+        cache.put(4, "four");
+
+        assertNull(cache.get(2));   //the least recently used node was evicted
+        assertEquals("one", cache.get(1));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testOnlyLockFreeReadsUseConcurrentNodes() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        CacheImpl<Integer, String> segment = new CacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, new ConcurrentHashMap<>());
+        cache.put(1, "one");
+        segment.put(1, "one");
+        segment.put(1, "uno");
+
+        assertEquals(Node.class, cache.getNode(1).getClass());    //no fence on the writes of a single threaded cache
+        assertTrue(segment.getNode(1) instanceof ConcurrentNode);
+        assertEquals("uno", segment.getNode(1).getValue());
+    }
+
+    @Test
+    public void testBufferedReadsConcurrentAccess() throws InterruptedException {
+        for (CacheReplacementPolicy policy : CacheReplacementPolicy.values()) {
+            Cache<Integer, Integer> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, policy, 4, true);
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+
+            for (int t = 0; t < THREADS; t++) {
+                final int seed = t;
+                Thread thread = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int key = random.nextInt(CACHE_CAPACITY * 2);
+                        Integer value = cache.get(key);
+                        if (value != null) assertEquals(key, value.intValue());
+                        else cache.put(key, key);
+                    }
+                });
+                thread.setUncaughtExceptionHandler((th, e) -> {synchronized (errors) {errors.add(e);}});
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+
+            assertTrue(errors.isEmpty());
+            assertTrue(cache.getSize() <= CACHE_CAPACITY);
+            assertEquals(THREADS * OPERATIONS_PER_THREAD, cache.getHitCount() + cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testGetAllAndPutAll() {
+        for (boolean bufferedReads : new boolean[]{false, true}) {
+            Cache<Integer, String> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, 16, bufferedReads);
+            Map<Integer, String> entries = new HashMap<>();
+            for (int i = 0; i < 100; i++) entries.put(i, "value" + i);
+            cache.putAll(entries);
+
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 50; i < 150; i++) keys.add(i);
+            List<Integer> misses = new ArrayList<>();
+            Map<Integer, String> values = cache.getAll(keys, misses);
+
+            assertEquals(50, values.size());
+            for (int i = 50; i < 100; i++) assertEquals("value" + i, values.get(i));
+            assertEquals(50, misses.size());
+            assertEquals(50, cache.getHitCount());
+            assertEquals(50, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testSnapshotBetweenSegmentCounts() throws IOException {
+        ConcurrentCacheImpl<Integer, String> original = new ConcurrentCacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU, 16, true);
+        for (int i = 0; i < CACHE_CAPACITY / 2; i++) original.put(i, "value" + i);
+        for (int i = 0; i < CACHE_CAPACITY / 2; i += 2) original.get(i);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(CACHE_CAPACITY / 2, original.writeSnapshot(out, Serializers.INTEGER, Serializers.STRING));
+        ConcurrentCacheImpl<Integer, String> copy = new ConcurrentCacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU, 4);
+        copy.loadSnapshot(new ByteArrayInputStream(out.toByteArray()), Serializers.INTEGER, Serializers.STRING);
+
+        assertEquals(CACHE_CAPACITY / 2, copy.getSize());
+        for (int i = 0; i < CACHE_CAPACITY / 2; i++) assertEquals("value" + i, copy.get(i));
+    }
+
+    @Test
+    public void testSnapshotIsWrittenOutsideOfTheSegmentLock() throws IOException {
+        ConcurrentCacheImpl<Integer, String> cache = new ConcurrentCacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, 1);
+        char[] large = new char[200];
+        Arrays.fill(large, 'x');
+        for (int i = 0; i < CACHE_CAPACITY; i++) cache.put(i, new String(large));  //more than the buffer of the codec
+
+        AtomicBoolean putDuringWrite = new AtomicBoolean();
+        AtomicBoolean firstWrite = new AtomicBoolean(true);
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                if (firstWrite.getAndSet(false)) {
+                    Thread writer = new Thread(() -> cache.put(-1, "new"));  //the same segment
+                    writer.start();
+                    try {
+                        writer.join(TimeUnit.SECONDS.toMillis(10));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    putDuringWrite.set(!writer.isAlive());
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+        cache.writeSnapshot(out, Serializers.INTEGER, Serializers.STRING);
+        assertTrue("a put waited for the snapshot", putDuringWrite.get());
+    }
+}
@@ -0,0 +1,305 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DistributedCacheTest {
+    static int NODE_CAPACITY = 1_000;
+    static int KEYS = 1_200;    //more than one node can hold, less than two nodes
+
+    private static DistributedCache<Integer, String> localCache(LocalTransport<Integer, String> transport, int nodes) {
+        DistributedCache<Integer, String> cache = new DistributedCache<>(transport);
+        for (int i = 0; i < nodes; i++) addLocalNode(cache, transport, "node" + i);
+        return cache;
+    }
+
+    private static void addLocalNode(DistributedCache<Integer, String> cache, LocalTransport<Integer, String> transport, String node) {
+        transport.register(node, new ConcurrentCacheImpl<>(NODE_CAPACITY, CacheReplacementPolicy.LRU));
+        cache.addNode(node);
+    }
+
+    private static void assertAllKeys(Cache<Integer, String> cache, int keys) {
+        for (int key = 0; key < keys; key++) assertEquals("value" + key, cache.get(key));
+    }
+
+    @Test
+    public void testPutAndGetMethods() {
+        DistributedCache<Integer, String> cache = localCache(new LocalTransport<>(), 3);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertNull(cache.get(3));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testCapacityGrowsWithTheNodes() {
+        LocalTransport<Integer, String> transport = new LocalTransport<>();
+        DistributedCache<Integer, String> cache = localCache(transport, 3);
+        for (int key = 0; key < KEYS; key++) cache.put(key, "value" + key);
+
+        assertEquals(KEYS, cache.getSize());    //more than the capacity of one node
+        assertAllKeys(cache, KEYS);
+        for (String node : cache.getNodes()) {
+            int size = transport.size(node);
+            assertTrue(node + " has " + size, size > KEYS / 6 && size < KEYS / 2);  //spread by the virtual nodes
+        }
+    }
+
+    @Test
+    public void testGetAllSendsOneRequestPerNode() {
+        AtomicInteger requests = new AtomicInteger();
+        LocalTransport<Integer, String> transport = new LocalTransport<Integer, String>() {
+            @Override
+            public Map<Integer, String> getAll(String node, Collection<Integer> keys) {
+                requests.incrementAndGet();
+                return super.getAll(node, keys);
+            }
+        };
+        DistributedCache<Integer, String> cache = localCache(transport, 3);
+        Map<Integer, String> entries = new HashMap<>();
+        for (int key = 0; key < 100; key++) entries.put(key, "value" + key);
+        cache.putAll(entries);
+
+        List<Integer> keys = new ArrayList<>(entries.keySet());
+        keys.add(1000);
+        List<Integer> misses = new ArrayList<>();
+        assertEquals(entries, cache.getAll(keys, misses));
+        assertEquals(3, requests.get());
+        assertEquals(1, misses.size());
+        assertEquals(1000, (int) misses.get(0));
+    }
+
+    @Test
+    public void testAddNodeMovesTheEntriesItOwns() {
+        LocalTransport<Integer, String> transport = new LocalTransport<>();
+        DistributedCache<Integer, String> cache = localCache(transport, 2);
+        for (int key = 0; key < KEYS; key++) cache.put(key, "value" + key);
+
+        addLocalNode(cache, transport, "node2");
+
+        assertEquals(KEYS, cache.getSize());    //moved, not copied
+        assertTrue(transport.size("node2") > 0);
+        assertAllKeys(cache, KEYS);
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals("value" + key, transport.getAll(cache.nodeFor(key), Collections.singletonList(key)).get(key));
+        }
+    }
+
+    @Test
+    public void testAddNodeMovesInBatches() {
+        AtomicInteger scans = new AtomicInteger();
+        LocalTransport<Integer, String> transport = new LocalTransport<Integer, String>() {
+            @Override
+            public ScanBatch<Integer, String> scan(String node, long[] ranges, int segment, long fromHash, int limit) {
+                scans.incrementAndGet();
+                ScanBatch<Integer, String> batch = super.scan(node, ranges, segment, fromHash, limit);
+                assertTrue(batch.getEntries().size() <= DistributedCache.MOVE_BATCH_SIZE);
+                return batch;
+            }
+        };
+        DistributedCache<Integer, String> cache = new DistributedCache<>(transport);
+        int keys = DistributedCache.MOVE_BATCH_SIZE * 8;
+        for (int i = 0; i < 3; i++) transport.register("node" + i, new ConcurrentCacheImpl<>(keys, CacheReplacementPolicy.LRU));
+        cache.addNode("node0");
+        cache.addNode("node1");
+        for (int key = 0; key < keys; key++) cache.put(key, "value" + key);
+        scans.set(0);
+
+        cache.addNode("node2");     //about a third of the keys, more than a batch from every node
+
+        assertTrue(scans.get() > 2);
+        assertEquals(keys, cache.getSize());
+        assertAllKeys(cache, keys);
+        for (int key = 0; key < keys; key++) {
+            assertEquals("value" + key, transport.getAll(cache.nodeFor(key), Collections.singletonList(key)).get(key));
+        }
+    }
+
+    @Test
+    public void testRangesMatchTheOwners() {
+        HashRing ring = new HashRing(DistributedCache.DEFAULT_VIRTUAL_NODES);
+        for (int i = 0; i < 4; i++) ring.add("node" + i);
+        Map<String, long[]> ranges = new HashMap<>();
+        for (String node : ring.getNodes()) ranges.put(node, ring.ranges(node));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextLong();
+            String owner = ring.nodeFor(key);
+            for (String node : ring.getNodes()) {
+                assertEquals(node.equals(owner), HashRing.inRanges(ranges.get(node), HashRing.keyHash(key)));
+            }
+        }
+        for (long hash : new long[] {Long.MIN_VALUE, Long.MAX_VALUE}) {
+            assertEquals(1, ranges.values().stream().filter(r -> HashRing.inRanges(r, hash)).count());   //the ends of the ring
+        }
+    }
+
+    @Test
+    public void testRemoveAndInvalidateAll() {
+        DistributedCache<Integer, String> cache = localCache(new LocalTransport<>(), 3);
+        for (int key = 0; key < KEYS; key++) cache.put(key, "value" + key);
+
+        assertEquals("value1", cache.remove(1));
+        assertNull(cache.remove(1));
+        assertNull(cache.get(1));
+        assertEquals(KEYS - 1, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testRemoveNodeMovesItsEntries() {
+        LocalTransport<Integer, String> transport = new LocalTransport<>();
+        DistributedCache<Integer, String> cache = localCache(transport, 3);
+        for (int key = 0; key < KEYS; key++) cache.put(key, "value" + key);
+
+        cache.removeNode("node1");
+
+        assertEquals(2, cache.getNodes().size());
+        assertEquals(0, transport.size("node1"));
+        assertEquals(KEYS, cache.getSize());
+        assertAllKeys(cache, KEYS);
+    }
+
+    @Test
+    public void testTcpTransport() throws IOException {
+        List<CacheServer<Integer, String>> servers = new ArrayList<>();
+        TcpTransport<Integer, String> transport = new TcpTransport<>(Serializers.INTEGER, Serializers.STRING);
+        try (DistributedCache<Integer, String> cache = new DistributedCache<>(transport)) {
+            for (int i = 0; i < 3; i++) {
+                CacheServer<Integer, String> server = new CacheServer<>(new ConcurrentCacheImpl<>(NODE_CAPACITY, CacheReplacementPolicy.LRU),
+                        new InetSocketAddress("127.0.0.1", 0), Serializers.INTEGER, Serializers.STRING);
+                servers.add(server);
+                transport.register("node" + i, server.getAddress());
+            }
+            cache.addNode("node0");
+            cache.addNode("node1");
+            for (int key = 0; key < KEYS; key++) cache.put(key, "value" + key);
+
+            cache.addNode("node2");    //rebalanced over the network
+            assertEquals(KEYS, cache.getSize());
+            assertTrue(transport.size("node2") > 0);
+            assertAllKeys(cache, KEYS);
+
+            Map<Integer, String> values = cache.getAll(Arrays.asList(1, 2, KEYS));
+            assertEquals(2, values.size());
+
+            assertEquals("value1", cache.remove(1));
+            assertNull(cache.remove(1));
+            cache.removeNode("node0");  //moved over the network
+            assertEquals(KEYS - 1, cache.getSize());
+            cache.invalidateAll();
+            assertEquals(0, cache.getSize());
+        }
+        finally {
+            for (CacheServer<Integer, String> server : servers) server.close();
+        }
+    }
+
+    @Test
+    public void testRemoveDeadNode() throws IOException {
+        List<CacheServer<Integer, String>> servers = new ArrayList<>();
+        TcpTransport<Integer, String> transport = new TcpTransport<>(Serializers.INTEGER, Serializers.STRING);
+        try (DistributedCache<Integer, String> cache = new DistributedCache<>(transport)) {
+            for (int i = 0; i < 2; i++) {
+                CacheServer<Integer, String> server = new CacheServer<>(new ConcurrentCacheImpl<>(NODE_CAPACITY, CacheReplacementPolicy.LRU),
+                        new InetSocketAddress("127.0.0.1", 0), Serializers.INTEGER, Serializers.STRING);
+                servers.add(server);
+                transport.register("node" + i, server.getAddress());
+                cache.addNode("node" + i);
+            }
+            for (int key = 0; key < NODE_CAPACITY; key++) cache.put(key, "value" + key);
+            int kept = transport.size("node0");
+
+            servers.get(1).close();
+            cache.removeNode("node1");  //its entries are lost
+
+            assertEquals(Arrays.asList("node0"), cache.getNodes());
+            assertEquals(kept, cache.getSize());
+        }
+        finally {
+            for (CacheServer<Integer, String> server : servers) server.close();
+        }
+    }
+
+    @Test
+    public void testHungServerTimesOut() throws IOException {
+        try (ServerSocket hung = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             TcpTransport<Integer, String> transport = new TcpTransport<>(Serializers.INTEGER, Serializers.STRING, 100)) {
+            transport.register("node0", (InetSocketAddress) hung.getLocalSocketAddress());  //accepts but never answers
+            try {
+                transport.size("node0");
+                fail("The server does not answer");
+            } catch (SocketTimeoutException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testResponseLargerThanTheFrameIsRejected() throws Exception {
+        try (ServerSocket hostile = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             TcpTransport<Integer, String> transport = new TcpTransport<>(Serializers.INTEGER, Serializers.STRING)) {
+            Thread server = new Thread(() -> {
+                try (Socket socket = hostile.accept()) {
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    out.writeInt(Integer.MAX_VALUE);    //a count that the client must not allocate
+                    out.flush();
+                    socket.getInputStream().read();
+                } catch (IOException ignored) {
+                }
+            });
+            server.start();
+            transport.register("node0", (InetSocketAddress) hostile.getLocalSocketAddress());
+            try {
+                transport.getAll("node0", Collections.singletonList(1));
+                fail("The response is larger than the frame");
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains("maximum frame size"));
+            }
+            server.join(10_000);
+        }
+    }
+
+    @Test
+    public void testRequestLargerThanTheFrameIsRejected() throws IOException {
+        try (CacheServer<Integer, String> server = new CacheServer<>(new ConcurrentCacheImpl<>(NODE_CAPACITY, CacheReplacementPolicy.LRU),
+                new InetSocketAddress("127.0.0.1", 0), Serializers.INTEGER, Serializers.STRING, 1024);
+             TcpTransport<Integer, String> transport = new TcpTransport<>(Serializers.INTEGER, Serializers.STRING)) {
+            transport.register("node0", server.getAddress());
+            Map<Integer, String> entries = new HashMap<>();
+            for (int key = 0; key < 100; key++) entries.put(key, "value" + key);
+            try {
+                transport.putAll("node0", entries);
+                fail("The request is larger than the frame");
+            } catch (IOException expected) {
+                //the server closed the connection
+            }
+            transport.putAll("node0", Collections.singletonMap(1, "one"));  //a new connection
+            assertEquals(1, transport.size("node0"));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LoadingCacheTest {
+    static int CACHE_CAPACITY = 100;
+    static int THREADS = 8;
+
+    @Test
+    public void testLoadsMissingValues() {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, key -> {
+            loads.incrementAndGet();
+            return key < 0 ? null : "value" + key;
+        });
+
+        assertEquals("value1", cache.get(1));
+        assertEquals("value1", cache.get(1));   //cached
+        assertNull(cache.get(-1));              //no value, not cached
+        assertNull(cache.getIfPresent(2));      //does not load
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getLoadSuccessCount());
+        assertEquals(1, cache.getHitCount());
+        assertTrue(cache.getTotalLoadTime() > 0);
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU, key -> {
+            loads.incrementAndGet();
+            release.await();    //keeps the load in flight until every thread has missed
+            return "value" + key;
+        });
+
+        List<Thread> threads = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                String value = cache.get(1);
+                synchronized (results) {results.add(value);}
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        while (cache.getMissCount() < THREADS) Thread.sleep(1);
+        release.countDown();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1, loads.get());
+        assertEquals(THREADS, results.size());
+        for (String value : results) assertEquals("value1", value);
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, key -> {
+            if (loads.incrementAndGet() == 1) throw new IOException("unavailable");
+            return "value" + key;
+        });
+
+        try {
+            cache.get(1);
+            fail("the load failure was not thrown");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("value1", cache.get(1));
+        assertEquals(1, cache.getLoadFailureCount());
+        assertEquals(1, cache.getLoadSuccessCount());
+    }
+
+    @Test
+    public void testGetAllLoadsMissesTogether() {
+        List<Collection<? extends Integer>> batches = new ArrayList<>();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, new CacheLoader<Integer, String>() {
+            @Override
+            public String load(Integer key) {
+                throw new AssertionError("loadAll must be used");
+            }
+
+            @Override
+            public Map<Integer, String> loadAll(Collection<? extends Integer> keys) {
+                batches.add(new ArrayList<>(keys));
+                Map<Integer, String> values = new HashMap<>();
+                for (int key : keys) if (key != 4) values.put(key, "value" + key);
+                return values;
+            }
+        });
+        cache.put(1, "one");
+
+        List<Integer> misses = new ArrayList<>();
+        Map<Integer, String> values = cache.getAll(Arrays.asList(1, 2, 3, 4), misses);
+
+        assertEquals(1, batches.size());
+        assertEquals(new HashSet<>(Arrays.asList(2, 3, 4)), new HashSet<>(batches.get(0)));
+        assertEquals("one", values.get(1));
+        assertEquals("value3", values.get(3));
+        assertEquals(3, values.size());
+        assertEquals(Arrays.asList(4), misses);
+        assertEquals("value2", cache.getIfPresent(2));
+    }
+
+    @Test
+    public void testRemoveDuringLoadIsNotCached() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, key -> {
+            started.countDown();
+            release.await();
+            return "stale" + key;
+        });
+
+        Thread thread = new Thread(() -> cache.get(1));
+        thread.start();
+        started.await();
+        cache.remove(1);    //the value being loaded is already out of date
+        release.countDown();
+        thread.join();
+
+        assertNull(cache.getIfPresent(1));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testPutDuringLoadIsNotOverwritten() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<Integer, String> cache = new LoadingCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU, key -> {
+            started.countDown();
+            release.await();
+            return "stale" + key;
+        });
+
+        Thread thread = new Thread(() -> cache.get(1));
+        thread.start();
+        started.await();
+        cache.put(1, "new");    //newer than the value being loaded
+        release.countDown();
+        thread.join();
+
+        assertEquals("new", cache.getIfPresent(1));
+    }
+
+    @Test
+    public void testLoadThatCannotBeCachedIsCountedOnce() {
+        Cache<Integer, String> store = new ConcurrentCacheImpl<Integer, String>(CACHE_CAPACITY, CacheReplacementPolicy.LRU) {
+            @Override
+            public void put(Integer key, String value) {
+                throw new IllegalStateException("full");
+            }
+        };
+        LoadingCache<Integer, String> cache = new LoadingCache<>(store, key -> "value" + key);
+
+        try {
+            cache.get(1);
+            fail("The put throws");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            cache.getAll(Arrays.asList(2, 3));
+            fail("The put throws");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, cache.getLoadSuccessCount());
+        assertEquals(2, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void testPutDuringLoadRunsOutsideTheLoads() throws InterruptedException {
+        //the put of a loaded value can block (e.g. on a write-behind flush), a put of the same key must not wait for it
+        CountDownLatch putting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blockPut = new AtomicBoolean(true);
+        Cache<Integer, String> store = new ConcurrentCacheImpl<Integer, String>(CACHE_CAPACITY, CacheReplacementPolicy.LRU) {
+            @Override
+            public void put(Integer key, String value) {
+                if (blockPut.compareAndSet(true, false)) {
+                    putting.countDown();
+                    try {release.await();}
+                    catch (InterruptedException e) {Thread.currentThread().interrupt();}
+                }
+                super.put(key, value);
+            }
+        };
+        LoadingCache<Integer, String> cache = new LoadingCache<>(store, key -> "stale" + key);
+
+        Thread thread = new Thread(() -> cache.get(1));
+        thread.start();
+        putting.await();
+        Thread writer = new Thread(() -> cache.put(1, "new"));
+        writer.start();
+        writer.join(10_000);
+        assertFalse("The put waited for the load", writer.isAlive());
+        release.countDown();
+        thread.join();
+
+        assertNotEquals("stale1", cache.getIfPresent(1));  //the cancelled load does not replace the put
+    }
+
+    @Test
+    public void testMissBeforeAnotherLoadCompletesDoesNotLoadAgain() throws InterruptedException {
+        CountDownLatch missed = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        AtomicBoolean slowMiss = new AtomicBoolean(true);
+        Cache<Integer, String> store = new ConcurrentCacheImpl<Integer, String>(CACHE_CAPACITY, CacheReplacementPolicy.LRU) {
+            @Override
+            public String get(Integer key) {
+                String value = super.get(key);
+                if (value == null && slowMiss.compareAndSet(true, false)) {
+                    missed.countDown();
+                    try {loaded.await();}   //the other load completes between this miss and the claim
+                    catch (InterruptedException e) {Thread.currentThread().interrupt();}
+                }
+                return value;
+            }
+        };
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<Integer, String> cache = new LoadingCache<>(store, key -> "value" + key + "-" + loads.incrementAndGet());
+
+        String[] result = new String[1];
+        Thread thread = new Thread(() -> result[0] = cache.get(1));
+        thread.start();
+        missed.await();
+        assertEquals("value1-1", cache.get(1));
+        loaded.countDown();
+        thread.join();
+
+        assertEquals("value1-1", result[0]);
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,143 @@
+package org.CacheEx;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongKeyCacheTest {
+    static int MIN_CACHE_CAPACITY = 3;
+    static int CACHE_CAPACITY = 1_000;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testLRURemoval() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);
+        cache.put(4, "four");
+
+        assertNull(cache.get(2)); // Key 2 should be evicted
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    public void testMRURemoval() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.MRU);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);
+        cache.put(4, "four");
+
+        assertNull(cache.get(1)); // Key 1 should be evicted
+        assertEquals("two", cache.get(2));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+    }
+
+    @Test
+    public void testLFURemoval() {
+        LongLongCache cache = new LongLongCache(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+
+        cache.put(1, 10);
+        cache.put(2, 20);
+        cache.put(3, 30);
+        cache.get(1, -1);
+        cache.get(1, -1);
+        cache.get(2, -1);
+        cache.put(4, 40);
+
+        assertEquals(-1, cache.get(3, -1)); // Key 3 should be evicted
+        assertEquals(10, cache.get(1, -1));
+        assertEquals(20, cache.get(2, -1));
+        assertEquals(40, cache.get(4, -1));
+        assertNull(cache.get(Long.valueOf(3)));
+    }
+
+    @Test
+    public void testKeyUpdate() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+
+        cache.put(1, "one");
+        cache.put(1, "new one");
+
+        assertEquals("new one", cache.get(1));
+        assertEquals(1, cache.getSize()); //no size increase on update
+    }
+
+    @Test
+    public void testSameEvictionsAsCacheImpl() {
+        CacheReplacementPolicy[] policies = {CacheReplacementPolicy.LRU, CacheReplacementPolicy.MRU, CacheReplacementPolicy.LFU};
+        for (CacheReplacementPolicy policy : policies) {
+            Cache<Long, Long> expected = new CacheImpl<>(CACHE_CAPACITY, policy);
+            LongLongCache actual = new LongLongCache(CACHE_CAPACITY, policy);
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < CACHE_CAPACITY * 50; i++) {
+                long key = random.nextInt(CACHE_CAPACITY * 3) * 1_000_003L; //keys that collide in the table
+                Long value = expected.get(key);
+                assertEquals(value, actual.get(Long.valueOf(key)));
+                if (value == null) {
+                    expected.put(key, key);
+                    actual.put(key, key);
+                }
+            }
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getHitCount(), actual.getHitCount());
+        }
+    }
+
+    @Test
+    public void testGetDoesNotAllocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        LongKeyCache<String> cache = new LongKeyCache<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        for (long key = 0; key < CACHE_CAPACITY; key++) cache.put(key, "value" + key);
+        for (int i = 0; i < 100_000; i++) cache.get(i % (CACHE_CAPACITY * 2L)); //warm up
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) cache.get(i % (CACHE_CAPACITY * 2L));
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void testRemoveFreesTheSlot() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        assertEquals("two", cache.remove(2));
+        assertNull(cache.remove(2));
+        cache.put(4, "four");   //reuses the slot of key 2, nothing is evicted
+
+        assertEquals("one", cache.get(1));
+        assertEquals("three", cache.get(3));
+        assertEquals("four", cache.get(4));
+        assertEquals(3, cache.getSize());
+
+        LongLongCache counts = new LongLongCache(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        counts.put(1, 10);
+        assertEquals(10, counts.remove(1, -1));
+        assertEquals(-1, counts.remove(1, -1));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(1));
+    }
+}
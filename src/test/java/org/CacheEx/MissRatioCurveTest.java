@@ -0,0 +1,66 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MissRatioCurveTest {
+    static int KEYS = 20_000;
+    static int ACCESSES = 400_000;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testLoopIsExactWithoutSampling() {
+        MissRatioCurve curve = new MissRatioCurve(200, MissRatioCurve.DEFAULT_SAMPLED_KEYS, 1);
+        for (int round = 0; round < 10; round++) {
+            for (int key = 0; key < 100; key++) curve.record(key);
+        }
+
+        assertEquals(1.0, curve.getSamplingRate(), 0);
+        assertEquals(0.9, curve.hitRatio(100), 1e-9);   //every access hits except the first round
+        assertEquals(0.0, curve.hitRatio(99), 1e-9);    //a loop larger than an LRU cache never hits
+        assertEquals(1000, curve.getAccessCount(), 1e-9);
+    }
+
+    @Test
+    public void testSampledCurveMatchesLRU() {
+        MissRatioCurve curve = new MissRatioCurve(KEYS, 1024);
+        int[] sizes = {KEYS / 10, KEYS / 4, KEYS / 2};
+        CacheImpl<Integer, Integer>[] caches = newCaches(sizes);
+        Random random = new Random(SEED_FOR_RANDOM);
+
+        for (int i = 0; i < ACCESSES; i++) {
+            //a skewed workload: half of the accesses go to a tenth of the keys
+            int key = random.nextBoolean() ? random.nextInt(KEYS / 10) : random.nextInt(KEYS);
+            curve.record(key);
+            for (CacheImpl<Integer, Integer> cache : caches) {
+                if (cache.get(key) == null) cache.put(key, key);
+            }
+        }
+
+        assertTrue(curve.getSamplingRate() < 0.1);     //only a sample of the keys was tracked
+        for (int i = 0; i < sizes.length; i++) {
+            double actual = (double) caches[i].getHitCount() / ACCESSES;
+            assertEquals("size " + sizes[i], actual, curve.hitRatio(sizes[i]), 0.05);
+        }
+        assertEquals(ACCESSES, curve.getAccessCount(), ACCESSES * 0.2);
+    }
+
+    @Test
+    public void testDefaultRateSamplesAFewKeys() {
+        MissRatioCurve curve = new MissRatioCurve(KEYS);
+        for (int key = 0; key < KEYS; key++) curve.record(key);
+
+        assertEquals(MissRatioCurve.DEFAULT_SAMPLING_RATE, curve.getSamplingRate(), 1e-6);
+        assertEquals(KEYS, curve.getAccessCount(), KEYS * 0.2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CacheImpl<Integer, Integer>[] newCaches(int[] sizes) {
+        CacheImpl<Integer, Integer>[] caches = new CacheImpl[sizes.length];
+        for (int i = 0; i < sizes.length; i++) caches[i] = new CacheImpl<>(sizes[i], CacheReplacementPolicy.LRU);
+        return caches;
+    }
+}
@@ -0,0 +1,133 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OffHeapCacheTest {
+    static int MIN_CACHE_CAPACITY = 3;
+    static int CACHE_CAPACITY = 1_000;
+    static long MEMORY = 8 << 20;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testPutAndGetMethods() {
+        OffHeapCache<String, String> cache = new OffHeapCache<>(MIN_CACHE_CAPACITY, MEMORY, CacheReplacementPolicy.LRU,
+                Serializers.STRING, Serializers.STRING);
+
+        cache.put("1", "one");
+        cache.put("2", "two");
+        cache.put("3", "three");
+
+        assertEquals("one", cache.get("1"));
+        assertEquals("two", cache.get("2"));
+        assertEquals("three", cache.get("3"));
+        assertNull(cache.get("4"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testByteArrays() {
+        OffHeapCache<byte[], byte[]> cache = new OffHeapCache<>(MIN_CACHE_CAPACITY, MEMORY, CacheReplacementPolicy.LRU,
+                Serializers.BYTE_ARRAY, Serializers.BYTE_ARRAY);
+
+        cache.put(new byte[]{1, 2, 3}, new byte[]{4, 5});
+
+        assertArrayEquals(new byte[]{4, 5}, cache.get(new byte[]{1, 2, 3}));   //keys are compared by content
+        assertNull(cache.get(new byte[]{1, 2}));
+    }
+
+    @Test
+    public void testLFUOrder() {
+        OffHeapCache<Integer, String> cache = new OffHeapCache<>(MIN_CACHE_CAPACITY, MEMORY, CacheReplacementPolicy.LFU,
+                Serializers.INTEGER, Serializers.STRING);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.put(4, "four");
+
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertEquals("four", cache.get(4));
+        assertNull(cache.get(3));   //check if LFU was evicted
+    }
+
+    @Test
+    public void testUpdateToAnotherSizeClassKeepsOrder() {
+        OffHeapCache<Integer, String> cache = new OffHeapCache<>(MIN_CACHE_CAPACITY, MEMORY, CacheReplacementPolicy.LRU,
+                Serializers.INTEGER, Serializers.STRING);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.put(1, new String(new char[1000]).replace('\0', 'x')); //moves key 1 to a larger block and to the tail
+        cache.put(4, "four");
+
+        assertNull(cache.get(2));
+        assertEquals(1000, cache.get(1).length());
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testSameEvictionsAsCacheImpl() {
+        CacheReplacementPolicy[] policies = {CacheReplacementPolicy.LRU, CacheReplacementPolicy.MRU, CacheReplacementPolicy.LFU};
+        for (CacheReplacementPolicy policy : policies) {
+            Cache<Long, String> expected = new CacheImpl<>(CACHE_CAPACITY, policy);
+            OffHeapCache<Long, String> actual = new OffHeapCache<>(CACHE_CAPACITY, MEMORY, policy, Serializers.LONG, Serializers.STRING);
+            Random random = new Random(SEED_FOR_RANDOM);
+
+            for (int i = 0; i < CACHE_CAPACITY * 50; i++) {
+                long key = random.nextInt(CACHE_CAPACITY * 3);
+                String value = expected.get(key);
+                assertEquals(value, actual.get(key));
+                if (value == null || random.nextInt(10) == 0) {
+                    String newValue = key + "-" + random.nextInt(1 << random.nextInt(20)); //values of different sizes
+                    expected.put(key, newValue);
+                    actual.put(key, newValue);
+                }
+            }
+            assertEquals(expected.getSize(), actual.getSize());
+            assertEquals(expected.getHitCount(), actual.getHitCount());
+        }
+    }
+
+    @Test
+    public void testEvictsWhenMemoryIsFull() {
+        OffHeapCache<Integer, byte[]> cache = new OffHeapCache<>(CACHE_CAPACITY, 1 << 20, CacheReplacementPolicy.LRU,
+                Serializers.INTEGER, Serializers.BYTE_ARRAY);
+
+        for (int i = 0; i < CACHE_CAPACITY; i++) cache.put(i, new byte[4000]); //4 MB of values in 1 MB
+
+        assertTrue(cache.getSize() < CACHE_CAPACITY);
+        assertNotNull(cache.get(CACHE_CAPACITY - 1));   //the most recent entry is kept
+        assertNull(cache.get(0));
+    }
+
+    @Test
+    public void testRemoveAndInvalidateAll() {
+        OffHeapCache<Integer, String> cache = new OffHeapCache<>(MIN_CACHE_CAPACITY, MEMORY, CacheReplacementPolicy.LRU,
+                Serializers.INTEGER, Serializers.STRING);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+
+        assertEquals("two", cache.remove(2));
+        assertNull(cache.remove(2));
+        cache.put(4, "four");   //nothing is evicted
+        assertEquals("one", cache.get(1));
+        assertEquals(3, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(4));
+        cache.put(5, "five");
+        assertEquals("five", cache.get(5));
+    }
+}
@@ -0,0 +1,230 @@
+package org.CacheEx;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PersistentCacheTest {
+    static int CACHE_CAPACITY = 1_000;
+    static long MAX_SIZE = 8 << 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PersistentCache<Integer, String> open(Path file, CacheReplacementPolicy policy) throws IOException {
+        return new PersistentCache<>(file, CACHE_CAPACITY, MAX_SIZE, policy, Serializers.INTEGER, Serializers.STRING, 0);
+    }
+
+    @Test
+    public void testWarmRestart() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        assertFalse(cache.isRestored());
+        for (int i = 0; i < CACHE_CAPACITY; i++) cache.put(i, "value" + i);
+        cache.get(0);   //key 0 is the most recently used
+        cache.close();
+
+        cache = open(file, CacheReplacementPolicy.LRU);
+        assertTrue(cache.isRestored());
+        assertEquals(CACHE_CAPACITY, cache.getSize());
+        cache.put(CACHE_CAPACITY, "new");   //evicts key 1, the least recently used before the restart
+
+        assertNull(cache.get(1));
+        assertEquals("value0", cache.get(0));
+        assertEquals("value500", cache.get(500));
+        assertEquals("new", cache.get(CACHE_CAPACITY));
+        cache.close();
+    }
+
+    @Test
+    public void testLFUFrequenciesSurviveRestart() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LFU);
+        for (int i = 0; i < CACHE_CAPACITY; i++) cache.put(i, "value" + i);
+        for (int i = 1; i < CACHE_CAPACITY; i++) cache.get(i);  //every key except 0 has frequency 2
+        cache.close();
+
+        cache = open(file, CacheReplacementPolicy.LFU);
+        cache.put(CACHE_CAPACITY, "new");
+
+        assertNull(cache.get(0));   //the least frequently used key was evicted
+        assertEquals("value1", cache.get(1));
+        cache.close();
+    }
+
+    @Test
+    public void testCrashRestoresTheLastFlush() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.flush();
+        cache.put(2, "two");    //not flushed and the file is not closed (a crash)
+        cache.remove(1);
+
+        PersistentCache<Integer, String> reopened = open(file, CacheReplacementPolicy.LRU);
+        assertTrue(reopened.isRestored());
+        assertEquals("one", reopened.get(1));
+        assertNull(reopened.get(2));
+        reopened.close();
+    }
+
+    @Test
+    public void testGetDuringFlush() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+        CountDownLatch writing = new CountDownLatch(1), released = new CountDownLatch(1);
+        PersistentCache<Integer, String> cache = new PersistentCache<Integer, String>(file, CACHE_CAPACITY, MAX_SIZE,
+                CacheReplacementPolicy.LRU, Serializers.INTEGER, Serializers.STRING, 0) {
+            @Override
+            void writeJournal(List<Journal.Run> pages) throws IOException {
+                writing.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                super.writeJournal(pages);
+            }
+        };
+        cache.put(1, "one");
+        Thread flusher = new Thread(() -> {
+            try {
+                cache.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        flusher.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<String> get = CompletableFuture.supplyAsync(() -> cache.get(1));
+        assertEquals("one", get.get(10, TimeUnit.SECONDS));     //the flush is blocked in the journal write
+        cache.put(2, "two");
+
+        released.countDown();
+        flusher.join();
+        cache.close();
+        PersistentCache<Integer, String> reopened = open(file, CacheReplacementPolicy.LRU);
+        assertEquals("one", reopened.get(1));
+        assertEquals("two", reopened.get(2));
+        reopened.close();
+    }
+
+    @Test
+    public void testCompleteJournalIsReplayed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.close();
+        cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(2, "two");
+        cache.store.saveState(true);
+        try (FileChannel journal = FileChannel.open(Journal.fileOf(file), StandardOpenOption.WRITE)) {
+            Journal.write(journal, Journal.copyDirtyPages(cache.store.memory));     //a crash after the journal was written
+        }
+
+        PersistentCache<Integer, String> reopened = open(file, CacheReplacementPolicy.LRU);
+        assertTrue(reopened.isRestored());
+        assertEquals("one", reopened.get(1));
+        assertEquals("two", reopened.get(2));
+        assertEquals(2, reopened.getSize());
+        assertEquals(0, Files.size(Journal.fileOf(file)));
+        reopened.close();
+    }
+
+    @Test
+    public void testIncompleteJournalIsDiscarded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.close();
+        cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(2, "two");
+        cache.store.saveState(true);
+        try (FileChannel journal = FileChannel.open(Journal.fileOf(file), StandardOpenOption.WRITE)) {
+            Journal.write(journal, Journal.copyDirtyPages(cache.store.memory));
+            journal.truncate(journal.size() - 1);   //a crash while the journal was written
+        }
+
+        PersistentCache<Integer, String> reopened = open(file, CacheReplacementPolicy.LRU);
+        assertTrue(reopened.isRestored());
+        assertEquals("one", reopened.get(1));
+        assertNull(reopened.get(2));
+        reopened.close();
+    }
+
+    @Test
+    public void testOtherConfigurationIsDiscarded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.close();
+
+        cache = open(file, CacheReplacementPolicy.MRU);
+        assertFalse(cache.isRestored());
+        assertEquals(0, cache.getSize());
+        cache.close();
+    }
+
+    @Test
+    public void testCorruptedHeaderIsDiscarded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(OffHeapStore.H_SIZE);
+            raf.writeLong(5);   //the checksum no longer matches
+        }
+
+        cache = open(file, CacheReplacementPolicy.LRU);
+        assertFalse(cache.isRestored());
+        assertNull(cache.get(1));
+        cache.close();
+    }
+
+    @Test
+    public void testCorruptedEntryIsAMiss() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.bin");
+
+        PersistentCache<Integer, String> cache = open(file, CacheReplacementPolicy.LRU);
+        cache.put(1, "a value that is easy to find");
+        cache.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        int position = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("easy");
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            raf.write('E'); //change one byte of the value
+        }
+
+        cache = open(file, CacheReplacementPolicy.LRU);
+        assertTrue(cache.isRestored());
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getSize());
+        cache.close();
+    }
+}
@@ -0,0 +1,91 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SimulatorTest {
+    static int SEED_FOR_RANDOM = 17;
+
+    private static long[] readAll(TraceReader reader) throws IOException {
+        long[] all = new long[0];
+        long[] keys = new long[3];  //smaller than the lines, to test the batches
+        for (int n; (n = reader.read(keys)) > 0; ) {
+            all = Arrays.copyOf(all, all.length + n);
+            System.arraycopy(keys, 0, all, all.length - n, n);
+        }
+        return all;
+    }
+
+    private static TraceReader open(TraceFormat format, String text) {
+        return format.open(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testTextFormat() throws IOException {
+        long[] keys = readAll(open(TraceFormat.TEXT, "1\n\n42\nhttp://example.com\n"));
+
+        assertArrayEquals(new long[]{1, 42, TraceFormat.hash("http://example.com")}, keys);
+    }
+
+    @Test
+    public void testArcFormat() throws IOException {
+        long[] keys = readAll(open(TraceFormat.ARC, "10 4 0 1\n3 1 0 2\n"));
+
+        assertArrayEquals(new long[]{10, 11, 12, 13, 3}, keys);
+    }
+
+    @Test
+    public void testLirsFormat() throws IOException {
+        long[] keys = readAll(open(TraceFormat.LIRS, "5\n*\n7\n5\n"));
+
+        assertArrayEquals(new long[]{5, 7, 5}, keys);
+    }
+
+    @Test
+    public void testBinaryFormatRoundTrip() throws IOException {
+        Random random = new Random(SEED_FOR_RANDOM);
+        long[] keys = new long[10_000];
+        for (int i = 0; i < keys.length; i++) keys[i] = random.nextBoolean() ? i : random.nextLong();
+        StringBuilder text = new StringBuilder();
+        for (long key : keys) text.append(key).append('\n');
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(keys.length, TraceFormat.writeBinary(open(TraceFormat.TEXT, text.toString()), out));
+
+        assertArrayEquals(keys, readAll(TraceFormat.BINARY.open(new ByteArrayInputStream(out.toByteArray()))));
+    }
+
+    @Test
+    public void testSameHitsAsSequentialReplay() throws IOException {
+        Random random = new Random(SEED_FOR_RANDOM);
+        StringBuilder text = new StringBuilder();
+        long[] keys = new long[Simulator.BATCH_SIZE * 5 + 7];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(1_000);
+            text.append(keys[i]).append('\n');
+        }
+        List<CacheReplacementPolicy> policies = Arrays.asList(CacheReplacementPolicy.values());
+        int[] capacities = {10, 100};
+
+        List<Simulator.Result> results = new Simulator(policies, capacities).run(open(TraceFormat.TEXT, text.toString()));
+
+        assertEquals(policies.size() * capacities.length, results.size());
+        for (Simulator.Result result : results) {
+            Cache<Long, Boolean> cache = new CacheImpl<>(result.getCapacity(), result.getPolicy());
+            for (long key : keys) {
+                if (cache.get(key) == null) cache.put(key, Boolean.TRUE);
+            }
+            assertEquals(keys.length, result.getAccesses());
+            assertEquals(cache.getHitCount(), result.getHits());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StatsRecorderTest {
+    static int MIN_CACHE_CAPACITY = 3;
+
+    @Test
+    public void testCacheImplStats() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setStatsRecorder(new ConcurrentStatsRecorder());
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");
+        cache.put(3, "THREE");  //update
+        cache.put(4, "four");   //evicts 1
+        cache.get(2);
+        cache.get(1);
+        cache.getAll(Arrays.asList(3, 4, 5));
+
+        CacheStats stats = cache.snapshot();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(4, stats.getPutCount());
+        assertEquals(1, stats.getUpdateCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(3, stats.getSize());
+        assertEquals(3, stats.getWeightedSize());
+        assertEquals(2, stats.getGetLatency().getCount());  //getAll is not timed
+        assertEquals(5, stats.getPutLatency().getCount());
+    }
+
+    @Test
+    public void testExpiredAndWeightedStats() {
+        long[] nanos = {0};
+        CacheImpl<Integer, String> cache = new CacheImpl<>(10, (key, value) -> value.length(), CacheReplacementPolicy.LFU);
+        cache.setTicker(() -> nanos[0]);
+        cache.setExpireAfterWrite(1, TimeUnit.MINUTES);
+        cache.setStatsRecorder(new ConcurrentStatsRecorder());
+
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbbbb");
+        nanos[0] += TimeUnit.MINUTES.toNanos(2);
+        assertNull(cache.get(1));
+
+        CacheStats stats = cache.snapshot();
+        assertEquals(2, stats.getRemovalCount(RemovalCause.EXPIRED));
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(0, stats.getSize());
+        assertEquals(0, stats.getWeightedSize());
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.put(1, "one");
+        cache.get(1);
+
+        assertEquals(0, cache.snapshot().getHitCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testConcurrentCacheStats() {
+        for (boolean bufferedReads : new boolean[]{false, true}) {
+            ConcurrentCacheImpl<Integer, String> cache = new ConcurrentCacheImpl<>(100, CacheReplacementPolicy.WTINYLFU, 4, bufferedReads);
+            cache.setStatsRecorder(new ConcurrentStatsRecorder());
+            for (int i = 0; i < 10; i++) cache.put(i, "value" + i);
+            for (int i = 0; i < 20; i++) cache.get(i);
+
+            CacheStats stats = cache.snapshot();
+            assertEquals(10, stats.getHitCount());
+            assertEquals(10, stats.getMissCount());
+            assertEquals(10, stats.getSize());
+            assertEquals(20, stats.getGetLatency().getCount());
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) histogram.record(i * 1_000L);
+
+        CacheStats.Latency latency = histogram.snapshot();
+        assertEquals(10_000, latency.getCount());
+        assertEquals(5_000_000, latency.getP50(), 5_000_000 / 32.0);
+        assertEquals(9_900_000, latency.getP99(), 9_900_000 / 32.0);
+        assertEquals(10_000_000, latency.getMax());
+    }
+
+    @Test
+    public void testHistogramIndexRoundTrip() {
+        for (long value = 0; value < 1_000_000; value = value * 3 / 2 + 1) {
+            long estimate = LatencyHistogram.valueOf(LatencyHistogram.indexOf(value));
+            assertEquals(value, estimate, value / 32.0);
+        }
+        assertTrue(LatencyHistogram.valueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)) > 0);     //no overflow
+    }
+
+    @Test
+    public void testMBean() throws JMException {
+        ConcurrentStatsRecorder recorder = new ConcurrentStatsRecorder();
+        recorder.recordHits(3);
+        ObjectName name = recorder.registerMBean("test cache");
+        try {
+            assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "HitCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TieredCacheTest {
+    static int L1_CAPACITY = 10;
+    static int L2_CAPACITY = 1_000;
+    static int SEED_FOR_RANDOM = 17;
+
+    @Test
+    public void testPromotionOnL2Hit() {
+        for (TieredCache.Mode mode : TieredCache.Mode.values()) {
+            TieredCache<Integer, String> cache = new TieredCache<>(L1_CAPACITY, CacheReplacementPolicy.LRU,
+                    new CacheImpl<>(L2_CAPACITY, CacheReplacementPolicy.LRU), mode);
+            cache.put(1, "one");
+            assertEquals(0, cache.getL1Size());   //new entries start in L2
+
+            assertEquals("one", cache.get(1));
+            assertEquals(1, cache.getL2HitCount());
+            assertEquals(1, cache.getPromotionCount());
+            assertEquals("one", cache.get(1));
+            assertEquals(1, cache.getL1HitCount());
+            assertEquals(1, cache.getL1MissCount());
+
+            assertNull(cache.get(2));
+            assertEquals(1, cache.getL2MissCount());
+            assertEquals(2, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+        }
+    }
+
+    @Test
+    public void testInclusiveKeepsACopyInL2() {
+        CacheImpl<Integer, String> l2 = new CacheImpl<>(L2_CAPACITY, CacheReplacementPolicy.LRU);
+        TieredCache<Integer, String> cache = new TieredCache<>(L1_CAPACITY, CacheReplacementPolicy.LRU, l2, TieredCache.Mode.INCLUSIVE);
+        cache.put(1, "one");
+        cache.get(1);
+        cache.put(1, "uno");    //written to both tiers
+
+        assertEquals("uno", cache.get(1));
+        assertEquals("uno", l2.get(1));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testExclusiveMovesEntriesBetweenTiers() {
+        CacheImpl<Integer, String> l2 = new CacheImpl<>(L2_CAPACITY, CacheReplacementPolicy.LRU);
+        TieredCache<Integer, String> cache = new TieredCache<>(L1_CAPACITY, CacheReplacementPolicy.LRU, l2, TieredCache.Mode.EXCLUSIVE);
+        for (int key = 0; key <= L1_CAPACITY; key++) {
+            cache.put(key, "value" + key);
+            cache.get(key);     //promoted and removed from L2
+        }
+
+        assertEquals(L1_CAPACITY, cache.getL1Size());
+        assertEquals(1, l2.getSize());      //key 0 was demoted by the last promotion
+        assertEquals(1, cache.getDemotionCount());
+        assertEquals(L1_CAPACITY + 1, cache.getSize());
+        cache.put(5, "five");   //an update stays in L1
+        assertEquals("five", cache.get(5));
+        assertNull(l2.get(5));
+        assertEquals("value0", cache.get(0));
+    }
+
+    @Test
+    public void testGetAllBatchesTheMissesOfL1() {
+        List<List<Integer>> batches = new ArrayList<>();
+        Cache<Integer, String> l2 = new CacheImpl<Integer, String>(L2_CAPACITY, CacheReplacementPolicy.LRU) {
+            @Override
+            public Map<Integer, String> getAll(Iterable<? extends Integer> keys, Collection<? super Integer> misses) {
+                List<Integer> batch = new ArrayList<>();
+                keys.forEach(batch::add);
+                batches.add(batch);
+                return super.getAll(keys, misses);
+            }
+        };
+        TieredCache<Integer, String> cache = new TieredCache<>(L1_CAPACITY, CacheReplacementPolicy.LRU, l2, TieredCache.Mode.EXCLUSIVE);
+        for (int key = 0; key < 5; key++) cache.put(key, "value" + key);
+        cache.get(0);
+
+        List<Integer> misses = new ArrayList<>();
+        Map<Integer, String> values = cache.getAll(Arrays.asList(0, 1, 2, 9), misses);
+
+        assertEquals(3, values.size());
+        assertEquals(Arrays.asList(9), misses);
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 9)), batches);
+        assertEquals(3, cache.getL1Size());
+    }
+
+    @Test
+    public void testHotKeysAreServedByL1() {
+        for (TieredCache.Mode mode : TieredCache.Mode.values()) {
+            TieredCache<Integer, String> cache = new TieredCache<>(L1_CAPACITY * 10, CacheReplacementPolicy.LRU,
+                    new CacheImpl<>(L2_CAPACITY, CacheReplacementPolicy.LRU), mode);
+            Random random = new Random(SEED_FOR_RANDOM);
+            for (int i = 0; i < 100_000; i++) {
+                int key = random.nextInt(10) < 9 ? random.nextInt(50) : random.nextInt(L2_CAPACITY * 2);    //90% of the accesses on 50 keys
+                String value = cache.get(key);
+                if (value == null) cache.put(key, "value" + key);
+                else assertEquals("value" + key, value);
+            }
+            assertTrue(mode.name(), cache.getL1HitCount() > 0.8 * 100_000);
+            assertTrue(cache.getL1Size() <= L1_CAPACITY * 10);
+        }
+    }
+}
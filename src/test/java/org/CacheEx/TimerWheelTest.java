@@ -0,0 +1,79 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+    static int SEED_FOR_RANDOM = 17;
+
+    private static Node<Integer, Integer> node(int key, long expirationTime) {
+        Node<Integer, Integer> node = new Node<>(key, key);
+        TimerWheel.timerOf(node).expirationTime = expirationTime;
+        return node;
+    }
+
+    @Test
+    public void testExpiresOnlyPastNodes() {
+        TimerWheel<Integer, Integer> wheel = new TimerWheel<>(0);
+        wheel.schedule(node(1, TimeUnit.SECONDS.toNanos(5)));
+        wheel.schedule(node(2, TimeUnit.MINUTES.toNanos(5)));
+        wheel.schedule(node(3, TimeUnit.HOURS.toNanos(5)));
+        wheel.schedule(node(4, TimeUnit.DAYS.toNanos(30)));
+
+        List<Integer> expired = new ArrayList<>();
+        wheel.advance(TimeUnit.SECONDS.toNanos(10), node -> expired.add(node.getKey()));
+        assertEquals(1, expired.size());
+
+        wheel.advance(TimeUnit.HOURS.toNanos(1), node -> expired.add(node.getKey()));
+        assertEquals(2, expired.size());
+
+        wheel.advance(TimeUnit.DAYS.toNanos(1), node -> expired.add(node.getKey()));
+        assertEquals(3, expired.size());
+
+        wheel.advance(TimeUnit.DAYS.toNanos(60), node -> expired.add(node.getKey()));
+        assertEquals(4, expired.size());
+    }
+
+    @Test
+    public void testDescheduledNodeDoesNotExpire() {
+        TimerWheel<Integer, Integer> wheel = new TimerWheel<>(0);
+        Node<Integer, Integer> node = node(1, TimeUnit.SECONDS.toNanos(5));
+        wheel.schedule(node);
+        assertTrue(TimerWheel.isScheduled(node));
+        wheel.deschedule(node);
+        assertFalse(TimerWheel.isScheduled(node));
+
+        wheel.advance(TimeUnit.MINUTES.toNanos(1), n -> {
+            fail("descheduled node expired");
+            return true;
+        });
+    }
+
+    @Test
+    public void testRandomTimes() {
+        TimerWheel<Integer, Integer> wheel = new TimerWheel<>(0);
+        Random random = new Random(SEED_FOR_RANDOM);
+        long[] times = new long[10_000];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = (long) (random.nextDouble() * TimeUnit.DAYS.toNanos(10));
+            wheel.schedule(node(i, times[i]));
+        }
+
+        long now = 0;
+        int expiredCount = 0;
+        while (expiredCount < times.length) {
+            now += (long) (random.nextDouble() * TimeUnit.HOURS.toNanos(1));
+            long currentTime = now;
+            List<Integer> expired = new ArrayList<>();
+            wheel.advance(currentTime, node -> expired.add(node.getKey()));
+            for (int key : expired) assertTrue(times[key] <= currentTime);     //never early
+            expiredCount += expired.size();
+        }
+    }
+}
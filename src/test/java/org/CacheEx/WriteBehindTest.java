@@ -0,0 +1,237 @@
+package org.CacheEx;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindTest {
+    static int MIN_CACHE_CAPACITY = 2;
+    static int CACHE_CAPACITY = 1_000;
+    static int BATCH_SIZE = 10;
+    static long NEVER = 1;      //hours, the tests flush explicitly
+    static int THREADS = 4;
+
+    @Test
+    public void testRepeatedPutsAreCoalesced() {
+        Store store = new Store();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setWriteBehind(store, CACHE_CAPACITY, NEVER, TimeUnit.HOURS);
+
+        for (int i = 0; i < 100; i++) cache.put(1, "one" + i);
+        cache.put(2, "two");
+        assertTrue(store.values.isEmpty());     //nothing is written by put
+
+        cache.flush();
+        assertEquals(2, store.writes());
+        assertEquals("one99", store.values.get(1));
+        assertEquals("two", store.values.get(2));
+
+        cache.flush();
+        assertEquals(2, store.writes());        //nothing is dirty
+        cache.close();
+    }
+
+    @Test
+    public void testDirtyEntryIsWrittenBeforeEviction() {
+        Store store = new Store();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setWriteBehind(store, CACHE_CAPACITY, NEVER, TimeUnit.HOURS);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");  //evicts 1
+
+        assertNull(cache.get(1));
+        assertEquals("one", store.values.get(1));   //written by the put that evicted it
+        assertEquals(1, store.writes());
+
+        assertEquals("two", cache.remove(2));
+        assertEquals("two", store.values.get(2));
+        assertEquals(2, store.writes());
+        cache.close();
+        assertEquals("three", store.values.get(3));
+    }
+
+    @Test
+    public void testEntryEvictedByItsOwnUpdateIsWritten() {
+        Store store = new Store();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(10, (Integer key, String value) -> value.length(), CacheReplacementPolicy.MRU);
+        cache.setWriteBehind(store, CACHE_CAPACITY, NEVER, TimeUnit.HOURS);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(2, "a heavier");  //MRU evicts the entry that was just updated
+
+        assertNull(cache.get(2));
+        assertEquals("a heavier", store.values.get(2));
+        cache.close();
+    }
+
+    @Test
+    public void testBatchSize() {
+        Store store = new Store();
+        CacheImpl<Integer, Integer> cache = new CacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LFU);
+        cache.setWriteBehind(store, BATCH_SIZE, NEVER, TimeUnit.HOURS);
+
+        for (int i = 0; i < BATCH_SIZE * 5 + 3; i++) cache.put(i, i);
+        cache.flush();
+
+        assertEquals(BATCH_SIZE * 5 + 3, store.values.size());
+        for (int batch : store.batchSizes()) assertTrue(batch + " entries", batch <= BATCH_SIZE);
+        cache.close();
+    }
+
+    @Test
+    public void testBackgroundFlush() throws InterruptedException {
+        Store store = new Store();
+        CacheImpl<Integer, String> cache = new CacheImpl<>(CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setWriteBehind(store, CACHE_CAPACITY, 10, TimeUnit.MILLISECONDS);
+
+        cache.put(1, "one");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!store.values.containsKey(1) && System.nanoTime() < deadline) Thread.sleep(5);
+        assertEquals("one", store.values.get(1));
+        assertEquals("one", cache.get(1));
+        cache.close();
+    }
+
+    @Test
+    public void testFailedWritesAreRetried() {
+        Store store = new Store();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        CacheWriter<Integer, String> writer = new CacheWriter<Integer, String>() {
+            @Override
+            public void write(Integer key, String value) throws Exception {
+                if (failing.get()) throw new IOException("store is down");
+                store.write(key, value);
+            }
+
+            @Override
+            public void writeAll(Map<? extends Integer, ? extends String> entries) throws Exception {
+                if (failing.get()) throw new IOException("store is down");
+                store.writeAll(entries);
+            }
+        };
+        CacheImpl<Integer, String> cache = new CacheImpl<>(MIN_CACHE_CAPACITY, CacheReplacementPolicy.LRU);
+        cache.setWriteBehind(writer, CACHE_CAPACITY, NEVER, TimeUnit.HOURS);
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.put(3, "three");  //the write of 1 fails, it stays pending
+        try {
+            cache.flush();
+            fail("The writer failed");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        failing.set(false);
+        cache.flush();
+        assertEquals("one", store.values.get(1));
+        assertEquals("two", store.values.get(2));
+        assertEquals("three", store.values.get(3));
+    }
+
+    @Test
+    public void testFlushOfAKeyWaitsOnlyForTheCurrentBatch() throws InterruptedException {
+        Store store = new Store();
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch firstBatchReleased = new CountDownLatch(1);
+        CountDownLatch laterBatchesReleased = new CountDownLatch(1);
+        CacheWriter<Integer, String> writer = new CacheWriter<Integer, String>() {
+            @Override
+            public void write(Integer key, String value) {
+                store.write(key, value);
+            }
+
+            @Override
+            public void writeAll(Map<? extends Integer, ? extends String> entries) throws Exception {
+                boolean first = firstBatchStarted.getCount() > 0;
+                firstBatchStarted.countDown();
+                (first ? firstBatchReleased : laterBatchesReleased).await();
+                store.writeAll(entries);
+            }
+        };
+        WriteBehind<Integer, String> writeBehind = new WriteBehind<>(writer, 1, NEVER, TimeUnit.HOURS);
+
+        writeBehind.write(1, "one");    //a full batch, the flusher writes it and blocks
+        assertTrue(firstBatchStarted.await(10, TimeUnit.SECONDS));
+        writeBehind.write(2, "two");
+        Thread evicting = new Thread(() -> writeBehind.flush(2));
+        evicting.start();
+        while (evicting.getState() == Thread.State.NEW || evicting.getState() == Thread.State.RUNNABLE) Thread.sleep(1);
+
+        firstBatchReleased.countDown();
+        evicting.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse("flush(key) waited for the next batch", evicting.isAlive());
+        assertEquals("two", store.values.get(2));
+
+        laterBatchesReleased.countDown();
+        writeBehind.close();
+        assertEquals("one", store.values.get(1));
+    }
+
+    @Test
+    public void testConcurrentPutsWriteTheLatestValues() throws InterruptedException {
+        Store store = new Store();
+        ConcurrentCacheImpl<Integer, Integer> cache = new ConcurrentCacheImpl<>(THREADS * CACHE_CAPACITY * 2, CacheReplacementPolicy.LRU);
+        cache.setWriteBehind(store, BATCH_SIZE, 1, TimeUnit.MILLISECONDS);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * CACHE_CAPACITY;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < CACHE_CAPACITY * 20; i++) cache.put(offset + i % CACHE_CAPACITY, i);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        cache.close();
+
+        assertEquals(THREADS * CACHE_CAPACITY, store.values.size());
+        for (int t = 0; t < THREADS; t++) {
+            for (int key = 0; key < CACHE_CAPACITY; key++) {
+                assertEquals(Integer.valueOf(CACHE_CAPACITY * 19 + key), store.values.get(t * CACHE_CAPACITY + key));
+            }
+        }
+        assertTrue(store.writes() < THREADS * CACHE_CAPACITY * 20);
+    }
+
+    //a store that records the entries and the sizes of the batches
+    static class Store implements CacheWriter<Object, Object> {
+        final Map<Object, Object> values = new ConcurrentHashMap<>();
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public synchronized void write(Object key, Object value) {
+            values.put(key, value);
+            batchSizes.add(1);
+        }
+
+        @Override
+        public synchronized void writeAll(Map<? extends Object, ? extends Object> entries) {
+            values.putAll(new HashMap<>(entries));
+            batchSizes.add(entries.size());
+        }
+
+        synchronized List<Integer> batchSizes() {return new ArrayList<>(batchSizes);}
+
+        synchronized int writes() {
+            int writes = 0;
+            for (int batch : batchSizes) writes += batch;
+            return writes;
+        }
+    }
+}